@@ -0,0 +1,154 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Generates a reproducible synthetic corpus of text files whose words follow a Zipfian
+ * distribution, so benchmarks see a realistic mix of a few very common terms and a long tail of
+ * rare ones. The same settings and seed always produce the same files.
+ *
+ * <p>Usage: {@code CorpusGenerator <directory> [files] [fileKB] [vocabulary] [exponent] [seed]}
+ */
+public class CorpusGenerator {
+    // Files are spread over subdirectories so directory walks are exercised too
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    private final int fileCount;
+    private final int fileSize;
+    private final int vocabularySize;
+    private final double exponent;
+    private final long seed;
+    private final double[] cumulative;
+
+    /**
+     * Configures a corpus.
+     *
+     * @param fileCount      the number of files
+     * @param fileSize       the approximate size of each file in bytes
+     * @param vocabularySize the number of distinct words
+     * @param exponent       the Zipf exponent; word of rank r occurs in proportion to 1 / r^exponent
+     * @param seed           the random seed
+     */
+    public CorpusGenerator(int fileCount, int fileSize, int vocabularySize, double exponent, long seed) {
+        this.fileCount = fileCount;
+        this.fileSize = fileSize;
+        this.vocabularySize = vocabularySize;
+        this.exponent = exponent;
+        this.seed = seed;
+
+        // Cumulative distribution over the ranks, sampled by binary search
+        cumulative = new double[vocabularySize];
+        double total = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            total += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            cumulative[rank] /= total;
+        }
+    }
+
+    /**
+     * Returns the word with the given frequency rank; rank 0 is the most common.
+     *
+     * @param rank the rank, from 0 to the vocabulary size
+     * @return the word, made of lowercase letters only
+     */
+    public static String word(int rank) {
+        // Consonant-vowel syllables keep words pronounceable and give them shared prefixes
+        String consonants = "bcdfghklmnprstvz";
+        String vowels = "aeiou";
+        StringBuilder word = new StringBuilder();
+        int value = rank;
+        do {
+            word.append(consonants.charAt(value % consonants.length()));
+            value /= consonants.length();
+            word.append(vowels.charAt(value % vowels.length()));
+            value /= vowels.length();
+        } while (value > 0);
+        return word.toString();
+    }
+
+    /**
+     * Writes the corpus into a directory, creating it if needed.
+     *
+     * @param directory the root directory of the corpus
+     * @return the total number of bytes written
+     * @throws IOException if an I/O error occurs writing the files
+     */
+    public long generate(Path directory) throws IOException {
+        Random random = new Random(seed);
+        long bytes = 0;
+        for (int i = 0; i < fileCount; i++) {
+            Path subdirectory = directory.resolve(String.format("d%04d", i / FILES_PER_DIRECTORY));
+            Files.createDirectories(subdirectory);
+            String text = text(random);
+            try (Writer writer = Files.newBufferedWriter(subdirectory.resolve(String.format("f%06d.txt", i)),
+                    StandardCharsets.UTF_8)) {
+                writer.write(text);
+            }
+            bytes += text.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Generates the text of one file: Zipfian words with occasional numbers, punctuation and line breaks.
+     */
+    String text(Random random) {
+        StringBuilder text = new StringBuilder(fileSize + 32);
+        while (text.length() < fileSize) {
+            int choice = random.nextInt(20);
+            if (choice == 0) {
+                text.append(random.nextInt(10000));
+            } else {
+                text.append(word(sample(random)));
+            }
+            text.append(choice == 1 ? ", " : random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        return text.toString();
+    }
+
+    private int sample(Random random) {
+        double target = random.nextDouble();
+        int low = 0;
+        int high = vocabularySize - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files x %d KB, %d words, Zipf exponent %.2f, seed %d",
+                fileCount, fileSize / 1024, vocabularySize, exponent, seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: CorpusGenerator <directory> [files] [fileKB] [vocabulary] [exponent] [seed]");
+            return;
+        }
+        CorpusGenerator generator = new CorpusGenerator(
+                args.length > 1 ? Integer.parseInt(args[1]) : 1000,
+                (args.length > 2 ? Integer.parseInt(args[2]) : 8) * 1024,
+                args.length > 3 ? Integer.parseInt(args[3]) : 50000,
+                args.length > 4 ? Double.parseDouble(args[4]) : 1.1,
+                args.length > 5 ? Long.parseLong(args[5]) : 42);
+        long bytes = generator.generate(Paths.get(args[0]));
+        System.out.println("Generated " + generator + " (" + bytes / 1024 + " KB) in " + new File(args[0]).getAbsolutePath());
+    }
+}
@@ -0,0 +1,281 @@
+package bench;
+
+import main.java.FileIndexer.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures the index end to end on a generated Zipfian corpus: tokenizer throughput over the
+ * corpus text, indexing time with the per-stage report of the indexing pipeline, heap footprint, query latency for common and rare terms, indexing
+ * time and query latency of a {@link ShardedIndex} by shard count, and the cost of erasing files and directories.
+ *
+ * <p>Usage: {@code IndexBenchmark [files] [fileKB] [vocabulary] [exponent]}
+ */
+public class IndexBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 3;
+    private static final int QUERY_REPETITIONS = 2000;
+
+    // Prevents the JIT from discarding the work
+    private static long blackhole;
+
+    public static void main(String[] args) throws IOException {
+        CorpusGenerator generator = new CorpusGenerator(
+                args.length > 0 ? Integer.parseInt(args[0]) : 2000,
+                (args.length > 1 ? Integer.parseInt(args[1]) : 8) * 1024,
+                args.length > 2 ? Integer.parseInt(args[2]) : 50000,
+                args.length > 3 ? Double.parseDouble(args[3]) : 1.1,
+                42);
+
+        Path corpus = Files.createTempDirectory("corpus");
+        try {
+            long bytes = generator.generate(corpus);
+            double megabytes = bytes / (1024.0 * 1024);
+            System.out.printf("Corpus: %s (%.1f MB)%n", generator, megabytes);
+
+            tokenizerThroughput(corpus, megabytes);
+            Index index = indexing(corpus, megabytes);
+            heapFootprint(corpus, megabytes);
+            queryLatency(index);
+            sharding(corpus, megabytes);
+            eraseCost(corpus);
+            System.out.println("(checksum " + blackhole + ")");
+        } finally {
+            try (Stream<Path> paths = Files.walk(corpus)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private interface Workload {
+        long run() throws IOException;
+    }
+
+    /**
+     * Runs the workload for the warmup and measured rounds and returns the seconds per measured round.
+     */
+    private static double time(Workload workload) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            blackhole += workload.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            blackhole += workload.run();
+        }
+        return (System.nanoTime() - start) / 1e9 / MEASURED_ROUNDS;
+    }
+
+    private static void tokenizerThroughput(Path corpus, double megabytes) throws IOException {
+        List<String> texts = new ArrayList<>();
+        for (File file : listFiles(corpus)) {
+            texts.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        }
+
+        System.out.println("Tokenizer throughput over the corpus (MB/s):");
+        TokenizerStrategy[] strategies = {new SimpleTokenizer(), new AdvancedTokenizer()};
+        // Compile the shared scanning code with both strategies in its profile before measuring either
+        for (TokenizerStrategy strategy : strategies) {
+            time(() -> tokenizeAll(strategy, texts));
+        }
+        for (TokenizerStrategy strategy : strategies) {
+            double seconds = time(() -> tokenizeAll(strategy, texts));
+            System.out.printf("  %-20s %10.1f%n", strategy.getClass().getSimpleName(), megabytes / seconds);
+        }
+    }
+
+    private static long tokenizeAll(TokenizerStrategy strategy, List<String> texts) throws IOException {
+        long[] count = new long[1];
+        for (String text : texts) {
+            strategy.tokenize(new StringReader(text), (tokenType, buffer, offset, length) -> count[0]++, true);
+        }
+        return count[0];
+    }
+
+    private static Index indexing(Path corpus, double megabytes) throws IOException {
+        System.out.println("Index.indexPath end to end:");
+        int processors = Runtime.getRuntime().availableProcessors();
+        // Two threads run the pipeline even on one processor, to show its overhead
+        int[] threadCounts = processors > 2 ? new int[] {1, 2, processors} : new int[] {1, 2};
+        Index[] last = new Index[1];
+        for (int threads : threadCounts) {
+            double seconds = time(() -> {
+                last[0] = newIndex();
+                last[0].indexPath(corpus.toFile(), threads);
+                return last[0].getDocuments().size();
+            });
+            System.out.printf("  %2d thread(s) %10.1f ms %10.1f MB/s %10.0f files/s%n", threads, seconds * 1000,
+                    megabytes / seconds, last[0].getDocuments().size() / seconds);
+        }
+
+        // Where the time goes in one more run at the highest thread count
+        int threads = threadCounts[threadCounts.length - 1];
+        IndexPipeline pipeline = new IndexPipeline(newIndex(), threads, threads, IndexPipeline.DEFAULT_QUEUE_CAPACITY);
+        pipeline.run(corpus.toFile());
+        System.out.println(pipeline.toString().replaceAll("(?m)^", "  "));
+        return last[0];
+    }
+
+    private static void heapFootprint(Path corpus, double megabytes) throws IOException {
+        long before = usedHeap();
+        Index index = newIndex();
+        index.indexPath(corpus.toFile());
+        long after = usedHeap();
+        System.out.printf("Heap footprint: %.1f MB for %d terms, %.2f MB per indexed MB%n",
+                (after - before) / (1024.0 * 1024), index.getIndex().size(), (after - before) / (1024.0 * 1024) / megabytes);
+        blackhole += index.getIndex().size();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void queryLatency(Index index) {
+        // The most common word, one from the middle of the distribution, and one of the rarest present
+        String common = CorpusGenerator.word(0);
+        String medium = CorpusGenerator.word(100);
+        String rare = null;
+        for (String term : index.getIndex().keySet()) {
+            if (term.chars().allMatch(Character::isLetter) && index.getIndex().get(term).size() == 1) {
+                rare = term;
+                break;
+            }
+        }
+
+        System.out.println("Query latency (microseconds):");
+        System.out.println("  query                         matches        p50        p99       mean");
+        reportLatency("query " + common, () -> index.query(common).size());
+        reportLatency("query " + medium, () -> index.query(medium).size());
+        if (rare != null) {
+            String rareTerm = rare;
+            reportLatency("query " + rareTerm, () -> index.query(rareTerm).size());
+        }
+        reportLatency("search " + common + " AND " + medium, () -> index.search(common + " AND " + medium).size());
+        reportLatency("rank " + common + " " + medium, () -> index.rank(common + " " + medium, 10).size());
+    }
+
+    private interface Lookup {
+        int run();
+    }
+
+    private static void reportLatency(String name, Lookup lookup) {
+        int matches = 0;
+        for (int i = 0; i < QUERY_REPETITIONS; i++) {
+            matches = lookup.run();
+        }
+
+        long[] nanos = new long[QUERY_REPETITIONS];
+        for (int i = 0; i < nanos.length; i++) {
+            long start = System.nanoTime();
+            blackhole += lookup.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        double mean = Arrays.stream(nanos).average().orElse(0);
+        System.out.printf("  %-28s %8d %10.1f %10.1f %10.1f%n", name, matches, nanos[nanos.length / 2] / 1000.0,
+                nanos[nanos.length * 99 / 100] / 1000.0, mean / 1000.0);
+    }
+
+    private static void sharding(Path corpus, double megabytes) throws IOException {
+        System.out.println("ShardedIndex by shard count (query latency p50 in microseconds):");
+        System.out.println("  shards      index ms       MB/s      query     search       rank");
+        String common = CorpusGenerator.word(0);
+        String medium = CorpusGenerator.word(100);
+        int processors = Runtime.getRuntime().availableProcessors();
+        int[] shardCounts = processors > 4 ? new int[] {1, 2, 4, processors} : new int[] {1, 2, 4};
+        for (int shardCount : shardCounts) {
+            ShardedIndex[] last = new ShardedIndex[1];
+            double seconds = time(() -> {
+                if (last[0] != null) {
+                    last[0].close();
+                }
+                last[0] = newShardedIndex(shardCount);
+                last[0].indexPath(corpus.toFile());
+                return last[0].getDocumentCount();
+            });
+            try (ShardedIndex sharded = last[0]) {
+                System.out.printf("  %6d %13.1f %10.1f %10.1f %10.1f %10.1f%n", shardCount, seconds * 1000, megabytes / seconds,
+                        medianLatency(() -> sharded.query(common).size()),
+                        medianLatency(() -> sharded.search(common + " AND " + medium).size()),
+                        medianLatency(() -> sharded.rank(common + " " + medium, 10).size()));
+            }
+        }
+    }
+
+    /**
+     * Returns the median latency of a lookup in microseconds, after as many warmup runs.
+     */
+    private static double medianLatency(Lookup lookup) {
+        for (int i = 0; i < QUERY_REPETITIONS; i++) {
+            blackhole += lookup.run();
+        }
+        long[] nanos = new long[QUERY_REPETITIONS];
+        for (int i = 0; i < nanos.length; i++) {
+            long start = System.nanoTime();
+            blackhole += lookup.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[nanos.length / 2] / 1000.0;
+    }
+
+    private static void eraseCost(Path corpus) throws IOException {
+        System.out.println("Erase cost:");
+        List<File> files = listFiles(corpus);
+        File[] directories = corpus.toFile().listFiles(File::isDirectory);
+        Arrays.sort(directories);
+
+        // Every tenth file, one at a time
+        Index index = newIndex();
+        index.indexPath(corpus.toFile());
+        int erased = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < files.size(); i += 10) {
+            index.eraseFile(files.get(i).getAbsolutePath());
+            erased++;
+        }
+        System.out.printf("  eraseFile  %10.1f us per file (%d files)%n", (System.nanoTime() - start) / 1000.0 / erased, erased);
+
+        // A whole directory
+        index = newIndex();
+        index.indexPath(corpus.toFile());
+        int before = index.getDocuments().size();
+        start = System.nanoTime();
+        index.erasePath(directories[0]);
+        System.out.printf("  erasePath  %10.1f ms for %d files%n", (System.nanoTime() - start) / 1e6,
+                before - index.getDocuments().size());
+    }
+
+    private static List<File> listFiles(Path corpus) throws IOException {
+        List<File> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(corpus)) {
+            paths.filter(Files::isRegularFile).sorted().forEach(path -> files.add(path.toFile()));
+        }
+        return files;
+    }
+
+    private static Index newIndex() {
+        TokenizerContext tokenizerContext = new TokenizerContext();
+        tokenizerContext.setStrategy(new SimpleTokenizer());
+        return new Index(tokenizerContext);
+    }
+
+    private static ShardedIndex newShardedIndex(int shardCount) {
+        TokenizerContext tokenizerContext = new TokenizerContext();
+        tokenizerContext.setStrategy(new SimpleTokenizer());
+        return new ShardedIndex(tokenizerContext, shardCount, false);
+    }
+}
@@ -0,0 +1,170 @@
+package bench;
+
+import main.java.FileIndexer.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Load-tests an {@link IndexServer}: many client connections send a mix of single-word, boolean
+ * and ranked queries, each keeping a fixed number of requests in flight, and the test reports the
+ * throughput and latency percentiles over all of them. Without a port it serves a generated
+ * Zipfian corpus from an in-process server; with one it targets a running {@code serve} console.
+ *
+ * <p>Usage: {@code ServerLoadTest [clients] [seconds] [depth] [port]}
+ */
+public class ServerLoadTest {
+    // Client threads only hold a socket and a few buffers
+    private static final long CLIENT_STACK_BYTES = 128 * 1024;
+    private static final int CORPUS_FILES = 1000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        if (args.length > 3) {
+            run(Integer.parseInt(args[3]), clients, seconds, depth);
+            return;
+        }
+
+        Path corpus = Files.createTempDirectory("corpus");
+        try {
+            CorpusGenerator generator = new CorpusGenerator(CORPUS_FILES, 8 * 1024, 50000, 1.1, 42);
+            generator.generate(corpus);
+            TokenizerContext tokenizerContext = new TokenizerContext();
+            tokenizerContext.setStrategy(new SimpleTokenizer());
+            Index index = new Index(tokenizerContext);
+            index.indexPath(corpus.toFile());
+            System.out.printf("Corpus: %s%n", generator);
+
+            try (IndexServer server = new IndexServer(() -> index, new QueryCache(1000, 1000000),
+                    () -> "The load test index is read-only", 0)) {
+                run(server.getPort(), clients, seconds, depth);
+                System.out.println("Server: " + server);
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(corpus)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static void run(int port, int clients, int seconds, int depth) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        CountDownLatch connected = new CountDownLatch(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            long seed = i;
+            Thread thread = new Thread(null, () -> {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                    socket.setTcpNoDelay(true);
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                    connected.countDown();
+                    start.await();
+                    client(in, out, new Random(seed), depth, deadline[0], latency, errors);
+                    out.write("quit\n");
+                    out.flush();
+                } catch (IOException e) {
+                    errors.increment();
+                    connected.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "load-client-" + i, CLIENT_STACK_BYTES);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        // Measure only once every client is connected, so connection setup does not count as latency
+        connected.await();
+        deadline[0] = System.nanoTime() + seconds * 1000000000L;
+        long began = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - began) / 1e9;
+
+        System.out.printf("Load: %d clients, %d request(s) in flight each, %.1f s%n", clients, depth, elapsed);
+        System.out.printf("  requests %d, errors %d, %.0f requests/s%n",
+                latency.getCount(), errors.sum(), latency.getCount() / elapsed);
+        System.out.printf("  latency (us): mean %.1f, p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                latency.getMean() / 1000, latency.getPercentile(50) / 1000.0, latency.getPercentile(90) / 1000.0,
+                latency.getPercentile(99) / 1000.0, latency.getPercentile(99.9) / 1000.0, latency.getMax() / 1000.0);
+    }
+
+    /**
+     * Sends requests in bursts of depth, reading the responses to each burst before the next,
+     * until the deadline. A request's latency runs from the write of its burst to its response.
+     */
+    private static void client(BufferedReader in, Writer out, Random random, int depth, long deadline,
+                               LatencyHistogram latency, LongAdder errors) throws IOException {
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < depth; i++) {
+                out.write(request(random));
+                out.write('\n');
+            }
+            out.flush();
+            long sent = System.nanoTime();
+
+            for (int i = 0; i < depth; i++) {
+                String header = in.readLine();
+                if (header == null) {
+                    throw new IOException("Server closed the connection");
+                }
+                if (header.startsWith("OK ")) {
+                    for (int lines = Integer.parseInt(header.substring(3)); lines > 0; lines--) {
+                        in.readLine();
+                    }
+                } else {
+                    errors.increment();
+                }
+                latency.record(System.nanoTime() - sent);
+            }
+        }
+    }
+
+    /**
+     * Picks a query: mostly single words, skewed towards the common ones, then conjunctions and ranked searches.
+     */
+    private static String request(Random random) {
+        int kind = random.nextInt(10);
+        String word = CorpusGenerator.word(skewed(random));
+        if (kind < 6) {
+            return "query " + word;
+        } else if (kind < 8) {
+            return "query " + word + " AND " + CorpusGenerator.word(skewed(random));
+        }
+        return "rank -k 10 " + word + " " + CorpusGenerator.word(skewed(random));
+    }
+
+    private static int skewed(Random random) {
+        // Squaring a uniform value favours low ranks, i.e. common words
+        double uniform = random.nextDouble();
+        return (int) (uniform * uniform * 2000);
+    }
+}
@@ -0,0 +1,111 @@
+package bench;
+
+import main.java.FileIndexer.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures tokenizer throughput of the character-class scanners against the original regex-based
+ * implementations on the same generated text.
+ */
+public class TokenizerBenchmark {
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("\\d+|\\w+|\\p{Punct}");
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    // Prevents the JIT from discarding the work
+    private static long blackhole;
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        String text = generateText(megabytes * 1024 * 1024);
+        System.out.println("Tokenizer throughput on " + megabytes + " MB of generated text (MB/s):");
+
+        report("simple   regex split       ", text, () -> legacySimple(text));
+        report("simple   scanner (List)    ", text, () -> new SimpleTokenizer().tokenize(text).size());
+        report("simple   scanner (stream)  ", text, () -> streaming(new SimpleTokenizer(), text));
+        report("advanced regex matcher     ", text, () -> legacyAdvanced(text));
+        report("advanced scanner (List)    ", text, () -> new AdvancedTokenizer().tokenize(text).size());
+        report("advanced scanner (stream)  ", text, () -> streaming(new AdvancedTokenizer(), text));
+        System.out.println("(checksum " + blackhole + ")");
+    }
+
+    private interface Workload {
+        long run() throws IOException;
+    }
+
+    private static void report(String name, String text, Workload workload) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            blackhole += workload.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            blackhole += workload.run();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double megabytes = (double) text.length() * MEASURED_ROUNDS / (1024 * 1024);
+        System.out.printf("  %s %10.1f%n", name, megabytes / seconds);
+    }
+
+    private static long streaming(TokenizerStrategy strategy, String text) throws IOException {
+        long[] count = new long[1];
+        strategy.tokenize(new StringReader(text), (tokenType, buffer, offset, length) -> count[0] += length, true);
+        return count[0];
+    }
+
+    private static long legacySimple(String text) {
+        List<Token> tokens = new ArrayList<>();
+        for (String word : text.split("\\W+")) {
+            if (!word.isEmpty()) {
+                tokens.add(new Token(TokenType.WORD, word.toLowerCase()));
+            }
+        }
+        return tokens.size();
+    }
+
+    private static long legacyAdvanced(String text) {
+        List<Token> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN_PATTERN.matcher(text);
+        while (matcher.find()) {
+            String value = matcher.group();
+            TokenType type;
+            if (value.matches("\\d+")) {
+                type = TokenType.NUMBER;
+            } else if (value.matches("\\w+")) {
+                type = TokenType.WORD;
+            } else {
+                type = TokenType.PUNCTUATION;
+            }
+            tokens.add(new Token(type, value.toLowerCase()));
+        }
+        return tokens.size();
+    }
+
+    private static String generateText(int length) {
+        Random random = new Random(42);
+        String[] words = {"the", "Connection", "reset", "by", "peer", "ERROR", "user_id", "request", "timeout", "at"};
+        StringBuilder text = new StringBuilder(length + 32);
+        while (text.length() < length) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    text.append(random.nextInt(100000));
+                    break;
+                case 1:
+                    text.append(", ");
+                    break;
+                default:
+                    text.append(words[random.nextInt(words.length)]);
+                    break;
+            }
+            text.append(random.nextInt(8) == 0 ? ".\n" : " ");
+        }
+        return text.toString();
+    }
+}
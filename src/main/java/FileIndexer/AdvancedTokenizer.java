@@ -1,35 +1,84 @@
 package main.java.FileIndexer;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Advanced tokenizer that distinguishes between different token types, such as WORD and NUMBER.
+ * Produces the tokens of the regex {@code \d+|\w+|\p{Punct}}: a run of digits is a NUMBER, a run
+ * of word characters starting with a letter or underscore is a WORD, and every other ASCII
+ * punctuation character is a PUNCTUATION token of its own.
  */
 public class AdvancedTokenizer implements TokenizerStrategy {
-    private static final Pattern TOKEN_PATTERN = Pattern.compile("\\d+|\\w+|\\p{Punct}");
-
     @Override
     public List<Token> tokenize(String text) {
         List<Token> tokens = new ArrayList<>();
-        Matcher matcher = TOKEN_PATTERN.matcher(text);
+        new TypedScanner((tokenType, buffer, offset, length) ->
+                tokens.add(new Token(tokenType, new String(buffer, offset, length))), false).scan(text);
+        return tokens;
+    }
+
+    @Override
+    public void tokenize(Reader reader, TokenConsumer consumer, boolean lowercase) throws IOException {
+        new TypedScanner(consumer, lowercase).scan(reader);
+    }
+
+    /**
+     * Scanner emitting numbers, words and single punctuation characters.
+     */
+    private static final class TypedScanner extends ChunkScanner {
+        TypedScanner(TokenConsumer consumer, boolean lowercase) {
+            super(consumer, lowercase);
+        }
 
-        while (matcher.find()) {
-            String tokenValue = matcher.group();
-            String tokenType;
+        @Override
+        void scanChunk(char[] chunk, int count) {
+            TokenType type = pending;
+            int start = type != null ? 0 : -1;
+            pending = null;
 
-            if (tokenValue.matches("\\d+")) {
-                tokenType = "NUMBER";
-            } else if (tokenValue.matches("\\w+")) {
-                tokenType = "WORD";
-            } else {
-                tokenType = "PUNCTUATION";
+            for (int i = 0; i < count; i++) {
+                byte charClass = CharClasses.classOf(chunk[i]);
+                switch (charClass) {
+                    case CharClasses.DIGIT:
+                        // Digits extend either a number or a word
+                        if (type == null) {
+                            type = TokenType.NUMBER;
+                            start = i;
+                        }
+                        break;
+                    case CharClasses.LETTER:
+                    case CharClasses.UNDERSCORE:
+                        if (lowercase && charClass == CharClasses.LETTER) {
+                            chunk[i] = CharClasses.toLowerCase(chunk[i]);
+                        }
+                        // A letter or underscore ends a number, as \d+ is tried before \w+
+                        if (type == TokenType.NUMBER) {
+                            emit(type, chunk, start, i);
+                            type = null;
+                        }
+                        if (type == null) {
+                            type = TokenType.WORD;
+                            start = i;
+                        }
+                        break;
+                    default:
+                        if (type != null) {
+                            emit(type, chunk, start, i);
+                            type = null;
+                        }
+                        if (charClass == CharClasses.PUNCTUATION) {
+                            emit(TokenType.PUNCTUATION, chunk, i, i + 1);
+                        }
+                        break;
+                }
             }
 
-            tokens.add(new Token(tokenType, tokenValue));
+            if (type != null) {
+                carry(type, chunk, start, count);
+            }
         }
-        return tokens;
     }
 }
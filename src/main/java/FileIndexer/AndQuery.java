@@ -0,0 +1,66 @@
+package main.java.FileIndexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Matches the documents that match all of its clauses. Negated clauses exclude documents
+ * rather than being evaluated on their own.
+ */
+public class AndQuery extends Query {
+    private final List<Query> clauses;
+
+    public AndQuery(List<Query> clauses) {
+        this.clauses = new ArrayList<>(clauses);
+    }
+
+    public List<Query> getClauses() {
+        return Collections.unmodifiableList(clauses);
+    }
+
+    @Override
+    DocIdIterator iterator(IndexSnapshot snapshot) {
+        List<DocIdIterator> required = new ArrayList<>();
+        List<DocIdIterator> excluded = new ArrayList<>();
+        for (Query clause : clauses) {
+            if (clause instanceof NotQuery) {
+                excluded.add(((NotQuery) clause).getNegated().iterator(snapshot));
+            } else {
+                required.add(clause.iterator(snapshot));
+            }
+        }
+
+        // Only negated clauses: everything except what they match
+        if (required.isEmpty()) {
+            required.add(snapshot.allDocuments());
+        }
+        return new ConjunctionIterator(required.toArray(new DocIdIterator[0]), excluded.toArray(new DocIdIterator[0]));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof AndQuery && clauses.equals(((AndQuery) other).clauses);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * clauses.hashCode() + 1;
+    }
+
+    @Override
+    public String toString() {
+        return join(clauses, " AND ");
+    }
+
+    static String join(List<Query> clauses, String operator) {
+        StringBuilder text = new StringBuilder("(");
+        for (int i = 0; i < clauses.size(); i++) {
+            if (i > 0) {
+                text.append(operator);
+            }
+            text.append(clauses.get(i));
+        }
+        return text.append(')').toString();
+    }
+}
@@ -0,0 +1,254 @@
+package main.java.FileIndexer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates a stream of queries, one per line, and writes one machine-readable result line per
+ * query in input order. Lines are handed to a pool of threads in chunks and all evaluated against
+ * the same snapshot of the index; results are formatted on the pool threads too, so the writing
+ * thread only copies finished text into a buffered writer.
+ *
+ * <p>In TSV, each result line is the query, the number of matches, and the matching paths, all
+ * separated by tabs; ranked results list each path followed by its score. A query that cannot be
+ * evaluated gives the query, {@code error} and the message. Tabs, newlines and backslashes within
+ * fields are escaped as {@code \t}, {@code \n} and {@code \\}. In JSON, each line is an object such
+ * as {@code {"query":"a AND b","count":1,"results":["/x"]}}, with {@code {"path":..,"score":..}}
+ * results when ranking and an {@code "error"} member instead of the results on failure.
+ */
+public class BatchQueries {
+    // Queries per task: enough to amortize handing work between threads
+    private static final int CHUNK_LINES = 512;
+    // Chunks queued or running per thread, bounding the results held in memory
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    public enum Format {
+        TSV, JSON
+    }
+
+    private final Format format;
+    private final int threads;
+    private final int rankCount;
+    // Length of the last chunk's output, which the next one starts its buffer at
+    private volatile int chunkLength = CHUNK_LINES * 64;
+
+    /**
+     * Constructs a batch runner.
+     *
+     * @param format    the output format
+     * @param threads   the number of threads to evaluate queries on
+     * @param rankCount 0 to evaluate each line as a boolean query expression, or the number of files
+     *                  to return when ranking each line as free text
+     */
+    public BatchQueries(Format format, int threads, int rankCount) {
+        if (threads < 1 || rankCount < 0) {
+            throw new IllegalArgumentException("Thread count must be at least 1 and result count at least 0: "
+                    + threads + ", " + rankCount);
+        }
+        this.format = format;
+        this.threads = threads;
+        this.rankCount = rankCount;
+    }
+
+    /**
+     * Evaluates every non-blank line of the input against a snapshot and writes the results.
+     * The output is flushed but not closed.
+     *
+     * @param snapshot the snapshot to evaluate against
+     * @param queries  the queries, one per line
+     * @param out      receives one result line per query
+     * @return the number of queries evaluated
+     * @throws IOException if reading the queries or writing the results fails
+     */
+    public long run(IndexSnapshot snapshot, BufferedReader queries, Writer out) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<String>> pending = new ArrayDeque<>();
+        long count = 0;
+        try {
+            List<String> chunk = new ArrayList<>(CHUNK_LINES);
+            String line;
+            while ((line = queries.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                chunk.add(line.trim());
+                count++;
+                if (chunk.size() == CHUNK_LINES) {
+                    List<String> lines = chunk;
+                    pending.add(pool.submit(() -> evaluate(snapshot, lines)));
+                    chunk = new ArrayList<>(CHUNK_LINES);
+                    // Write the oldest results while the pool works on the rest
+                    if (pending.size() >= threads * CHUNKS_PER_THREAD) {
+                        out.write(take(pending));
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                List<String> lines = chunk;
+                pending.add(pool.submit(() -> evaluate(snapshot, lines)));
+            }
+            while (!pending.isEmpty()) {
+                out.write(take(pending));
+            }
+            out.flush();
+            return count;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static String take(Deque<Future<String>> pending) throws IOException {
+        try {
+            return pending.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while evaluating queries", e);
+        } catch (ExecutionException e) {
+            // Failures of single queries are reported in the output, so this is a bug
+            throw new IllegalStateException("Query evaluation failed", e.getCause());
+        }
+    }
+
+    /**
+     * Evaluates a chunk of queries and formats their results. Matches go straight from the query's
+     * iterator to the output, without collecting the paths in a set first.
+     */
+    private String evaluate(IndexSnapshot snapshot, List<String> lines) {
+        StringBuilder text = new StringBuilder(chunkLength);
+        IntList matches = new IntList();
+        for (String query : lines) {
+            try {
+                if (rankCount > 0) {
+                    appendRanked(text, query, snapshot.rank(query, rankCount));
+                } else {
+                    matches.clear();
+                    DocIdIterator iterator = QueryParser.parse(query).iterator(snapshot);
+                    for (int docId = iterator.nextDoc(); docId != DocIdIterator.NO_MORE_DOCS; docId = iterator.nextDoc()) {
+                        matches.add(docId);
+                    }
+                    appendMatches(text, query, snapshot.getDocuments(), matches);
+                }
+            } catch (RuntimeException e) {
+                appendError(text, query, e.getMessage() == null ? e.toString() : e.getMessage());
+            }
+        }
+        chunkLength = text.length();
+        return text.toString();
+    }
+
+    private void appendMatches(StringBuilder text, String query, DocumentTable documents, IntList matches) {
+        if (format == Format.TSV) {
+            appendTsv(text, query).append('\t').append(matches.size());
+            for (int i = 0; i < matches.size(); i++) {
+                appendTsv(text.append('\t'), documents.getPath(matches.get(i)));
+            }
+        } else {
+            appendJson(text.append("{\"query\":"), query).append(",\"count\":").append(matches.size()).append(",\"results\":[");
+            for (int i = 0; i < matches.size(); i++) {
+                if (i > 0) {
+                    text.append(',');
+                }
+                appendJson(text, documents.getPath(matches.get(i)));
+            }
+            text.append("]}");
+        }
+        text.append('\n');
+    }
+
+    private void appendRanked(StringBuilder text, String query, List<ScoredDocument> results) {
+        if (format == Format.TSV) {
+            appendTsv(text, query).append('\t').append(results.size());
+            for (ScoredDocument result : results) {
+                appendTsv(text.append('\t'), result.getPath()).append('\t').append(result.getScore());
+            }
+        } else {
+            appendJson(text.append("{\"query\":"), query).append(",\"count\":").append(results.size()).append(",\"results\":[");
+            for (int i = 0; i < results.size(); i++) {
+                if (i > 0) {
+                    text.append(',');
+                }
+                appendJson(text.append("{\"path\":"), results.get(i).getPath())
+                        .append(",\"score\":").append(results.get(i).getScore()).append('}');
+            }
+            text.append("]}");
+        }
+        text.append('\n');
+    }
+
+    private void appendError(StringBuilder text, String query, String message) {
+        if (format == Format.TSV) {
+            appendTsv(appendTsv(text, query).append("\terror\t"), message);
+        } else {
+            appendJson(appendJson(text.append("{\"query\":"), query).append(",\"error\":"), message).append('}');
+        }
+        text.append('\n');
+    }
+
+    private static StringBuilder appendTsv(StringBuilder text, String field) {
+        if (!needsEscape(field, '\\')) {
+            return text.append(field);
+        }
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\t') {
+                text.append("\\t");
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else if (c == '\r') {
+                text.append("\\r");
+            } else if (c == '\\') {
+                text.append("\\\\");
+            } else {
+                text.append(c);
+            }
+        }
+        return text;
+    }
+
+    private static StringBuilder appendJson(StringBuilder text, String value) {
+        text.append('"');
+        if (!needsEscape(value, '"')) {
+            return text.append(value).append('"');
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\').append(c);
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else if (c == '\r') {
+                text.append("\\r");
+            } else if (c == '\t') {
+                text.append("\\t");
+            } else if (c < 0x20) {
+                text.append(String.format("\\u%04x", (int) c));
+            } else {
+                text.append(c);
+            }
+        }
+        return text.append('"');
+    }
+
+    /**
+     * Checks for control characters, backslashes and the given quote character, so the common
+     * plain values can be appended in one piece.
+     */
+    private static boolean needsEscape(String value, char quote) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == '\\' || c == quote) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
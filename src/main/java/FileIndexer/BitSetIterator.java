@@ -0,0 +1,38 @@
+package main.java.FileIndexer;
+
+import java.util.BitSet;
+
+/**
+ * Iterates over the document IDs set in a bit set.
+ */
+class BitSetIterator extends DocIdIterator {
+    private final BitSet docs;
+    private final long cost;
+    private int doc = -1;
+
+    BitSetIterator(BitSet docs) {
+        this.docs = docs;
+        this.cost = docs.cardinality();
+    }
+
+    @Override
+    public int docId() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        return doc == NO_MORE_DOCS ? doc : advance(doc + 1);
+    }
+
+    @Override
+    public int advance(int target) {
+        int next = docs.nextSetBit(target);
+        return doc = next < 0 ? NO_MORE_DOCS : next;
+    }
+
+    @Override
+    public long cost() {
+        return cost;
+    }
+}
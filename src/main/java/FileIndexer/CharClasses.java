@@ -0,0 +1,47 @@
+package main.java.FileIndexer;
+
+/**
+ * Lookup-table character classes matching the ASCII regex classes the tokenizers are defined by:
+ * {@code \d}, {@code \w} and {@code \p{Punct}}.
+ */
+final class CharClasses {
+    static final byte OTHER = 0;
+    static final byte DIGIT = 1;
+    static final byte LETTER = 2;
+    static final byte PUNCTUATION = 3;
+    // '_' is both a word character and punctuation; as a token it always scans as a word
+    static final byte UNDERSCORE = 4;
+
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        for (char c = '!'; c <= '~'; c++) {
+            CLASSES[c] = PUNCTUATION;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CLASSES[c] = DIGIT;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            CLASSES[c] = LETTER;
+            CLASSES[Character.toUpperCase(c)] = LETTER;
+        }
+        CLASSES['_'] = UNDERSCORE;
+    }
+
+    private CharClasses() {
+    }
+
+    /**
+     * Returns the class of a character; anything outside ASCII is {@link #OTHER}.
+     */
+    static byte classOf(char c) {
+        return c < 128 ? CLASSES[c] : OTHER;
+    }
+
+    /**
+     * Lowercases an ASCII letter; the tokenizers never emit other letters.
+     */
+    static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,100 @@
+package main.java.FileIndexer;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Base class for the single-pass tokenizer scanners. Text is scanned in fixed-size chunks;
+ * a token lying entirely within a chunk is handed to the consumer straight from the chunk,
+ * and only a token straddling a chunk boundary is copied into a reusable carry buffer.
+ */
+abstract class ChunkScanner {
+    private final TokenConsumer consumer;
+    protected final boolean lowercase;
+
+    // Type of the token left open at the end of the previous chunk, or null
+    protected TokenType pending;
+    private char[] carry = new char[64];
+    private int carryLength;
+
+    ChunkScanner(TokenConsumer consumer, boolean lowercase) {
+        this.consumer = consumer;
+        this.lowercase = lowercase;
+    }
+
+    /**
+     * Scans one chunk of text. The chunk may be modified in place (e.g. lowercased).
+     * Implementations continue the {@link #pending} token from index 0 and must either emit or
+     * {@link #carry} any token still open at the end of the chunk.
+     *
+     * @param chunk the buffer holding the chunk
+     * @param count the number of characters in the chunk
+     */
+    abstract void scanChunk(char[] chunk, int count);
+
+    /**
+     * Scans all the text read from a reader.
+     */
+    void scan(Reader reader) throws IOException {
+        char[] chunk = new char[TokenizerStrategy.CHUNK_SIZE];
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            scanChunk(chunk, read);
+        }
+        finish();
+    }
+
+    /**
+     * Scans a string, copying it chunk by chunk so it is never modified.
+     */
+    void scan(String text) {
+        int length = text.length();
+        char[] chunk = new char[Math.min(TokenizerStrategy.CHUNK_SIZE, Math.max(length, 1))];
+        for (int position = 0; position < length; position += chunk.length) {
+            int count = Math.min(chunk.length, length - position);
+            text.getChars(position, position + count, chunk, 0);
+            scanChunk(chunk, count);
+        }
+        finish();
+    }
+
+    /**
+     * Emits the token ending at {@code end}, prefixed by any part carried over from earlier chunks.
+     */
+    protected void emit(TokenType type, char[] chunk, int start, int end) {
+        if (carryLength == 0) {
+            consumer.accept(type, chunk, start, end - start);
+        } else {
+            append(chunk, start, end);
+            consumer.accept(type, carry, 0, carryLength);
+            carryLength = 0;
+        }
+    }
+
+    /**
+     * Keeps the token still open at the end of a chunk so it can be continued by the next one.
+     */
+    protected void carry(TokenType type, char[] chunk, int start, int end) {
+        append(chunk, start, end);
+        pending = type;
+    }
+
+    private void append(char[] chunk, int start, int end) {
+        int length = end - start;
+        if (carryLength + length > carry.length) {
+            char[] grown = new char[Math.max(carry.length * 2, carryLength + length)];
+            System.arraycopy(carry, 0, grown, 0, carryLength);
+            carry = grown;
+        }
+        System.arraycopy(chunk, start, carry, carryLength, length);
+        carryLength += length;
+    }
+
+    private void finish() {
+        if (pending != null) {
+            consumer.accept(pending, carry, 0, carryLength);
+            carryLength = 0;
+            pending = null;
+        }
+    }
+}
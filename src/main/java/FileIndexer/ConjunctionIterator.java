@@ -0,0 +1,72 @@
+package main.java.FileIndexer;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Iterates over the documents produced by all of the required iterators and none of the excluded
+ * ones. The rarest required iterator leads and the others are only advanced to its candidates,
+ * so the work done tracks the shortest posting list rather than the longest.
+ */
+class ConjunctionIterator extends DocIdIterator {
+    private final DocIdIterator lead;
+    private final DocIdIterator[] others;
+    private final DocIdIterator[] excluded;
+    private int doc = -1;
+
+    ConjunctionIterator(DocIdIterator[] required, DocIdIterator[] excluded) {
+        DocIdIterator[] sorted = required.clone();
+        Arrays.sort(sorted, Comparator.comparingLong(DocIdIterator::cost));
+        this.lead = sorted[0];
+        this.others = Arrays.copyOfRange(sorted, 1, sorted.length);
+        this.excluded = excluded;
+    }
+
+    @Override
+    public int docId() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        return doc = align(lead.nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        return doc = align(lead.advance(target));
+    }
+
+    /**
+     * Leapfrogs from a lead candidate until every required iterator agrees on a document
+     * that no excluded iterator contains.
+     */
+    private int align(int candidate) {
+        candidates:
+        while (candidate != NO_MORE_DOCS) {
+            for (DocIdIterator other : others) {
+                int otherDoc = other.docId() < candidate ? other.advance(candidate) : other.docId();
+                if (otherDoc > candidate) {
+                    // Skip the lead past every document this iterator lacks
+                    candidate = lead.advance(otherDoc);
+                    continue candidates;
+                }
+            }
+
+            for (DocIdIterator exclusion : excluded) {
+                int excludedDoc = exclusion.docId() < candidate ? exclusion.advance(candidate) : exclusion.docId();
+                if (excludedDoc == candidate) {
+                    candidate = lead.nextDoc();
+                    continue candidates;
+                }
+            }
+            return candidate;
+        }
+        return NO_MORE_DOCS;
+    }
+
+    @Override
+    public long cost() {
+        return lead.cost();
+    }
+}
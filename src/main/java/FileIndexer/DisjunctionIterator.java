@@ -0,0 +1,42 @@
+package main.java.FileIndexer;
+
+/**
+ * Iterates over the documents produced by any of the given iterators, each reported once.
+ */
+class DisjunctionIterator extends DocIdIterator {
+    private final DocIdIterator[] iterators;
+    private int doc = -1;
+
+    DisjunctionIterator(DocIdIterator[] iterators) {
+        this.iterators = iterators;
+    }
+
+    @Override
+    public int docId() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        return doc == NO_MORE_DOCS ? doc : advance(doc + 1);
+    }
+
+    @Override
+    public int advance(int target) {
+        int next = NO_MORE_DOCS;
+        for (DocIdIterator iterator : iterators) {
+            int iteratorDoc = iterator.docId() < target ? iterator.advance(target) : iterator.docId();
+            next = Math.min(next, iteratorDoc);
+        }
+        return doc = next;
+    }
+
+    @Override
+    public long cost() {
+        long cost = 0;
+        for (DocIdIterator iterator : iterators) {
+            cost += iterator.cost();
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,81 @@
+package main.java.FileIndexer;
+
+/**
+ * Iterates over document IDs in increasing order. Query evaluation combines these iterators,
+ * so results are produced one document at a time without building intermediate sets.
+ */
+public abstract class DocIdIterator {
+    /**
+     * Returned once the iterator is exhausted; greater than every valid document ID.
+     */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /**
+     * Returns the current document ID: -1 before the first call to {@link #nextDoc()} or
+     * {@link #advance(int)}, and {@link #NO_MORE_DOCS} once exhausted.
+     *
+     * @return the current document ID
+     */
+    public abstract int docId();
+
+    /**
+     * Moves to the next document.
+     *
+     * @return the next document ID, or {@link #NO_MORE_DOCS}
+     */
+    public abstract int nextDoc();
+
+    /**
+     * Moves to the first document whose ID is at least the target. The target must be greater
+     * than the current document ID. The default implementation steps with {@link #nextDoc()}.
+     *
+     * @param target the document ID to advance to
+     * @return the first document ID at or after the target, or {@link #NO_MORE_DOCS}
+     */
+    public int advance(int target) {
+        int doc;
+        do {
+            doc = nextDoc();
+        } while (doc < target);
+        return doc;
+    }
+
+    /**
+     * Returns an upper bound on the number of documents the iterator produces, used to order
+     * the iterators of a conjunction from the rarest to the most common.
+     *
+     * @return the estimated number of documents
+     */
+    public abstract long cost();
+
+    /**
+     * Returns an iterator over no documents.
+     *
+     * @return an exhausted iterator
+     */
+    public static DocIdIterator empty() {
+        return new DocIdIterator() {
+            private int doc = -1;
+
+            @Override
+            public int docId() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() {
+                return doc = NO_MORE_DOCS;
+            }
+
+            @Override
+            public int advance(int target) {
+                return doc = NO_MORE_DOCS;
+            }
+
+            @Override
+            public long cost() {
+                return 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,376 @@
+package main.java.FileIndexer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns each indexed file path a compact integer document ID and maps IDs back to paths.
+ * For each document it also keeps the modification time, size and content checksum the file had
+ * when it was indexed, so changed files can be detected without re-reading unchanged ones,
+ * and its length in tokens, which relevance scoring normalizes term frequencies by.
+ * The paths are also kept in a {@link PathTrie}, so the documents under a directory are found
+ * without looking at every path.
+ *
+ * <p>The per-document entries are stored in chunks of {@value #CHUNK_SIZE} IDs, which snapshot views
+ * share with the table; the table copies a chunk before changing an entry a view can see, so the
+ * first change after a snapshot copies one chunk and the chunk references rather than every entry.
+ */
+public class DocumentTable {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    // Null in a snapshot view until a lookup by path needs it
+    private Map<String, Integer> ids = new HashMap<>();
+    // The same paths by directory, for lookups of the files under a directory; null in a view until needed
+    private PathTrie tree = new PathTrie();
+    // Chunk i holds the entries of IDs i * CHUNK_SIZE and up; only the last may be smaller than CHUNK_SIZE
+    private Chunk[] chunks = { new Chunk(16, 0) };
+    // Whether the chunks array is shared with a view, so it is copied before a chunk in it is replaced
+    private boolean chunksShared;
+    // Incremented by every snapshot; chunks made before the latest one are shared with a view
+    private int epoch;
+    private int nextId;
+    private int count;
+    // Sum of the lengths of the live documents
+    private long totalLength;
+    // Entries below this ID are shared with a snapshot view and are copied before being changed in place
+    private int sharedCount;
+
+    /**
+     * Returns the document ID for a path, assigning a new one if the path is not known yet.
+     *
+     * @param path the absolute file path
+     * @return the document ID
+     */
+    public int getOrAdd(String path) {
+        Integer id = ids.get(path);
+        if (id == null) {
+            id = nextId++;
+            count++;
+            ids.put(path, id);
+            tree.put(path, id);
+
+            // Views only read IDs below their own next ID, so a new entry is written in place
+            Chunk chunk = appendChunk(id);
+            int slot = id & (CHUNK_SIZE - 1);
+            chunk.paths[slot] = path;
+            // Until the file is read, its metadata never matches the file on disk
+            chunk.modifiedTimes[slot] = -1;
+            chunk.sizes[slot] = -1;
+            chunk.checksums[slot] = -1;
+            chunk.lengths[slot] = 0;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the document ID for a path.
+     *
+     * @param path the absolute file path
+     * @return the document ID, or -1 if the path is not in the table
+     */
+    public int getId(String path) {
+        Integer id = idMap().get(path);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the path for a document ID.
+     *
+     * @param id the document ID
+     * @return the absolute file path, or null if the ID has been removed
+     */
+    public String getPath(int id) {
+        if (id < 0 || id >= nextId) {
+            throw new IndexOutOfBoundsException("Index: " + id + ", Size: " + nextId);
+        }
+        return chunks[id >>> CHUNK_BITS].paths[id & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Records the state of a file at the time it was indexed.
+     *
+     * @param id       the document ID
+     * @param modified the last modification time in milliseconds
+     * @param size     the size in bytes
+     * @param checksum the CRC32C of the content
+     */
+    public void setFileInfo(int id, long modified, long size, long checksum) {
+        Chunk chunk = writableChunk(id);
+        int slot = id & (CHUNK_SIZE - 1);
+        chunk.modifiedTimes[slot] = modified;
+        chunk.sizes[slot] = size;
+        chunk.checksums[slot] = checksum;
+    }
+
+    public long getModified(int id) {
+        return chunks[id >>> CHUNK_BITS].modifiedTimes[id & (CHUNK_SIZE - 1)];
+    }
+
+    public long getSize(int id) {
+        return chunks[id >>> CHUNK_BITS].sizes[id & (CHUNK_SIZE - 1)];
+    }
+
+    public long getChecksum(int id) {
+        return chunks[id >>> CHUNK_BITS].checksums[id & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Records the number of tokens in a document.
+     *
+     * @param id     the document ID
+     * @param length the number of tokens
+     */
+    public void setLength(int id, int length) {
+        Chunk chunk = writableChunk(id);
+        int slot = id & (CHUNK_SIZE - 1);
+        totalLength += length - chunk.lengths[slot];
+        chunk.lengths[slot] = length;
+    }
+
+    public int getLength(int id) {
+        return chunks[id >>> CHUNK_BITS].lengths[id & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Returns the average number of tokens in the documents of the table.
+     *
+     * @return the average document length, or 0 if the table is empty
+     */
+    public double getAverageLength() {
+        return count == 0 ? 0 : (double) totalLength / count;
+    }
+
+    /**
+     * Removes a document from the table. Its ID is not reused.
+     *
+     * @param id the document ID to remove
+     */
+    public void remove(int id) {
+        String path = getPath(id);
+        if (path != null) {
+            ids.remove(path);
+            tree.remove(path);
+            writableChunk(id).paths[id & (CHUNK_SIZE - 1)] = null;
+            count--;
+            setLength(id, 0);
+        }
+    }
+
+    /**
+     * Returns the ID the next new document will receive; every ID in use is below it.
+     *
+     * @return one more than the highest document ID assigned so far
+     */
+    public int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Returns the number of documents currently in the table.
+     *
+     * @return the number of live documents
+     */
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns a read-only view of the table as it is now, for an {@link IndexSnapshot}. The view
+     * shares this table's chunks: documents added later get IDs beyond the view's, and a chunk
+     * holding entries the view can see is copied before this table changes them.
+     *
+     * @return the view
+     */
+    DocumentTable snapshot() {
+        DocumentTable view = new DocumentTable();
+        view.ids = null;
+        view.tree = null;
+        view.chunks = chunks;
+        view.nextId = nextId;
+        view.count = count;
+        view.totalLength = totalLength;
+        chunksShared = true;
+        sharedCount = nextId;
+        epoch++;
+        return view;
+    }
+
+    /**
+     * Returns the chunk of an existing entry, copying it first if a view can see the entry.
+     */
+    private Chunk writableChunk(int id) {
+        int index = id >>> CHUNK_BITS;
+        Chunk chunk = chunks[index];
+        if (id < sharedCount && chunk.epoch != epoch) {
+            chunk = chunk.copy(chunk.paths.length, epoch);
+            replaceChunk(index, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the chunk a new ID goes in, adding a chunk or growing the last one if needed.
+     */
+    private Chunk appendChunk(int id) {
+        int index = id >>> CHUNK_BITS;
+        if (index == chunks.length) {
+            chunks = Arrays.copyOf(chunks, 2 * index);
+            chunksShared = false;
+        }
+        Chunk chunk = chunks[index];
+        if (chunk == null) {
+            chunk = new Chunk(CHUNK_SIZE, epoch);
+            chunks[index] = chunk;
+        } else if ((id & (CHUNK_SIZE - 1)) == chunk.paths.length) {
+            // A grown chunk is a new one, so a view holding the old one never sees its arrays change
+            chunk = chunk.copy(Math.min(CHUNK_SIZE, 2 * chunk.paths.length), epoch);
+            replaceChunk(index, chunk);
+        }
+        return chunk;
+    }
+
+    private void replaceChunk(int index, Chunk chunk) {
+        if (chunksShared) {
+            chunks = chunks.clone();
+            chunksShared = false;
+        }
+        chunks[index] = chunk;
+    }
+
+    /**
+     * Counts the documents whose path is the given one or lies below it, as a directory.
+     *
+     * @param path an absolute file or directory path
+     * @return the number of documents at or under the path
+     */
+    public int countUnder(String path) {
+        return pathTree().countUnder(path);
+    }
+
+    /**
+     * Returns the IDs of the documents whose path is the given one or lies below it, as a directory.
+     *
+     * @param path an absolute file or directory path
+     * @return the document IDs in increasing order
+     */
+    public int[] getIdsUnder(String path) {
+        IntList found = new IntList();
+        pathTree().collectUnder(path, found);
+        int[] sorted = new int[found.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = found.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Returns the path to ID map, building it from the paths on first use in a view.
+     */
+    private synchronized Map<String, Integer> idMap() {
+        if (ids == null) {
+            Map<String, Integer> built = new HashMap<>(count * 2);
+            for (int id = 0; id < nextId; id++) {
+                String path = getPath(id);
+                if (path != null) {
+                    built.put(path, id);
+                }
+            }
+            ids = built;
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the path trie, building it from the paths on first use in a view.
+     */
+    private synchronized PathTrie pathTree() {
+        if (tree == null) {
+            PathTrie built = new PathTrie();
+            for (int id = 0; id < nextId; id++) {
+                String path = getPath(id);
+                if (path != null) {
+                    built.put(path, id);
+                }
+            }
+            tree = built;
+        }
+        return tree;
+    }
+
+    /**
+     * Estimates the heap bytes held by the table: the paths, the path to ID map, the path trie
+     * and the metadata arrays.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateBytes() {
+        long bytes = IndexStats.arrayBytes(chunks.length, IndexStats.REFERENCE_BYTES);
+        for (Chunk chunk : chunks) {
+            if (chunk != null) {
+                int capacity = chunk.paths.length;
+                bytes += IndexStats.OBJECT_BYTES + IndexStats.arrayBytes(capacity, IndexStats.REFERENCE_BYTES)
+                        + 3 * IndexStats.arrayBytes(capacity, 8) + IndexStats.arrayBytes(capacity, 4);
+            }
+        }
+        for (int id = 0; id < nextId; id++) {
+            String path = getPath(id);
+            if (path != null) {
+                // The map shares the path string and adds an entry and a boxed ID
+                bytes += IndexStats.stringBytes(path) + IndexStats.MAP_ENTRY_BYTES + IndexStats.OBJECT_BYTES;
+            }
+        }
+        return bytes + (tree == null ? 0 : tree.estimateBytes());
+    }
+
+    /**
+     * Removes all documents and restarts ID assignment from zero.
+     */
+    public void clear() {
+        ids.clear();
+        tree.clear();
+        chunks = new Chunk[] { new Chunk(16, epoch) };
+        chunksShared = false;
+        nextId = 0;
+        count = 0;
+        totalLength = 0;
+        sharedCount = 0;
+    }
+
+    /**
+     * The entries of up to {@link #CHUNK_SIZE} consecutive document IDs.
+     */
+    private static final class Chunk {
+        final String[] paths;
+        final long[] modifiedTimes;
+        final long[] sizes;
+        final long[] checksums;
+        final int[] lengths;
+        // The table's epoch when the chunk was made; an older chunk may be seen by a view
+        final int epoch;
+
+        Chunk(int capacity, int epoch) {
+            this(new String[capacity], new long[capacity], new long[capacity], new long[capacity], new int[capacity], epoch);
+        }
+
+        private Chunk(String[] paths, long[] modifiedTimes, long[] sizes, long[] checksums, int[] lengths, int epoch) {
+            this.paths = paths;
+            this.modifiedTimes = modifiedTimes;
+            this.sizes = sizes;
+            this.checksums = checksums;
+            this.lengths = lengths;
+            this.epoch = epoch;
+        }
+
+        Chunk copy(int capacity, int epoch) {
+            return new Chunk(Arrays.copyOf(paths, capacity), Arrays.copyOf(modifiedTimes, capacity),
+                    Arrays.copyOf(sizes, capacity), Arrays.copyOf(checksums, capacity), Arrays.copyOf(lengths, capacity), epoch);
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package main.java.FileIndexer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Builds a segment file for a directory tree in bounded memory, for corpora whose postings do not
+ * fit in the heap. Files are tokenized into a {@link PartialIndex} until its estimated size
+ * reaches the memory budget; its terms are then written in sorted order to a run file on disk and
+ * a new partial index is started. Once every file is read, the runs are merged k ways at a time
+ * into the segment, term by term, streaming each posting list rather than holding it in memory.
+ * Runs hold consecutive documents, so the postings of a term are merged by appending them in run
+ * order. When there are more runs than the budget allows reading at once, groups of them are
+ * first merged into longer runs.
+ *
+ * <p>The heap used is the budget plus the term index of the segment being written (8 bytes per
+ * distinct term). The runs are written to a temporary directory next to the segment and deleted
+ * afterwards. The segment can then be {@link Index#load(Path) loaded}, which maps the postings
+ * and reads only the document table into the heap.
+ */
+public class ExternalIndexBuilder {
+    // Each run read by a merge has a buffer of this size, and a merge reads at most this many runs
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+    private static final int MAX_FAN_IN = 256;
+
+    private final Index index;
+    private final long memoryBudget;
+    private final boolean positional;
+    private final int fanIn;
+    private PartialIndex partial;
+    private final Index.ScannedFile scanned = new Index.ScannedFile();
+    private Path spillDirectory;
+    private DataOutputStream documents;
+    private final List<Path> runs = new ArrayList<>();
+    private int documentCount;
+    // What the last build did, for the report
+    private int runCount;
+    private long spilledBytes;
+    private long peakBytes;
+    private int mergePasses;
+    private long elapsedNanos;
+
+    /**
+     * Constructs a builder tokenizing with an index's tokenizer strategy and position setting.
+     *
+     * @param index        the index whose settings apply; it is not modified, but its statistics record the time spent
+     * @param memoryBudget the bytes of postings to buffer before they are spilled to a run, at least 1 MB
+     */
+    public ExternalIndexBuilder(Index index, long memoryBudget) {
+        if (memoryBudget < 1 << 20) {
+            throw new IllegalArgumentException("Memory budget must be at least 1 MB: " + memoryBudget);
+        }
+        this.index = index;
+        this.memoryBudget = memoryBudget;
+        this.positional = index.isPositional();
+        this.fanIn = (int) Math.max(2, Math.min(MAX_FAN_IN, memoryBudget / READ_BUFFER_BYTES));
+    }
+
+    /**
+     * Indexes a file or directory recursively into a new segment file. A builder can be used for
+     * several builds; the report covers the last one.
+     *
+     * @param path   the file or directory to index
+     * @param target the segment file to write
+     * @throws IOException if an I/O error occurs; the target is left untouched then
+     */
+    public void build(File path, Path target) throws IOException {
+        long start = System.nanoTime();
+        partial = new PartialIndex(positional);
+        runs.clear();
+        documentCount = 0;
+        runCount = 0;
+        spilledBytes = 0;
+        peakBytes = 0;
+        mergePasses = 0;
+
+        spillDirectory = Files.createTempDirectory(target.toAbsolutePath().getParent(), "spill").toAbsolutePath();
+        index.getStats().beginIndexing();
+        try {
+            documents = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(spillDirectory.resolve("documents")), READ_BUFFER_BYTES));
+            try {
+                walk(path);
+                spill();
+            } finally {
+                documents.close();
+            }
+
+            while (runs.size() > fanIn) {
+                mergePass();
+            }
+            writeSegment(target);
+        } finally {
+            partial = null;
+            deleteSpillDirectory();
+            index.getStats().endIndexing();
+            elapsedNanos = System.nanoTime() - start;
+        }
+    }
+
+    private void walk(File path) throws IOException {
+        if (path.isDirectory()) {
+            // The runs may be spilled inside the tree being indexed
+            if (path.getAbsoluteFile().toPath().equals(spillDirectory)) {
+                return;
+            }
+            for (File file : index.listFiles(path)) {
+                walk(file);
+            }
+        } else if (path.isFile()) {
+            addFile(path);
+        }
+    }
+
+    /**
+     * Tokenizes a file into the partial index, spilling it once it reaches the budget.
+     */
+    private void addFile(File file) throws IOException {
+        // Take the metadata first, so a change made while reading is picked up by the next refresh
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        scanned.reset(attributes.lastModifiedTime().toMillis(), attributes.size(), false);
+        CRC32C checksum = new CRC32C();
+        partial.beginDocument();
+        index.scan(new CheckedInputStream(Files.newInputStream(file.toPath()), checksum), scanned, checksum, partial);
+        partial.endDocument(file.getAbsolutePath(), scanned);
+
+        long bytes = partial.estimateBytes();
+        peakBytes = Math.max(peakBytes, bytes);
+        if (bytes >= memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * Writes the partial index to a new run, its terms in sorted order and its documents numbered
+     * after those of the earlier runs, and appends its documents to the document file.
+     */
+    private void spill() throws IOException {
+        if (partial.size() == 0) {
+            return;
+        }
+        TermTable terms = partial.getTerms();
+        String[] strings = new String[terms.size()];
+        Integer[] order = new Integer[terms.size()];
+        for (int term = 0; term < strings.length; term++) {
+            strings[term] = terms.getTerm(term);
+            order[term] = term;
+        }
+        Arrays.sort(order, Comparator.comparing(term -> strings[term]));
+
+        Path run = spillDirectory.resolve("run-" + runCount++);
+        try (RunWriter writer = new RunWriter(run)) {
+            for (int term : order) {
+                PartialIndex.Postings postings = partial.getPostings(term);
+                writer.startTerm(strings[term], postings.docs.size());
+                int position = 0;
+                for (int i = 0; i < postings.docs.size(); i++) {
+                    int freq = postings.freqs.get(i);
+                    byte[] encoded = null;
+                    if (postings.positions != null) {
+                        encoded = PostingList.encodePositions(postings.positions, position, position + freq);
+                        position += freq;
+                    }
+                    writer.addPosting(documentCount + postings.docs.get(i), freq, encoded, encoded == null ? 0 : encoded.length);
+                }
+            }
+            writer.finish();
+        }
+        runs.add(run);
+        spilledBytes += Files.size(run);
+
+        for (int local = 0; local < partial.size(); local++) {
+            PartialIndex.Document document = partial.getDocument(local);
+            writeString(documents, document.path);
+            documents.writeLong(document.modified);
+            documents.writeLong(document.size);
+            documents.writeLong(document.checksum);
+            writeVarInt(documents, document.length);
+        }
+        documentCount += partial.size();
+        partial = new PartialIndex(positional);
+    }
+
+    /**
+     * Merges consecutive groups of runs into longer runs, so that the next pass reads fewer.
+     */
+    private void mergePass() throws IOException {
+        List<Path> merged = new ArrayList<>();
+        for (int from = 0; from < runs.size(); from += fanIn) {
+            List<Path> group = runs.subList(from, Math.min(runs.size(), from + fanIn));
+            Path run = spillDirectory.resolve("run-" + runCount++);
+            try (RunWriter writer = new RunWriter(run)) {
+                merge(group, writer);
+                writer.finish();
+            }
+            for (Path input : group) {
+                Files.delete(input);
+            }
+            merged.add(run);
+            spilledBytes += Files.size(run);
+        }
+        runs.clear();
+        runs.addAll(merged);
+        mergePasses++;
+    }
+
+    private void writeSegment(Path target) throws IOException {
+        String strategyName = index.getTokenizerContext().getStrategy().getClass().getName();
+        try (SegmentWriter writer = new SegmentWriter(target, strategyName, positional, documentCount);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(
+                     Files.newInputStream(spillDirectory.resolve("documents")), READ_BUFFER_BYTES))) {
+            for (int docId = 0; docId < documentCount; docId++) {
+                writer.addDocument(readString(in), in.readLong(), in.readLong(), in.readLong(), readVarInt(in));
+            }
+            merge(runs, new PostingSink() {
+                @Override
+                public void startTerm(String term, int count) throws IOException {
+                    writer.startTerm(term, count);
+                }
+
+                @Override
+                public void addPosting(int docId, int freq, byte[] positions, int length) throws IOException {
+                    writer.addPosting(docId, freq, positions, length);
+                }
+            });
+            writer.finish();
+        }
+        mergePasses++;
+    }
+
+    /**
+     * Merges runs of consecutive documents, given in document order, into a sink. Each term's
+     * postings are streamed from the runs that have it, one run after the other.
+     */
+    private static void merge(List<Path> runs, PostingSink sink) throws IOException {
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        // Smallest term first, and for the same term the earliest run, whose documents come first
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+                Comparator.<RunReader, String>comparing(reader -> reader.term).thenComparingInt(reader -> reader.order));
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run, readers.size());
+                readers.add(reader);
+                if (reader.nextTerm()) {
+                    queue.add(reader);
+                }
+            }
+
+            List<RunReader> current = new ArrayList<>();
+            while (!queue.isEmpty()) {
+                current.clear();
+                current.add(queue.poll());
+                String term = current.get(0).term;
+                int count = current.get(0).count;
+                while (!queue.isEmpty() && queue.peek().term.equals(term)) {
+                    RunReader reader = queue.poll();
+                    current.add(reader);
+                    count += reader.count;
+                }
+
+                sink.startTerm(term, count);
+                for (RunReader reader : current) {
+                    for (int i = 0; i < reader.count; i++) {
+                        reader.readPosting();
+                        sink.addPosting(reader.docId, reader.freq, reader.positions, reader.positionsLength);
+                    }
+                    if (reader.nextTerm()) {
+                        queue.add(reader);
+                    }
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private void deleteSpillDirectory() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spillDirectory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(spillDirectory);
+    }
+
+    /**
+     * Reports the last build: the files and time, the runs spilled and merge passes made, and the
+     * largest estimated size the buffered postings reached.
+     *
+     * @return the report
+     */
+    @Override
+    public String toString() {
+        return String.format("External build: %d files in %.2f s, %d runs (%.1f MB spilled), %d merge passes, "
+                        + "peak ~%.1f MB buffered of a %.1f MB budget",
+                documentCount, elapsedNanos / 1e9, runCount, spilledBytes / (1024.0 * 1024), mergePasses,
+                peakBytes / (1024.0 * 1024), memoryBudget / (1024.0 * 1024));
+    }
+
+    /**
+     * Receives the terms of a merge in sorted order, each followed by its postings.
+     */
+    private interface PostingSink {
+        void startTerm(String term, int count) throws IOException;
+
+        void addPosting(int docId, int freq, byte[] positions, int length) throws IOException;
+    }
+
+    /**
+     * Writes a run: per term in sorted order, the term, its posting count and per posting a doc ID
+     * delta, the term frequency and the length and bytes of the encoded positions, ending with
+     * an empty term.
+     */
+    private static final class RunWriter implements PostingSink, AutoCloseable {
+        private final DataOutputStream out;
+        private int previousDocId;
+
+        RunWriter(Path run) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), READ_BUFFER_BYTES));
+        }
+
+        @Override
+        public void startTerm(String term, int count) throws IOException {
+            writeString(out, term);
+            writeVarInt(out, count);
+            previousDocId = 0;
+        }
+
+        @Override
+        public void addPosting(int docId, int freq, byte[] positions, int length) throws IOException {
+            writeVarInt(out, docId - previousDocId);
+            previousDocId = docId;
+            writeVarInt(out, freq);
+            writeVarInt(out, length);
+            if (length > 0) {
+                out.write(positions, 0, length);
+            }
+        }
+
+        void finish() throws IOException {
+            writeString(out, "");
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a run term by term and posting by posting, into reused fields.
+     */
+    private static final class RunReader {
+        final int order;
+        private final DataInputStream in;
+        String term;
+        int count;
+        int docId;
+        int freq;
+        byte[] positions = new byte[64];
+        int positionsLength;
+
+        RunReader(Path run, int order) throws IOException {
+            this.order = order;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), READ_BUFFER_BYTES));
+        }
+
+        /**
+         * Moves to the next term, once every posting of the current one has been read.
+         *
+         * @return false at the end of the run
+         */
+        boolean nextTerm() throws IOException {
+            term = readString(in);
+            if (term.isEmpty()) {
+                return false;
+            }
+            count = readVarInt(in);
+            docId = 0;
+            return true;
+        }
+
+        void readPosting() throws IOException {
+            docId += readVarInt(in);
+            freq = readVarInt(in);
+            positionsLength = readVarInt(in);
+            if (positionsLength > positions.length) {
+                positions = new byte[Math.max(positionsLength, 2 * positions.length)];
+            }
+            in.readFully(positions, 0, positionsLength);
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated run file");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,133 @@
+package main.java.FileIndexer;
+
+import java.util.List;
+
+/**
+ * Matches the documents containing any term within a number of edits (insertions, deletions or
+ * substitutions of one character) of a word. The dictionary is walked in sorted order while a
+ * Levenshtein automaton, simulated one row of the edit distance table per character, follows
+ * along; the rows of a shared prefix are reused between neighbouring terms, and as soon as a
+ * prefix can no longer come within reach, every term starting with it is skipped with one seek.
+ * The work therefore follows the terms the automaton can reach, not the size of the vocabulary.
+ */
+public class FuzzyQuery extends MultiTermQuery {
+    /**
+     * The largest supported number of edits; beyond it almost every short term matches.
+     */
+    public static final int MAX_EDITS = 2;
+
+    private final String word;
+    private final int maxEdits;
+
+    /**
+     * Constructs a query for the terms within the given number of edits of a word.
+     *
+     * @param word     the word to match; it is lowercased like the indexed tokens
+     * @param maxEdits the largest edit distance to accept, from 0 to {@link #MAX_EDITS}
+     */
+    public FuzzyQuery(String word, int maxEdits) {
+        if (maxEdits < 0 || maxEdits > MAX_EDITS) {
+            throw new IllegalArgumentException("Edit distance must be between 0 and " + MAX_EDITS + ": " + maxEdits);
+        }
+        this.word = word.toLowerCase();
+        this.maxEdits = maxEdits;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    public int getMaxEdits() {
+        return maxEdits;
+    }
+
+    @Override
+    void collectTerms(TermCursor terms, List<String> matches) {
+        // rows[d][i] is the edit distance between the first d characters of the term and the first i of the word
+        int[][] rows = new int[word.length() + maxEdits + 2][word.length() + 1];
+        for (int i = 0; i <= word.length(); i++) {
+            rows[0][i] = i;
+        }
+
+        String previous = "";
+        String term = terms.next();
+        while (term != null) {
+            // The rows for the prefix shared with the previous term are still valid
+            int depth = Math.min(commonPrefix(previous, term), rows.length - 1);
+            int dead = -1;
+            for (; depth < term.length(); depth++) {
+                // A term longer than the word plus the edits is out of reach once it runs out of rows
+                if (depth + 1 == rows.length || !step(rows[depth], rows[depth + 1], term.charAt(depth))) {
+                    dead = depth + 1;
+                    break;
+                }
+            }
+
+            if (dead < 0) {
+                if (rows[term.length()][word.length()] <= maxEdits) {
+                    matches.add(term);
+                }
+                previous = term;
+                term = terms.next();
+            } else {
+                // No term starting with these characters can match: jump past all of them
+                String prefix = term.substring(0, dead);
+                String next = successor(prefix);
+                previous = prefix;
+                term = next == null ? null : terms.seek(next);
+            }
+        }
+    }
+
+    /**
+     * Computes the next row of the edit distance table for one more character of the term.
+     *
+     * @return false if every entry of the row exceeds the edit limit, so no extension can match
+     */
+    private boolean step(int[] row, int[] next, char c) {
+        next[0] = row[0] + 1;
+        int best = next[0];
+        for (int i = 1; i <= word.length(); i++) {
+            int substitution = row[i - 1] + (word.charAt(i - 1) == c ? 0 : 1);
+            next[i] = Math.min(substitution, Math.min(row[i], next[i - 1]) + 1);
+            best = Math.min(best, next[i]);
+        }
+        return best <= maxEdits;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int limit = Math.min(a.length(), b.length());
+        int length = 0;
+        while (length < limit && a.charAt(length) == b.charAt(length)) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Returns the smallest string greater than every string starting with the prefix, or null if there is none.
+     */
+    private static String successor(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        return end == 0 ? null : prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof FuzzyQuery && word.equals(((FuzzyQuery) other).word)
+                && maxEdits == ((FuzzyQuery) other).maxEdits;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * word.hashCode() + maxEdits;
+    }
+
+    @Override
+    public String toString() {
+        return word + "~" + maxEdits;
+    }
+}
@@ -1,16 +1,56 @@
 package main.java.FileIndexer;
 
 import java.io.File;
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
 
 /**
  * Class responsible for indexing files and querying the index.
+ *
+ * <p>Changes are made under the index lock, one writer at a time, and become visible to queries
+ * when they are published as an {@link IndexSnapshot}: at the end of every call that changes the
+ * index, and at least every 100 ms during long ones. Queries run against the latest published
+ * snapshot without taking the lock, so they neither wait for writers nor see a file half indexed.
  */
 public class Index {
-    private final Map<String, Set<String>> index = new HashMap<>();
+    // How often a long-running change publishes its progress
+    private static final long PUBLISH_INTERVAL_NANOS = 100000000L;
+
+    private final PostingTable index = new PostingTable();
+    // The same terms in sorted order, for prefix and wildcard scans
+    private final TermDictionary dictionary = new TermDictionary();
+    private final DocumentTable documents = new DocumentTable();
+    // Forward index: for each document ID, the posting lists that contain it
+    private final List<PostingList[]> forwardIndex = new ArrayList<>();
     private final TokenizerContext tokenizerContext;
+    // Whether token positions are recorded, which phrase queries need
+    private boolean positional;
+    // Incremented by every change to the indexed documents
+    private long generation;
+    // Loaded segment answering queries until the first change pulls it into the maps above
+    private Segment segment;
+    // Total length of the posting lists in the term map
+    private long postingCount;
+    private final IndexStats stats = new IndexStats(this);
+    // Each scanning thread's reusable term table and counts, which grow to the largest file's vocabulary
+    private final ThreadLocal<ScannedFile> scanBuffers = ThreadLocal.withInitial(ScannedFile::new);
+    // Posting lists changed since the last snapshot was published
+    private final List<PostingList> unpublished = new ArrayList<>();
+    // Posting list views of the latest snapshot, sharing unchanged terms with the earlier ones
+    private TermMap published = TermMap.EMPTY;
+    private volatile IndexSnapshot snapshot;
+    private long publishedAt;
 
     /**
      * Constructs an Index with the specified tokenizer context.
@@ -18,7 +58,20 @@ public class Index {
      * @param tokenizerContext the tokenizer context to use
      */
     public Index(TokenizerContext tokenizerContext) {
+        this(tokenizerContext, false);
+    }
+
+    /**
+     * Constructs an Index with the specified tokenizer context, optionally recording the position
+     * of every token so that {@link PhraseQuery phrase queries} can be answered from the postings.
+     *
+     * @param tokenizerContext the tokenizer context to use
+     * @param positional       whether to record token positions
+     */
+    public Index(TokenizerContext tokenizerContext, boolean positional) {
         this.tokenizerContext = tokenizerContext;
+        this.positional = positional;
+        publish();
     }
 
     /**
@@ -28,26 +81,352 @@ public class Index {
      * @throws IOException if an I/O error occurs reading from the file
      */
     public void indexFile(File file) throws IOException {
+        stats.beginIndexing();
+        try {
+            indexDocument(file);
+        } finally {
+            stats.endIndexing();
+            publish();
+        }
+    }
+
+    private void indexDocument(File file) throws IOException {
         if (!file.isFile()) {
             return;
         }
 
-        String content = new String(Files.readAllBytes(file.toPath()));
-        List<Token> tokens = tokenizerContext.executeStrategy(content);
+        addDocument(file.getAbsolutePath(), scanFile(file));
+    }
+
+    /**
+     * Reads and tokenizes a file, returning the distinct lowercase token values it contains and how
+     * often each occurs, along with its length in tokens, modification time, size and content
+     * checksum. In a positional index the ordinal of every occurrence of each token is kept too.
+     * The file is decoded as UTF-8 and streamed through the tokenizer in chunks, so memory use
+     * depends on the file's vocabulary rather than its size. The time spent reading and decoding
+     * and the time spent tokenizing are recorded separately in the {@link #getStats() statistics}.
+     * Does not touch the index, so it is safe to call from several threads at once. Each thread
+     * reuses one result for all its scans, so it must be added to the index before the next one.
+     *
+     * @param file the file to tokenize
+     * @return the token values and metadata of the file
+     * @throws IOException if an I/O error occurs reading from the file
+     */
+    private ScannedFile scanFile(File file) throws IOException {
+        // Take the metadata first, so a change made while reading is picked up by the next refresh
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        ScannedFile scanned = scanBuffers.get();
+        scanned.reset(attributes.lastModifiedTime().toMillis(), attributes.size(), positional);
+        CRC32C checksum = new CRC32C();
+        scan(new CheckedInputStream(Files.newInputStream(file.toPath()), checksum), scanned, checksum, scanned);
+        return scanned;
+    }
+
+    /**
+     * Tokenizes the content of a file into a sink, which may be the scanned file itself or
+     * something collecting the terms of many files. The length in tokens and the checksum are
+     * set on the scanned file.
+     *
+     * @param in       the content of the file, closed afterwards
+     * @param scanned  the metadata of the file
+     * @param checksum the checksum of the content, read once the stream is exhausted
+     * @param sink     receives every token value with its position
+     * @throws IOException if an I/O error occurs reading from the stream
+     */
+    void scan(InputStream in, ScannedFile scanned, Checksum checksum, TermSink sink) throws IOException {
+        long start = System.nanoTime();
+        TimedReader reader = new TimedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try (reader) {
+            // Tokens arrive already lowercased and go to the sink as characters, so nothing is allocated per token
+            tokenizerContext.executeStrategyLowercase(reader, (tokenType, buffer, offset, length) -> {
+                if (length != 0) {
+                    sink.add(buffer, offset, length, scanned.length++);
+                }
+            });
+        }
+        scanned.checksum = checksum.getValue();
+        long total = System.nanoTime() - start;
+        stats.recordScan(scanned.size, reader.nanos, total - reader.nanos);
+    }
+
+    /**
+     * Receives the token values of a file in order, with their positions. The characters are only
+     * valid during the call.
+     */
+    interface TermSink {
+        void add(char[] buffer, int offset, int length, int position);
+    }
+
+    /**
+     * Reader that adds up the time spent in its reads, so reading can be told apart from the
+     * tokenizing done between them.
+     */
+    private static final class TimedReader extends FilterReader {
+        long nanos;
+
+        TimedReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(buffer, offset, length);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * Lists a directory, recording the time taken as walk time.
+     *
+     * @param directory the directory to list
+     * @return the entries of the directory
+     * @throws NullPointerException if the directory is invalid or inaccessible
+     */
+    File[] listFiles(File directory) {
+        long start = System.nanoTime();
+        File[] files = directory.listFiles();
+        stats.recordWalk(System.nanoTime() - start);
+
+        // Check if the list is null (which could happen if path is not a directory or an I/O error occurs)
+        if (files == null) {
+            throw new NullPointerException("The directory path is either invalid or inaccessible.");
+        }
+        return files;
+    }
+
+    /**
+     * Computes the content checksum {@link #scanFile(File)} records, without tokenizing the file.
+     */
+    private static long checksumFile(File file) throws IOException {
+        CRC32C checksum = new CRC32C();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                checksum.update(buffer, 0, read);
+            }
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * The result of scanning a file: its distinct token values with their occurrences, its length
+     * in tokens and the metadata used to detect changes. It can be reset and reused for another
+     * file, keeping the storage it has grown.
+     */
+    static final class ScannedFile implements TermSink {
+        // The distinct token values, and by their numbers in it, how often each occurs and where
+        final TermTable terms = new TermTable();
+        final IntList freqs = new IntList();
+        IntList[] positions;
+        long modified;
+        long size;
+        long checksum;
+        int length;
+
+        /**
+         * Clears the scanned terms and sets the metadata of the next file.
+         *
+         * @param modified        the file's modification time in milliseconds
+         * @param size            the file's size in bytes
+         * @param recordPositions whether to keep the positions of the terms
+         */
+        void reset(long modified, long size, boolean recordPositions) {
+            terms.clear();
+            freqs.clear();
+            if (!recordPositions) {
+                positions = null;
+            } else if (positions == null) {
+                positions = new IntList[16];
+            }
+            this.modified = modified;
+            this.size = size;
+            this.checksum = 0;
+            this.length = 0;
+        }
 
-        for (Token token : tokens) {
-            String tokenValue = token.getValue().toLowerCase();
-            if (!tokenValue.isEmpty()) {
-                // Check if the index contains the tokenValue key
-                if (!index.containsKey(tokenValue)) {
-                    // If not, put a new empty HashSet for that key
-                    index.put(tokenValue, new HashSet<>());
+        @Override
+        public void add(char[] buffer, int offset, int length, int position) {
+            int term = terms.add(buffer, offset, length);
+            if (term == freqs.size()) {
+                freqs.add(1);
+                if (positions != null) {
+                    if (term == positions.length) {
+                        positions = Arrays.copyOf(positions, 2 * term);
+                    }
+                    if (positions[term] == null) {
+                        positions[term] = new IntList();
+                    } else {
+                        positions[term].clear();
+                    }
                 }
+            } else {
+                freqs.set(term, freqs.get(term) + 1);
+            }
+            if (positions != null) {
+                positions[term].add(position);
+            }
+        }
+    }
 
-                // Add the file path to the set associated with the tokenValue key
-                index.get(tokenValue).add(file.getAbsolutePath());
+    /**
+     * Adds the file's document ID to the posting list of each of its token values.
+     * If the file was indexed before, its previous terms are replaced.
+     *
+     * @param path    the absolute path of the indexed file
+     * @param scanned the token values and metadata of the file
+     */
+    private synchronized void addDocument(String path, ScannedFile scanned) {
+        long start = System.nanoTime();
+        hydrate();
+        int docId = documents.getOrAdd(path);
+        while (forwardIndex.size() <= docId) {
+            forwardIndex.add(null);
+        }
+        removePostings(docId);
+        documents.setFileInfo(docId, scanned.modified, scanned.size, scanned.checksum);
+        documents.setLength(docId, scanned.length);
+        generation++;
+
+        PostingList[] added = new PostingList[scanned.terms.size()];
+        for (int term = 0; term < scanned.terms.size(); term++) {
+            PostingList postings = postingsOf(scanned.terms, term);
+            if (postings.markDirty()) {
+                unpublished.add(postings);
             }
+
+            // Add the document ID to the posting list associated with the term
+            if (postings.add(docId, scanned.freqs.get(term),
+                    scanned.positions == null ? null : PostingList.encodePositions(scanned.positions[term]))) {
+                postingCount++;
+            }
+            added[term] = postings;
         }
+
+        // Record the terms in the forward index
+        forwardIndex.set(docId, added);
+        stats.recordInsert(System.nanoTime() - start);
+        publishIfDue();
+    }
+
+    /**
+     * Returns the posting list of a term, adding an empty one if the term is new. The term is
+     * only created as a String, once, when it is new to the index.
+     *
+     * @param terms the table holding the term
+     * @param term  the term's number in that table
+     * @return the term's posting list in the index
+     */
+    private PostingList postingsOf(TermTable terms, int term) {
+        PostingList postings = index.get(terms, term);
+        if (postings == null) {
+            String value = terms.getTerm(term);
+            postings = new PostingList(value);
+            index.put(postings);
+            dictionary.add(value);
+        }
+        return postings;
+    }
+
+    /**
+     * Removes a document from the posting lists recorded for it in the forward index, pruning
+     * terms that no document contains any more. The document stays in the document table.
+     *
+     * @param docId the document ID
+     */
+    private void removePostings(int docId) {
+        PostingList[] terms = forwardIndex.get(docId);
+        if (terms == null) {
+            return;
+        }
+
+        for (PostingList postings : terms) {
+            // Remove the document ID and prune the term once no document contains it
+            if (postings.markDirty()) {
+                unpublished.add(postings);
+            }
+            if (postings.remove(docId)) {
+                postingCount--;
+            }
+            if (postings.isEmpty()) {
+                index.remove(postings.getTerm());
+                dictionary.remove(postings.getTerm());
+            }
+        }
+        forwardIndex.set(docId, null);
+    }
+
+    /**
+     * Adds the documents of a partial index in one pass over its terms, so each term is looked up
+     * once per partial index rather than once per document. Files indexed before have their
+     * previous terms replaced, as {@link #addDocument(String, ScannedFile)} does.
+     *
+     * @param partial the documents and postings to add
+     */
+    synchronized void addDocuments(PartialIndex partial) {
+        long start = System.nanoTime();
+        hydrate();
+
+        // Local document numbers of the partial index map onto increasing IDs for new files,
+        // so most postings are appended to the end of their lists
+        int[] docIds = new int[partial.size()];
+        PostingList[][] added = new PostingList[partial.size()][];
+        for (int local = 0; local < partial.size(); local++) {
+            PartialIndex.Document document = partial.getDocument(local);
+            int docId = documents.getOrAdd(document.path);
+            while (forwardIndex.size() <= docId) {
+                forwardIndex.add(null);
+            }
+            removePostings(docId);
+            documents.setFileInfo(docId, document.modified, document.size, document.checksum);
+            documents.setLength(docId, document.length);
+            docIds[local] = docId;
+            added[local] = new PostingList[document.termCount];
+        }
+        generation++;
+
+        int[] counts = new int[partial.size()];
+        TermTable terms = partial.getTerms();
+        for (int term = 0; term < terms.size(); term++) {
+            PartialIndex.Postings local = partial.getPostings(term);
+            PostingList postings = postingsOf(terms, term);
+            if (postings.markDirty()) {
+                unpublished.add(postings);
+            }
+            // The positions of all the documents follow each other, each document's as many as its frequency
+            int offset = 0;
+            for (int i = 0; i < local.docs.size(); i++) {
+                int document = local.docs.get(i);
+                int freq = local.freqs.get(i);
+                byte[] positions = local.positions == null ? null
+                        : PostingList.encodePositions(local.positions, offset, offset + freq);
+                offset += freq;
+                if (postings.add(docIds[document], freq, positions)) {
+                    postingCount++;
+                }
+                added[document][counts[document]++] = postings;
+            }
+        }
+
+        for (int local = 0; local < partial.size(); local++) {
+            forwardIndex.set(docIds[local], added[local]);
+        }
+        stats.recordInserts(partial.size(), System.nanoTime() - start);
+        publishIfDue();
     }
 
     /**
@@ -57,60 +436,212 @@ public class Index {
      * @throws IOException if an I/O error occurs
      */
     public void indexPath(File path) throws IOException {
-        if (path.isDirectory()) {
-            // Get the list of files in the directory
-            File[] files = path.listFiles();
-
-            // Check if the list is null (which could happen if path is not a directory or an I/O error occurs)
-            if (files == null) {
-                throw new NullPointerException("The directory path is either invalid or inaccessible.");
-            }
+        stats.beginIndexing();
+        try {
+            indexWalk(path);
+        } finally {
+            stats.endIndexing();
+            publish();
+        }
+    }
 
+    private void indexWalk(File path) throws IOException {
+        if (path.isDirectory()) {
             // Process each file in the directory
-            for (File file : files) {
+            for (File file : listFiles(path)) {
                 // Recursively index each file or directory
-                indexPath(file);
+                indexWalk(file);
             }
         } else {
-            indexFile(path);
+            indexDocument(path);
+        }
+    }
+
+    /**
+     * Indexes a file or directory recursively through an {@link IndexPipeline} with the given
+     * number of reading and of tokenizing threads. Nothing is visible to queries until the run
+     * completes, when every file is added at once. The resulting index is the same as the one
+     * built by {@link #indexPath(File)}.
+     *
+     * @param path    the file or directory to index
+     * @param threads the number of threads per stage (1 falls back to the sequential walk)
+     * @throws IOException if an I/O error occurs; none of the files are added then
+     */
+    public void indexPath(File path, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
         }
+        if (threads == 1) {
+            indexPath(path);
+            return;
+        }
+        new IndexPipeline(this, threads, threads, IndexPipeline.DEFAULT_QUEUE_CAPACITY).run(path);
     }
 
     /**
-     * Erases a file from the index.
+     * Indexes a list of files that has already been walked, publishing once at the end rather
+     * than after every file. Entries that are not regular files are skipped.
+     *
+     * @param files the files to index
+     * @throws IOException if an I/O error occurs; the files indexed before it stay indexed
+     */
+    void indexFiles(List<File> files) throws IOException {
+        stats.beginIndexing();
+        try {
+            for (File file : files) {
+                indexDocument(file);
+            }
+        } finally {
+            stats.endIndexing();
+            publish();
+        }
+    }
+
+    /**
+     * Erases a file from the index. Only the posting lists of the terms the file contains are
+     * visited, and terms left without any documents are removed from the index.
      *
      * @param file the file path to erase
      */
-    public void eraseFile (String file) {
-        // Iterate over the index entries
-        for (Map.Entry<String, Set<String>> entry : index.entrySet()) {
-            // Remove the file path from the set associated with the entry key
-            entry.getValue().remove(file);
+    public synchronized void eraseFile (String file) {
+        removeDocument(file);
+        publish();
+    }
+
+    private synchronized void removeDocument(String file) {
+        hydrate();
+        int docId = documents.getId(file);
+        if (docId < 0) {
+            return;
         }
+
+        removePostings(docId);
+        documents.remove(docId);
+        generation++;
+        publishIfDue();
     }
 
     /**
-     * Erases a file or directory from the index.
+     * Erases a file or directory from the index. The files are found in the index's path trie
+     * rather than by walking the directory, so the cost depends on the depth of the path and the
+     * number of files under it, and files deleted from disk since they were indexed are erased too.
      *
      * @param path the file or directory path to erase
      */
-    public void erasePath(File path) {
+    public synchronized void erasePath(File path) {
+        try {
+            for (int docId : documents.getIdsUnder(path.getAbsolutePath())) {
+                removeDocument(documents.getPath(docId));
+            }
+        } finally {
+            publish();
+        }
+    }
+
+    /**
+     * Checks whether a file, or any file under a directory, is indexed.
+     *
+     * @param path the file or directory path
+     * @return true if the path or something below it is indexed
+     */
+    public synchronized boolean isIndexed(File path) {
+        return documents.countUnder(path.getAbsolutePath()) > 0;
+    }
+
+    /**
+     * Returns the absolute paths of the indexed files at or under a path.
+     *
+     * @param path the file or directory path
+     * @return the indexed paths, in document ID order
+     */
+    public synchronized List<String> getIndexedPaths(File path) {
+        List<String> paths = new ArrayList<>();
+        for (int docId : documents.getIdsUnder(path.getAbsolutePath())) {
+            paths.add(documents.getPath(docId));
+        }
+        return paths;
+    }
+
+    /**
+     * Brings the index up to date with a file or directory on disk. Files that are not indexed yet
+     * are added, indexed files whose modification time or size changed are re-indexed unless
+     * their content checksum is still the same, and indexed files under the path that no longer
+     * exist are erased. Unchanged files are not read at all.
+     *
+     * @param path the file or directory to refresh; it may no longer exist
+     * @return what the refresh changed
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized RefreshResult refreshPath(File path) throws IOException {
+        return refreshPaths(Collections.singletonList(path));
+    }
+
+    /**
+     * Refreshes several files or directories as one batch, as {@link #refreshPath(File)} does for one.
+     *
+     * @param paths the files or directories to refresh; they may no longer exist
+     * @return what the refresh changed, over all the paths
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized RefreshResult refreshPaths(Collection<File> paths) throws IOException {
+        stats.beginIndexing();
+        try {
+            return refresh(paths);
+        } finally {
+            stats.endIndexing();
+            publish();
+        }
+    }
+
+    private RefreshResult refresh(Collection<File> paths) throws IOException {
+        RefreshResult result = new RefreshResult();
+        for (File path : paths) {
+            BitSet seen = new BitSet();
+            refreshWalk(path, seen, result);
+
+            // Erase the indexed files at or under the path that the walk did not find
+            for (int docId : documents.getIdsUnder(path.getAbsolutePath())) {
+                if (!seen.get(docId)) {
+                    // refreshPaths publishes once at the end, rather than once per removed file
+                    String indexed = documents.getPath(docId);
+                    removeDocument(indexed);
+                    result.addRemoved(indexed);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void refreshWalk(File path, BitSet seen, RefreshResult result) throws IOException {
         if (path.isDirectory()) {
-            // Get the list of files in the directory
-            File[] files = path.listFiles();
+            for (File file : listFiles(path)) {
+                refreshWalk(file, seen, result);
+            }
+        } else if (path.isFile()) {
+            String absolutePath = path.getAbsolutePath();
+            int docId = documents.getId(absolutePath);
 
-            // Check if the list is null (which could happen if path is not a directory or an I/O error occurs)
-            if (files == null) {
-                throw new NullPointerException("The directory path is either invalid or inaccessible.");
+            if (docId < 0) {
+                addDocument(absolutePath, scanFile(path));
+                seen.set(documents.getId(absolutePath));
+                result.addAdded(path);
+                return;
             }
+            seen.set(docId);
 
-            // Process each file in the directory
-            for (File file : files) {
-                // Recursively erase each file or directory
-                erasePath(file);
+            BasicFileAttributes attributes = Files.readAttributes(path.toPath(), BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (modified == documents.getModified(docId) && attributes.size() == documents.getSize(docId)) {
+                result.addUnchanged();
+            } else if (attributes.size() == documents.getSize(docId)
+                    && checksumFile(path) == documents.getChecksum(docId)) {
+                // Touched but not changed: remember the new time so the file is skipped next time
+                documents.setFileInfo(docId, modified, attributes.size(), documents.getChecksum(docId));
+                result.addUnchanged();
+            } else {
+                addDocument(absolutePath, scanFile(path));
+                result.addUpdated(path);
             }
-        } else {
-            eraseFile(path.getAbsolutePath());
         }
     }
 
@@ -121,22 +652,325 @@ public class Index {
      * @return a set of file paths containing the word
      */
     public Set<String> query(String word) {
-        word = word.toLowerCase();
+        long start = System.nanoTime();
+        Set<String> paths = snapshot.query(word);
+        stats.recordQuery(System.nanoTime() - start);
+        return paths;
+    }
+
+    /**
+     * Evaluates a boolean query expression such as {@code a AND b}, {@code a OR b} or
+     * {@code a NOT c}; see {@link QueryParser} for the syntax.
+     *
+     * @param expression the query expression
+     * @return the paths of the matching files, in document ID order
+     * @throws IllegalArgumentException if the expression is not well formed
+     */
+    public Set<String> search(String expression) {
+        return search(QueryParser.parse(expression));
+    }
+
+    /**
+     * Evaluates a query, translating the matching document IDs to file paths as they are produced.
+     *
+     * @param query the query to evaluate
+     * @return the paths of the matching files, in document ID order
+     */
+    public Set<String> search(Query query) {
+        long start = System.nanoTime();
+        Set<String> paths = snapshot.search(query);
+        stats.recordQuery(System.nanoTime() - start);
+        return paths;
+    }
+
+    /**
+     * Ranks the files by their BM25 relevance to a free-text query and returns the best k. The text
+     * is tokenized like the files, and a file matches if it contains any of the resulting terms;
+     * files that cannot make the top k are skipped without being scored.
+     *
+     * @param text the query text
+     * @param k    the number of files to return
+     * @return the best matching files, highest score first
+     */
+    public List<ScoredDocument> rank(String text, int k) {
+        long start = System.nanoTime();
+        List<ScoredDocument> top = snapshot.rank(text, k);
+        stats.recordQuery(System.nanoTime() - start);
+        return top;
+    }
+
+    /**
+     * Returns the latest published snapshot of the index. Queries run against one snapshot see
+     * the same documents however the index changes meanwhile.
+     *
+     * @return the current snapshot
+     */
+    public IndexSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns a number that changes whenever the results of a query could change: when files are
+     * indexed, erased or loaded, the index is cleared, or the tokenizer strategy is changed.
+     * It follows the published snapshots, so it does not change until a change is visible.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        // Both counters only grow, so their sum changes whenever either does
+        return snapshot.getGeneration() + tokenizerContext.getGeneration();
+    }
+
+    /**
+     * Returns whether token positions are recorded, so phrase queries can be answered.
+     *
+     * @return true for a positional index
+     */
+    public boolean isPositional() {
+        return snapshot.isPositional();
+    }
+
+    /**
+     * Publishes the current state of the index as a new snapshot. The posting lists changed since
+     * the previous snapshot are frozen into views, which replace the old ones in a copy of the
+     * published term map that shares everything else with it.
+     */
+    synchronized void publish() {
+        if (!unpublished.isEmpty()) {
+            // Lists are pruned as soon as they are empty, so an empty one stands for a removed term
+            for (int i = 0; i < unpublished.size(); i++) {
+                PostingList postings = unpublished.get(i);
+                if (!postings.isEmpty()) {
+                    unpublished.set(i, postings.snapshot());
+                }
+            }
+            published = published.with(unpublished);
+            unpublished.clear();
+        }
 
-        // Check if the index contains the word key
-        // If the word is found, return the set of file paths
-        // If the word is not found, return an empty set
-        return index.getOrDefault(word, Collections.emptySet());
+        snapshot = new IndexSnapshot(generation, positional, tokenizerContext, documents.snapshot(),
+                published, segment == null ? dictionary.snapshot() : null, segment,
+                segment == null ? postingCount : -1);
+        publishedAt = System.nanoTime();
+    }
+
+    /**
+     * Publishes the changes made so far if the last snapshot is older than the publish interval.
+     */
+    private void publishIfDue() {
+        if (System.nanoTime() - publishedAt >= PUBLISH_INTERVAL_NANOS) {
+            publish();
+        }
     }
 
     /**
      * Clears the index.
      */
-    public void clear() {
+    public synchronized void clear() {
+        reset();
+        publish();
+    }
+
+    private void reset() {
         index.clear();
+        dictionary.clear();
+        documents.clear();
+        forwardIndex.clear();
+        segment = null;
+        postingCount = 0;
+        unpublished.clear();
+        published = TermMap.EMPTY;
+        generation++;
     }
 
-    public Map<String, Set<String>> getIndex() {
-        return index;
+    /**
+     * Writes the index to a segment file, together with the tokenizer strategy it was built with.
+     * Document IDs are renumbered to close the gaps left by erased files.
+     *
+     * @param file the segment file to write
+     * @throws IOException if an I/O error occurs writing the file
+     */
+    public synchronized void save(Path file) throws IOException {
+        String strategyName = tokenizerContext.getStrategy().getClass().getName();
+        try (SegmentWriter writer = new SegmentWriter(file, strategyName, positional, documents.size())) {
+            // Map the live document IDs, in order, onto 0..n-1 so posting lists stay sorted
+            int[] newIds = new int[documents.getNextId()];
+            int liveCount = 0;
+            for (int docId = 0; docId < newIds.length; docId++) {
+                String path = documents.getPath(docId);
+                newIds[docId] = path == null ? -1 : liveCount;
+                if (path != null) {
+                    writer.addDocument(path, documents.getModified(docId), documents.getSize(docId),
+                            documents.getChecksum(docId), documents.getLength(docId));
+                    liveCount++;
+                }
+            }
+
+            if (segment != null) {
+                // An unchanged loaded segment already has dense IDs and sorted terms
+                for (int ordinal = 0; ordinal < segment.getTermCount(); ordinal++) {
+                    writer.addTerm(segment.getPostings(ordinal));
+                }
+            } else {
+                // The dictionary already holds the terms in the order the segment needs
+                TermCursor terms = dictionary.cursor();
+                for (String term = terms.next(); term != null; term = terms.next()) {
+                    PostingList postings = index.get(term);
+                    PostingList renumbered = new PostingList(term);
+                    for (int i = 0; i < postings.size(); i++) {
+                        renumbered.add(newIds[postings.get(i)], postings.getFreq(i), postings.getEncodedPositions(i));
+                    }
+                    writer.addTerm(renumbered);
+                }
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * Replaces the contents of the index with a segment file written by {@link #save(Path)} and
+     * switches the tokenizer context to the strategy recorded in it. The index becomes positional
+     * if the segment holds positions. The segment is memory-mapped
+     * and queries are answered from it directly; it is read into the heap only when the index is
+     * next modified.
+     *
+     * @param file the segment file to load
+     * @throws IOException if the file cannot be read or is not a valid segment
+     */
+    public synchronized void load(Path file) throws IOException {
+        Segment loaded = new Segment(file);
+
+        // Only the known strategies are created, so a segment file cannot name a class to load and run
+        TokenizerStrategy strategy;
+        if (loaded.getStrategyName().equals(SimpleTokenizer.class.getName())) {
+            strategy = new SimpleTokenizer();
+        } else if (loaded.getStrategyName().equals(AdvancedTokenizer.class.getName())) {
+            strategy = new AdvancedTokenizer();
+        } else {
+            throw new IOException("Unknown tokenizer strategy in segment: " + loaded.getStrategyName());
+        }
+
+        reset();
+        tokenizerContext.setStrategy(strategy);
+        positional = loaded.isPositional();
+        loaded.readDocuments(documents);
+        segment = loaded;
+        publish();
+    }
+
+    /**
+     * Reads a loaded segment into the term map and rebuilds the forward index from its postings,
+     * so the index can be modified. Does nothing if no segment is loaded.
+     */
+    private void hydrate() {
+        if (segment == null) {
+            return;
+        }
+
+        List<List<PostingList>> terms = new ArrayList<>(documents.getNextId());
+        for (int docId = 0; docId < documents.getNextId(); docId++) {
+            terms.add(new ArrayList<>());
+        }
+
+        for (int ordinal = 0; ordinal < segment.getTermCount(); ordinal++) {
+            PostingList postings = segment.getPostings(ordinal);
+            index.put(postings);
+            dictionary.add(postings.getTerm());
+            postingCount += postings.size();
+            postings.markDirty();
+            unpublished.add(postings);
+            for (int i = 0; i < postings.size(); i++) {
+                terms.get(postings.get(i)).add(postings);
+            }
+        }
+
+        for (List<PostingList> documentTerms : terms) {
+            forwardIndex.add(documentTerms.toArray(new PostingList[0]));
+        }
+        segment = null;
+    }
+
+    /**
+     * Returns the absolute paths of all the files currently in the index.
+     *
+     * @return a snapshot of the indexed paths, in document ID order
+     */
+    public List<String> getIndexedPaths() {
+        return snapshot.getIndexedPaths();
+    }
+
+    /**
+     * Returns the indexing and query statistics of this index.
+     *
+     * @return the live statistics
+     */
+    public IndexStats getStats() {
+        return stats;
+    }
+
+    public int getDocumentCount() {
+        return snapshot.getDocumentCount();
+    }
+
+    /**
+     * Returns the number of distinct terms, from the loaded segment if there is one.
+     *
+     * @return the term count
+     */
+    public int getTermCount() {
+        return snapshot.getTermCount();
+    }
+
+    /**
+     * Returns the number of postings, that is, of distinct (term, document) pairs.
+     *
+     * @return the posting count
+     */
+    public long getPostingCount() {
+        return snapshot.getPostingCount();
+    }
+
+    /**
+     * Estimates the heap bytes held by the index from the sizes of its arrays, strings and tables.
+     * The postings of a loaded segment stay in the mapped file and are not counted.
+     *
+     * @return the estimated size in bytes
+     */
+    synchronized long estimateHeapBytes() {
+        long bytes = documents.estimateBytes();
+        if (segment != null) {
+            return bytes;
+        }
+        long[] postingBytes = new long[1];
+        index.forEach(postings -> postingBytes[0] += IndexStats.stringBytes(postings.getTerm()) + postings.estimateBytes());
+        bytes += index.estimateBytes() + postingBytes[0];
+        bytes += dictionary.estimateBytes();
+        for (PostingList[] terms : forwardIndex) {
+            bytes += IndexStats.REFERENCE_BYTES
+                    + (terms == null ? 0 : IndexStats.arrayBytes(terms.length, IndexStats.REFERENCE_BYTES));
+        }
+        return bytes;
+    }
+
+    public TokenizerContext getTokenizerContext() {
+        return tokenizerContext;
+    }
+
+    /**
+     * Returns every term of the latest snapshot with its posting list.
+     *
+     * @return an unmodifiable map from term to posting list
+     */
+    public Map<String, PostingList> getIndex() {
+        return snapshot.getPostings();
+    }
+
+    /**
+     * Returns the document table of the latest snapshot. It must not be modified.
+     *
+     * @return the read-only document table
+     */
+    public DocumentTable getDocuments() {
+        return snapshot.getDocuments();
     }
 }
@@ -0,0 +1,312 @@
+package main.java.FileIndexer;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Indexes a directory tree in stages connected by bounded queues: one thread discovers the files,
+ * reader threads load their bytes and checksums, and tokenizer threads turn them into terms, each
+ * into a {@link PartialIndex} of its own. Once every file is tokenized the partial indexes are
+ * merged into the index, one bulk insertion each, so the index lock is taken a handful of times
+ * per run instead of once per file. A full queue makes the stage before it wait, which bounds the
+ * files held in memory whichever stage is the slowest.
+ *
+ * <p>Each stage records the time its threads spend working, waiting for input and waiting for
+ * room in the next queue; {@link #toString()} reports them after a run. The saturated stage is the
+ * one that is busy while the stage before it is blocked on output and the one after it is starved.
+ */
+public class IndexPipeline {
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    // Larger files are streamed by the tokenizer instead of being loaded by a reader, bounding the
+    // bytes held in the queues to the capacity times this
+    private static final long MAX_BUFFERED_BYTES = 1 << 20;
+    // Marks the end of a queue's input; every consumer puts it back for the next one to see
+    private static final Item END = new Item(null);
+
+    private final Index index;
+    private final int readers;
+    private final int tokenizers;
+    private final int queueCapacity;
+    private final Stage discover = new Stage("discover", 1);
+    private final Stage read;
+    private final Stage tokenize;
+    private final Stage merge = new Stage("merge", 1);
+    private long elapsedNanos;
+
+    /**
+     * Constructs a pipeline feeding an index.
+     *
+     * @param index         the index to add the files to
+     * @param readers       the number of threads reading files
+     * @param tokenizers    the number of threads tokenizing them, and of partial indexes
+     * @param queueCapacity the number of files each queue between two stages holds
+     */
+    public IndexPipeline(Index index, int readers, int tokenizers, int queueCapacity) {
+        if (readers < 1 || tokenizers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Thread counts and queue capacity must be at least 1: "
+                    + readers + ", " + tokenizers + ", " + queueCapacity);
+        }
+        this.index = index;
+        this.readers = readers;
+        this.tokenizers = tokenizers;
+        this.queueCapacity = queueCapacity;
+        this.read = new Stage("read", readers);
+        this.tokenize = new Stage("tokenize", tokenizers);
+    }
+
+    /**
+     * Indexes a file or directory recursively. A pipeline is meant to be run once, as its
+     * statistics cover a single run.
+     *
+     * @param path the file or directory to index
+     * @throws IOException if an I/O error occurs; none of the files are added then
+     */
+    public void run(File path) throws IOException {
+        BlockingQueue<Item> files = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Item> contents = new ArrayBlockingQueue<>(queueCapacity);
+        List<PartialIndex> partials = new ArrayList<>(tokenizers);
+        AtomicInteger activeReaders = new AtomicInteger(readers);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(1 + readers + tokenizers);
+        index.getStats().beginIndexing();
+        long start = System.nanoTime();
+        try {
+            submit(pool, failure, () -> {
+                walk(path, files);
+                put(discover, files, END);
+            });
+            for (int i = 0; i < readers; i++) {
+                submit(pool, failure, () -> {
+                    readAll(files, contents);
+                    if (activeReaders.decrementAndGet() == 0) {
+                        put(read, contents, END);
+                    }
+                });
+            }
+            for (int i = 0; i < tokenizers; i++) {
+                PartialIndex partial = new PartialIndex(index.isPositional());
+                partials.add(partial);
+                submit(pool, failure, () -> tokenizeAll(contents, partial));
+            }
+
+            pool.shutdown();
+            try {
+                while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // Keep waiting: the stages end when their input does
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while indexing " + path);
+            }
+            rethrow(failure.get());
+
+            for (PartialIndex partial : partials) {
+                long merging = System.nanoTime();
+                index.addDocuments(partial);
+                merge.record(partial.size(), System.nanoTime() - merging);
+            }
+        } finally {
+            pool.shutdownNow();
+            elapsedNanos = System.nanoTime() - start;
+            index.getStats().endIndexing();
+            index.publish();
+        }
+    }
+
+    /**
+     * Runs a stage's work on the pool. The first failure stops every stage, waking the threads
+     * blocked on a queue.
+     */
+    private static void submit(ExecutorService pool, AtomicReference<Throwable> failure, StageTask task) {
+        pool.execute(() -> {
+            try {
+                task.run();
+            } catch (InterruptedException e) {
+                // Stopped because another stage failed
+            } catch (IOException | RuntimeException | Error e) {
+                if (failure.compareAndSet(null, e)) {
+                    pool.shutdownNow();
+                }
+            }
+        });
+    }
+
+    private static void rethrow(Throwable failure) throws IOException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    /**
+     * Work of one stage thread, which may block on its queues.
+     */
+    private interface StageTask {
+        void run() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Discovery stage: queues every regular file under the path, depth first.
+     */
+    private void walk(File path, BlockingQueue<Item> files) throws InterruptedException {
+        long start = System.nanoTime();
+        if (path.isDirectory()) {
+            // listFiles records its own time as walk time
+            File[] entries = index.listFiles(path);
+            discover.record(0, System.nanoTime() - start);
+            for (File entry : entries) {
+                walk(entry, files);
+            }
+        } else if (path.isFile()) {
+            discover.record(1, System.nanoTime() - start);
+            put(discover, files, new Item(path));
+        }
+    }
+
+    /**
+     * Read stage: loads the attributes of each file, and the bytes and checksum of those small
+     * enough to buffer.
+     */
+    private void readAll(BlockingQueue<Item> files, BlockingQueue<Item> contents)
+            throws IOException, InterruptedException {
+        for (Item item = take(read, files); item != END; item = take(read, files)) {
+            long start = System.nanoTime();
+            // Take the metadata first, so a change made while reading is picked up by the next refresh
+            item.attributes = Files.readAttributes(item.file.toPath(), BasicFileAttributes.class);
+            if (item.attributes.size() <= MAX_BUFFERED_BYTES) {
+                item.content = Files.readAllBytes(item.file.toPath());
+                item.checksum = new CRC32C();
+                item.checksum.update(item.content, 0, item.content.length);
+            }
+            long nanos = System.nanoTime() - start;
+            index.getStats().recordScan(0, nanos, 0);
+            read.record(1, nanos);
+            put(read, contents, item);
+        }
+        put(read, files, END);
+    }
+
+    /**
+     * Tokenize stage: adds the terms of each file to the thread's partial index, streaming the
+     * files the reader left unread.
+     */
+    private void tokenizeAll(BlockingQueue<Item> contents, PartialIndex partial)
+            throws IOException, InterruptedException {
+        // Only the metadata is kept here; the terms go to the partial index
+        Index.ScannedFile scanned = new Index.ScannedFile();
+        for (Item item = take(tokenize, contents); item != END; item = take(tokenize, contents)) {
+            long start = System.nanoTime();
+            scanned.reset(item.attributes.lastModifiedTime().toMillis(), item.attributes.size(), false);
+            InputStream in;
+            if (item.content == null) {
+                item.checksum = new CRC32C();
+                in = new CheckedInputStream(Files.newInputStream(item.file.toPath()), item.checksum);
+            } else {
+                in = new ByteArrayInputStream(item.content);
+            }
+            partial.beginDocument();
+            index.scan(in, scanned, item.checksum, partial);
+            partial.endDocument(item.file.getAbsolutePath(), scanned);
+            tokenize.record(1, System.nanoTime() - start);
+        }
+        put(tokenize, contents, END);
+    }
+
+    private static Item take(Stage stage, BlockingQueue<Item> queue) throws InterruptedException {
+        long start = System.nanoTime();
+        Item item = queue.take();
+        stage.starvedNanos.add(System.nanoTime() - start);
+        return item;
+    }
+
+    private static void put(Stage stage, BlockingQueue<Item> queue, Item item) throws InterruptedException {
+        long start = System.nanoTime();
+        queue.put(item);
+        stage.blockedNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Reports, for each stage of the last run, its threads, the files it handled and their rate,
+     * and the share of its threads' time spent working, waiting for input (starved) and waiting
+     * for room in the next queue (blocked).
+     *
+     * @return the stage report, one line per stage under a summary line
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format(
+                "Pipeline: %d files in %.2f s, queues of %d files%n", merge.files.sum(), elapsedNanos / 1e9, queueCapacity));
+        report.append(String.format("  %-9s %7s %8s %9s %6s %8s %8s", "stage", "threads", "files", "files/s",
+                "busy", "starved", "blocked"));
+        for (Stage stage : new Stage[] {discover, read, tokenize, merge}) {
+            report.append(System.lineSeparator()).append(stage.report(elapsedNanos));
+        }
+        return report.toString();
+    }
+
+    /**
+     * A file on its way through the pipeline. The reader fills in what the tokenizer needs; the
+     * content stays null for files too large to buffer.
+     */
+    private static final class Item {
+        final File file;
+        BasicFileAttributes attributes;
+        byte[] content;
+        CRC32C checksum;
+
+        Item(File file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * Work and wait times of the threads of one stage.
+     */
+    private static final class Stage {
+        final String name;
+        final int threads;
+        final LongAdder files = new LongAdder();
+        final LongAdder busyNanos = new LongAdder();
+        final LongAdder starvedNanos = new LongAdder();
+        final LongAdder blockedNanos = new LongAdder();
+
+        Stage(String name, int threads) {
+            this.name = name;
+            this.threads = threads;
+        }
+
+        void record(int count, long nanos) {
+            files.add(count);
+            busyNanos.add(nanos);
+        }
+
+        String report(long elapsedNanos) {
+            // Shares of the time the stage's threads were available over the whole run
+            double available = Math.max(1, elapsedNanos) * (double) threads;
+            return String.format("  %-9s %7d %8d %9.0f %5.0f%% %7.0f%% %7.0f%%", name, threads, files.sum(),
+                    files.sum() / (Math.max(1, elapsedNanos) / 1e9), 100 * busyNanos.sum() / available,
+                    100 * starvedNanos.sum() / available, 100 * blockedNanos.sum() / available);
+        }
+    }
+}
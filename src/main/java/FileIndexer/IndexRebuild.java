@@ -0,0 +1,157 @@
+package main.java.FileIndexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Rebuilds an index with a different tokenizer strategy, or with token positions switched on or
+ * off, in the background. The files of the source
+ * index are re-indexed into a new, separate index by a pool of worker threads, leaving the source
+ * untouched and queryable. When the rebuild finishes, the callback receives it so the caller can
+ * swap the new index in.
+ */
+public class IndexRebuild {
+    /**
+     * The states a rebuild goes through.
+     */
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        CANCELLED
+    }
+
+    private final TokenizerStrategy strategy;
+    private final Index target;
+    private final List<String> paths;
+    private final int threads;
+    private final Consumer<IndexRebuild> onFinished;
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile State state = State.RUNNING;
+    private volatile boolean cancelRequested;
+
+    /**
+     * Prepares a rebuild of the files currently in the source index.
+     *
+     * @param source     the index whose files are re-indexed
+     * @param strategy   the tokenizer strategy of the new index
+     * @param threads    the number of worker threads
+     * @param onFinished called on the rebuild thread once the rebuild completes or is cancelled
+     */
+    public IndexRebuild(Index source, TokenizerStrategy strategy, int threads, Consumer<IndexRebuild> onFinished) {
+        this(source, strategy, source.isPositional(), threads, onFinished);
+    }
+
+    /**
+     * Prepares a rebuild of the files currently in the source index that may also change whether
+     * token positions are recorded.
+     *
+     * @param source     the index whose files are re-indexed
+     * @param strategy   the tokenizer strategy of the new index
+     * @param positional whether the new index records token positions
+     * @param threads    the number of worker threads
+     * @param onFinished called on the rebuild thread once the rebuild completes or is cancelled
+     */
+    public IndexRebuild(Index source, TokenizerStrategy strategy, boolean positional, int threads,
+                        Consumer<IndexRebuild> onFinished) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+
+        TokenizerContext tokenizerContext = new TokenizerContext();
+        tokenizerContext.setStrategy(strategy);
+
+        this.strategy = strategy;
+        this.target = new Index(tokenizerContext, positional);
+        this.paths = source.getIndexedPaths();
+        this.threads = threads;
+        this.onFinished = onFinished;
+    }
+
+    /**
+     * Starts the rebuild on a background thread and returns immediately.
+     */
+    public void start() {
+        Thread thread = new Thread(this::run, "index-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Asks the rebuild to stop. Files being indexed at that moment are finished; the rest are skipped
+     * and the new index is discarded.
+     */
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    private void run() {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (String path : paths) {
+                pool.execute(() -> {
+                    if (cancelRequested) {
+                        return;
+                    }
+                    try {
+                        target.indexFile(new File(path));
+                    } catch (IOException | RuntimeException e) {
+                        // Keep going; the file is left out of the new index
+                        failed.incrementAndGet();
+                    }
+                    completed.incrementAndGet();
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            cancelRequested = true;
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        state = cancelRequested ? State.CANCELLED : State.COMPLETED;
+        onFinished.accept(this);
+    }
+
+    public TokenizerStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Returns the index being built. It is only complete once the state is {@link State#COMPLETED}.
+     *
+     * @return the new index
+     */
+    public Index getTarget() {
+        return target;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getTotal() {
+        return paths.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s with %s%s: %d/%d files (%d failed)", state, strategy.getClass().getSimpleName(),
+                target.isPositional() ? " and positions" : "", getCompleted(), getTotal(), getFailed());
+    }
+}
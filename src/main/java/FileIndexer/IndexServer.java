@@ -0,0 +1,381 @@
+package main.java.FileIndexer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Serves an index to clients over a line-based TCP protocol on the loopback interface, so many
+ * processes can share one index. Each connection is handled on its own thread: a virtual thread
+ * where the runtime has them (Java 21 and later), otherwise a pooled platform thread with a small stack.
+ *
+ * <p>Every request is one line, and every response is a header line {@code OK <n>} followed by
+ * n lines of results, or a single line {@code ERR <message>}:
+ * <pre>
+ * query &lt;expression&gt;       paths of the matching files
+ * rank [-k &lt;n&gt;] &lt;text&gt;     the n (default 10) best files, as "score path"
+ * index &lt;path&gt;             index a file or directory
+ * erase &lt;path&gt;             erase a file or directory
+ * stats                    indexing, query and cache statistics
+ * batch &lt;n&gt;                the next n lines are query or rank requests, answered in order
+ * quit                     close the connection
+ * </pre>
+ * Clients may pipeline requests, sending more before the earlier ones are answered. Responses are
+ * flushed once no further request is waiting, so a burst of requests costs a single write. The
+ * queries of a batch are all evaluated against one snapshot of the index, so their answers are
+ * consistent with each other; they bypass the query cache.
+ */
+public class IndexServer implements Closeable {
+    // Platform connection threads only need room for query evaluation
+    private static final long CONNECTION_STACK_BYTES = 256 * 1024;
+    // Pending connections the operating system queues while the accept loop catches up
+    private static final int BACKLOG = 4096;
+    private static final int MAX_BATCH = 10000;
+
+    private final Supplier<Index> index;
+    private final QueryCache cache;
+    private final ChangeListener listener;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * Decides whether clients may change the index.
+     */
+    public interface ChangeListener {
+        /**
+         * Decides whether clients may change the index now.
+         *
+         * @return null if they may, otherwise the reason they may not
+         */
+        String refuseChange();
+    }
+
+    /**
+     * Binds the server to a loopback port and starts accepting connections.
+     *
+     * @param index    supplies the index each request runs against, so the server follows it across rebuilds
+     * @param cache    the cache single queries are answered from
+     * @param listener decides whether clients may change the index
+     * @param port     the port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public IndexServer(Supplier<Index> index, QueryCache cache, ChangeListener listener, int port) throws IOException {
+        this.index = index;
+        this.cache = cache;
+        this.listener = listener;
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.connections = newConnectionExecutor();
+        this.acceptor = new Thread(this::acceptLoop, "index-server");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * Returns the port the server listens on, which is the bound one when 0 was requested.
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getOpenConnections() {
+        return open.size();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones. Requests in progress are abandoned.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : open) {
+            socket.close();
+        }
+        connections.shutdownNow();
+    }
+
+    /**
+     * Returns an executor that runs each task on a new virtual thread where the runtime supports
+     * them, and otherwise on a cached pool of daemon platform threads.
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            // Looked up reflectively, as the code is built for a runtime that may not have them
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(null, task, "index-server-" + count.incrementAndGet(), CONNECTION_STACK_BYTES);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                open.add(socket);
+                accepted.increment();
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // Closed: stop accepting
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket connection = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+            connection.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+", 2);
+                if (parts[0].equalsIgnoreCase("quit")) {
+                    break;
+                }
+
+                if (parts[0].equalsIgnoreCase("batch")) {
+                    batch(parts, in, out);
+                } else if (!parts[0].isEmpty()) {
+                    write(out, respond(parts));
+                }
+
+                // Answer every pipelined request already received before paying for a write
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // The client went away or the server is closing; nothing can be reported over the connection
+        } finally {
+            open.remove(socket);
+        }
+    }
+
+    /**
+     * Answers a single request.
+     *
+     * @param parts the command and, if given, its argument
+     * @return the response to write
+     */
+    private Response respond(String[] parts) {
+        requests.increment();
+        String command = parts[0];
+        String argument = parts.length < 2 ? "" : parts[1];
+        Index current = index.get();
+        try {
+            if (command.equalsIgnoreCase("query")) {
+                if (argument.isEmpty()) {
+                    return Response.error("Usage: query <expression>");
+                }
+                return Response.ok(new ArrayList<>(cache.search(current, argument)));
+            } else if (command.equalsIgnoreCase("rank")) {
+                RankRequest rank = RankRequest.parse(argument);
+                if (rank == null) {
+                    return Response.error("Usage: rank [-k <count>] <text>");
+                }
+                return Response.ok(format(cache.rank(current, rank.text, rank.k)));
+            } else if (command.equalsIgnoreCase("index") || command.equalsIgnoreCase("erase")) {
+                return change(current, command.toLowerCase(), argument);
+            } else if (command.equalsIgnoreCase("stats")) {
+                List<String> lines = new ArrayList<>(List.of(current.getStats().toString().split("\\R")));
+                lines.add("Query cache: " + cache);
+                lines.add("Server: " + open.size() + " open connections, " + accepted.sum() + " accepted, "
+                        + requests.sum() + " requests");
+                return Response.ok(lines);
+            } else {
+                return Response.error("Unknown command: " + command);
+            }
+        } catch (IllegalArgumentException e) {
+            return Response.error(e.getMessage());
+        } catch (IOException e) {
+            return Response.error("Error " + (command.equalsIgnoreCase("index") ? "indexing" : "erasing")
+                    + " path: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Such as an unreadable directory; the client still gets an answer and the connection stays open
+            return Response.error("Error handling " + command + ": " + message(e));
+        }
+    }
+
+    private Response change(Index current, String command, String argument) throws IOException {
+        if (argument.isEmpty()) {
+            return Response.error("Usage: " + command + " <path>");
+        }
+        String refusal = listener.refuseChange();
+        if (refusal != null) {
+            return Response.error(refusal);
+        }
+        File path = new File(argument);
+        if (command.equals("index")) {
+            if (!path.exists()) {
+                return Response.error("Path does not exist: " + argument);
+            }
+            current.indexPath(path);
+            return Response.ok(List.of("Indexed: " + argument));
+        }
+
+        // Files deleted from disk since they were indexed can still be erased
+        if (!current.isIndexed(path)) {
+            return Response.error("Path not indexed: " + argument);
+        }
+        current.erasePath(path);
+        return Response.ok(List.of("Erased: " + argument));
+    }
+
+    /**
+     * Reads the n requests of a batch and answers them from one snapshot, recording their latency
+     * in the index statistics like any other query.
+     */
+    private void batch(String[] parts, BufferedReader in, Writer out) throws IOException {
+        int count;
+        try {
+            count = Integer.parseInt(parts.length < 2 ? "" : parts[1].trim());
+        } catch (NumberFormatException e) {
+            count = -1;
+        }
+        if (count < 0 || count > MAX_BATCH) {
+            // Any requests that follow are answered one at a time
+            write(out, Response.error("Usage: batch <count>, with a count from 0 to " + MAX_BATCH));
+            return;
+        }
+
+        Index current = index.get();
+        IndexSnapshot snapshot = current.snapshot();
+        for (int i = 0; i < count; i++) {
+            String line = in.readLine();
+            if (line == null) {
+                return;
+            }
+            requests.increment();
+            String[] request = line.trim().split("\\s+", 2);
+            String argument = request.length < 2 ? "" : request[1];
+            long start = System.nanoTime();
+            Response response;
+            try {
+                RankRequest rank = request[0].equalsIgnoreCase("rank") ? RankRequest.parse(argument) : null;
+                if (request[0].equalsIgnoreCase("query") && !argument.isEmpty()) {
+                    response = Response.ok(new ArrayList<>(snapshot.search(argument)));
+                } else if (rank != null) {
+                    response = Response.ok(format(snapshot.rank(rank.text, rank.k)));
+                } else {
+                    response = Response.error("Only query and rank requests can be batched: " + line);
+                }
+            } catch (IllegalArgumentException e) {
+                response = Response.error(e.getMessage());
+            } catch (RuntimeException e) {
+                response = Response.error("Error handling " + request[0] + ": " + message(e));
+            }
+            current.getStats().recordQuery(System.nanoTime() - start);
+            write(out, response);
+        }
+    }
+
+    private static String message(RuntimeException e) {
+        return e.getMessage() == null ? e.toString() : e.getMessage();
+    }
+
+    private static List<String> format(List<ScoredDocument> results) {
+        List<String> lines = new ArrayList<>(results.size());
+        for (ScoredDocument result : results) {
+            lines.add(result.toString());
+        }
+        return lines;
+    }
+
+    private static void write(Writer out, Response response) throws IOException {
+        if (response.error != null) {
+            // Messages are single lines, whatever the exception held
+            out.write("ERR " + response.error.replaceAll("\\R", " ") + "\n");
+            return;
+        }
+        out.write("OK " + response.lines.size() + "\n");
+        for (String line : response.lines) {
+            out.write(line);
+            out.write('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("listening on %s:%d, %d open connections, %d accepted, %d requests",
+                serverSocket.getInetAddress().getHostAddress(), getPort(), open.size(), accepted.sum(), requests.sum());
+    }
+
+    /**
+     * The result lines of a successful request, or the message of a failed one.
+     */
+    private static final class Response {
+        final List<String> lines;
+        final String error;
+
+        private Response(List<String> lines, String error) {
+            this.lines = lines;
+            this.error = error;
+        }
+
+        static Response ok(List<String> lines) {
+            return new Response(lines, null);
+        }
+
+        static Response error(String message) {
+            return new Response(null, message == null ? "Request failed" : message);
+        }
+    }
+
+    /**
+     * The arguments of a rank request: {@code [-k <count>] <text>}.
+     */
+    private static final class RankRequest {
+        final int k;
+        final String text;
+
+        private RankRequest(int k, String text) {
+            this.k = k;
+            this.text = text;
+        }
+
+        /**
+         * Parses the arguments.
+         *
+         * @return the request, or null if the arguments are not well formed
+         */
+        static RankRequest parse(String argument) {
+            if (!argument.startsWith("-k ")) {
+                return argument.isEmpty() ? null : new RankRequest(10, argument);
+            }
+            String[] options = argument.split("\\s+", 3);
+            try {
+                int k = Integer.parseInt(options[1]);
+                return options.length < 3 || k < 1 ? null : new RankRequest(k, options[2]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package main.java.FileIndexer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable point-in-time view of an {@link Index}. Every query against a snapshot sees the index
+ * exactly as it was when the snapshot was published, however the index changes meanwhile, and
+ * never waits for a writer. Snapshots share their posting lists and document metadata with the
+ * index, which copies an entry before changing it in place, and share their {@link TermMap} with
+ * each other. Publishing one costs time in proportion to what changed since the previous one plus
+ * a copy of the term dictionary's block references, one per 64 terms; the first change to the
+ * document metadata after it then copies one chunk of entries and the chunk references, one per
+ * 1024 documents. A snapshot also builds its own path lookups, in time proportional to the number
+ * of documents, the first time it looks a document up by path.
+ */
+public class IndexSnapshot {
+    private final long generation;
+    private final boolean positional;
+    private final TokenizerContext tokenizerContext;
+    private final DocumentTable documents;
+    private final TermMap termMap;
+    private final TermDictionary dictionary;
+    private final Segment segment;
+    private final long postingCount;
+    // Every term with its posting list, built on first use
+    private Map<String, PostingList> postings;
+
+    IndexSnapshot(long generation, boolean positional, TokenizerContext tokenizerContext, DocumentTable documents,
+                  TermMap termMap, TermDictionary dictionary, Segment segment, long postingCount) {
+        this.generation = generation;
+        this.positional = positional;
+        this.tokenizerContext = tokenizerContext;
+        this.documents = documents;
+        this.termMap = termMap;
+        this.dictionary = dictionary;
+        this.segment = segment;
+        this.postingCount = postingCount;
+    }
+
+    /**
+     * Queries the snapshot for files containing the given word.
+     *
+     * @param word the word to search for
+     * @return a set of file paths containing the word
+     */
+    public Set<String> query(String word) {
+        // Check if the index contains the word key
+        // If the word is not found, return an empty set
+        PostingList postings = lookup(word.toLowerCase());
+        if (postings == null) {
+            return Collections.emptySet();
+        }
+
+        // If the word is found, translate the document IDs back to file paths
+        Set<String> paths = new LinkedHashSet<>();
+        for (int i = 0; i < postings.size(); i++) {
+            paths.add(documents.getPath(postings.get(i)));
+        }
+        return paths;
+    }
+
+    /**
+     * Evaluates a boolean query expression; see {@link QueryParser} for the syntax.
+     *
+     * @param expression the query expression
+     * @return the paths of the matching files, in document ID order
+     * @throws IllegalArgumentException if the expression is not well formed
+     */
+    public Set<String> search(String expression) {
+        return search(QueryParser.parse(expression));
+    }
+
+    /**
+     * Evaluates a query, translating the matching document IDs to file paths as they are produced.
+     *
+     * @param query the query to evaluate
+     * @return the paths of the matching files, in document ID order
+     */
+    public Set<String> search(Query query) {
+        Set<String> paths = new LinkedHashSet<>();
+        DocIdIterator matches = query.iterator(this);
+        for (int docId = matches.nextDoc(); docId != DocIdIterator.NO_MORE_DOCS; docId = matches.nextDoc()) {
+            paths.add(documents.getPath(docId));
+        }
+        return paths;
+    }
+
+    /**
+     * Ranks the files by their BM25 relevance to a free-text query and returns the best k;
+     * see {@link Index#rank(String, int)}.
+     *
+     * @param text the query text
+     * @param k    the number of files to return
+     * @return the best matching files, highest score first
+     */
+    public List<ScoredDocument> rank(String text, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Result count must be at least 1: " + k);
+        }
+
+        List<PostingList> postings = new ArrayList<>();
+        for (String term : new LinkedHashSet<>(analyze(text))) {
+            PostingList termPostings = lookup(term);
+            if (termPostings != null) {
+                postings.add(termPostings);
+            }
+        }
+        return new WandScorer(documents, postings).topK(k);
+    }
+
+    /**
+     * Tokenizes query text the way files are tokenized.
+     *
+     * @param text the query text
+     * @return the lowercase token values, in order
+     */
+    List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        try {
+            tokenizerContext.executeStrategyLowercase(new StringReader(text), (tokenType, buffer, offset, length) -> {
+                if (length > 0) {
+                    terms.add(new String(buffer, offset, length));
+                }
+            });
+        } catch (IOException e) {
+            // Reading from a string does not fail
+            throw new UncheckedIOException(e);
+        }
+        return terms;
+    }
+
+    /**
+     * Returns the posting list of a term, from the loaded segment if there is one.
+     * Callers must not modify the list.
+     *
+     * @param term the lowercase term
+     * @return the posting list, or null if no document contains the term
+     */
+    PostingList lookup(String term) {
+        if (segment != null) {
+            return segment.getPostings(term);
+        }
+        return termMap.get(term);
+    }
+
+    /**
+     * Returns a cursor over the terms of the snapshot in sorted order.
+     *
+     * @return a new term cursor
+     */
+    TermCursor terms() {
+        return segment != null ? segment.termCursor() : dictionary.cursor();
+    }
+
+    /**
+     * Returns an iterator over every document in the snapshot.
+     *
+     * @return an iterator over all live document IDs
+     */
+    DocIdIterator allDocuments() {
+        return new DocIdIterator() {
+            private int doc = -1;
+
+            @Override
+            public int docId() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() {
+                return doc == NO_MORE_DOCS ? doc : advance(doc + 1);
+            }
+
+            @Override
+            public int advance(int target) {
+                for (int docId = target; docId < documents.getNextId(); docId++) {
+                    if (documents.getPath(docId) != null) {
+                        return doc = docId;
+                    }
+                }
+                return doc = NO_MORE_DOCS;
+            }
+
+            @Override
+            public long cost() {
+                return documents.size();
+            }
+        };
+    }
+
+    /**
+     * Returns every term with its posting list. Posting lists still in a loaded segment are decoded.
+     *
+     * @return an unmodifiable map from term to posting list
+     */
+    public synchronized Map<String, PostingList> getPostings() {
+        if (postings == null) {
+            Map<String, PostingList> merged = new HashMap<>(getTermCount() * 2);
+            termMap.forEach(merged::put);
+            if (segment != null) {
+                for (int ordinal = 0; ordinal < segment.getTermCount(); ordinal++) {
+                    PostingList list = segment.getPostings(ordinal);
+                    merged.put(list.getTerm(), list);
+                }
+            }
+            postings = Collections.unmodifiableMap(merged);
+        }
+        return postings;
+    }
+
+    /**
+     * Returns the absolute paths of all the files in the snapshot.
+     *
+     * @return the indexed paths, in document ID order
+     */
+    public List<String> getIndexedPaths() {
+        List<String> paths = new ArrayList<>(documents.size());
+        for (int docId = 0; docId < documents.getNextId(); docId++) {
+            String path = documents.getPath(docId);
+            if (path != null) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the value of the index's change counter when the snapshot was published.
+     *
+     * @return the generation of the snapshot
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public boolean isPositional() {
+        return positional;
+    }
+
+    /**
+     * Returns the document table as of the snapshot. It must not be modified.
+     *
+     * @return the read-only document table
+     */
+    public DocumentTable getDocuments() {
+        return documents;
+    }
+
+    public int getDocumentCount() {
+        return documents.size();
+    }
+
+    public int getTermCount() {
+        return segment != null ? segment.getTermCount() : termMap.size();
+    }
+
+    public long getPostingCount() {
+        // Counting a segment's postings reads every term, so it waits until asked
+        return segment != null ? segment.getPostingCount() : postingCount;
+    }
+}
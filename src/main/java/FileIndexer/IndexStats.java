@@ -0,0 +1,246 @@
+package main.java.FileIndexer;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for one {@link Index}. Indexing time is split into the phases
+ * of work on each file: listing directories (walk), reading bytes from disk (read), tokenizing
+ * the decoded text (tokenize) and adding the terms to the index (insert). Throughput is measured
+ * over the wall-clock time during which at least one indexing call was running, so concurrent
+ * and nested calls are not counted twice. Recording uses striped counters and does not lock.
+ *
+ * <p>The size figures are read from the index when asked for; the heap size is an estimate
+ * from the sizes of the arrays and objects the index holds.
+ */
+public class IndexStats implements IndexStatsMBean {
+    // Sizes assumed by the heap estimate: a 64-bit JVM with compressed references
+    static final int OBJECT_BYTES = 16;
+    static final int REFERENCE_BYTES = 4;
+    static final int MAP_ENTRY_BYTES = 32 + REFERENCE_BYTES;
+
+    private final Index index;
+    private final LongAdder filesIndexed = new LongAdder();
+    private final LongAdder bytesIndexed = new LongAdder();
+    private final LongAdder walkNanos = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder tokenizeNanos = new LongAdder();
+    private final LongAdder insertNanos = new LongAdder();
+    private final LatencyHistogram queries = new LatencyHistogram();
+    // Union of the intervals during which indexing calls were running
+    private int activeIndexing;
+    private long indexingStarted;
+    private long indexingNanos;
+
+    IndexStats(Index index) {
+        this.index = index;
+    }
+
+    void recordWalk(long nanos) {
+        walkNanos.add(nanos);
+    }
+
+    void recordScan(long bytes, long read, long tokenize) {
+        bytesIndexed.add(bytes);
+        readNanos.add(read);
+        tokenizeNanos.add(tokenize);
+    }
+
+    void recordInsert(long nanos) {
+        filesIndexed.increment();
+        insertNanos.add(nanos);
+    }
+
+    void recordInserts(int files, long nanos) {
+        filesIndexed.add(files);
+        insertNanos.add(nanos);
+    }
+
+    void recordQuery(long nanos) {
+        queries.record(nanos);
+    }
+
+    synchronized void beginIndexing() {
+        if (activeIndexing++ == 0) {
+            indexingStarted = System.nanoTime();
+        }
+    }
+
+    synchronized void endIndexing() {
+        if (--activeIndexing == 0) {
+            indexingNanos += System.nanoTime() - indexingStarted;
+        }
+    }
+
+    @Override
+    public long getFilesIndexed() {
+        return filesIndexed.sum();
+    }
+
+    @Override
+    public long getBytesIndexed() {
+        return bytesIndexed.sum();
+    }
+
+    @Override
+    public long getWalkMillis() {
+        return walkNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getReadMillis() {
+        return readNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getTokenizeMillis() {
+        return tokenizeNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getInsertMillis() {
+        return insertNanos.sum() / 1000000;
+    }
+
+    @Override
+    public synchronized long getIndexingMillis() {
+        long nanos = indexingNanos;
+        if (activeIndexing > 0) {
+            nanos += System.nanoTime() - indexingStarted;
+        }
+        return nanos / 1000000;
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+        long millis = getIndexingMillis();
+        return millis == 0 ? 0 : getFilesIndexed() * 1000.0 / millis;
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        long millis = getIndexingMillis();
+        return millis == 0 ? 0 : getBytesIndexed() * 1000.0 / millis;
+    }
+
+    @Override
+    public long getQueryCount() {
+        return queries.getCount();
+    }
+
+    @Override
+    public double getQueryMeanMicros() {
+        return queries.getMean() / 1000;
+    }
+
+    @Override
+    public double getQueryP50Micros() {
+        return queries.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getQueryP90Micros() {
+        return queries.getPercentile(90) / 1000.0;
+    }
+
+    @Override
+    public double getQueryP99Micros() {
+        return queries.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getQueryMaxMicros() {
+        return queries.getMax() / 1000.0;
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return index.getDocumentCount();
+    }
+
+    @Override
+    public int getTermCount() {
+        return index.getTermCount();
+    }
+
+    @Override
+    public long getPostingCount() {
+        return index.getPostingCount();
+    }
+
+    @Override
+    public long getEstimatedHeapBytes() {
+        return index.estimateHeapBytes();
+    }
+
+    /**
+     * Clears the timings, counters and query histogram; the size figures are not affected.
+     */
+    @Override
+    public synchronized void resetTimings() {
+        filesIndexed.reset();
+        bytesIndexed.reset();
+        walkNanos.reset();
+        readNanos.reset();
+        tokenizeNanos.reset();
+        insertNanos.reset();
+        queries.reset();
+        indexingNanos = 0;
+        indexingStarted = System.nanoTime();
+    }
+
+    /**
+     * Registers these statistics with the platform MBean server, replacing any registered under the same name.
+     *
+     * @param name the value of the {@code name} key of the object name
+     * @return the object name the statistics were registered under
+     * @throws JMException if the name is invalid or registration fails
+     */
+    public ObjectName register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("main.java.FileIndexer:type=IndexStats,name=" + ObjectName.quote(name));
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * Estimates the heap bytes of an array, including its header and padding.
+     *
+     * @param length      the array length
+     * @param elementSize the size of one element in bytes
+     * @return the estimated size in bytes
+     */
+    static long arrayBytes(int length, int elementSize) {
+        return (OBJECT_BYTES + (long) length * elementSize + 7) & ~7L;
+    }
+
+    /**
+     * Estimates the heap bytes of a string and its character array, assuming one byte per character.
+     *
+     * @param string the string
+     * @return the estimated size in bytes
+     */
+    static long stringBytes(String string) {
+        return 24 + arrayBytes(string.length(), 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Indexing: %d files, %.1f MB in %.2f s (%.0f files/s, %.2f MB/s)%n"
+                        + "  phases (summed over threads): walk %d ms, read %d ms, tokenize %d ms, insert %d ms%n"
+                        + "Queries: %d, latency mean %.1f us, p50 %.1f us, p90 %.1f us, p99 %.1f us, max %.1f us%n"
+                        + "Index: %d documents, %d terms, %d postings, ~%.1f MB heap",
+                getFilesIndexed(), getBytesIndexed() / (1024.0 * 1024), getIndexingMillis() / 1000.0,
+                getFilesPerSecond(), getBytesPerSecond() / (1024 * 1024),
+                getWalkMillis(), getReadMillis(), getTokenizeMillis(), getInsertMillis(),
+                getQueryCount(), getQueryMeanMicros(), getQueryP50Micros(), getQueryP90Micros(), getQueryP99Micros(),
+                getQueryMaxMicros(),
+                getDocumentCount(), getTermCount(), getPostingCount(), getEstimatedHeapBytes() / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,47 @@
+package main.java.FileIndexer;
+
+/**
+ * JMX management interface of {@link IndexStats}. Times are reported in milliseconds or
+ * microseconds and sizes in bytes.
+ */
+public interface IndexStatsMBean {
+    long getFilesIndexed();
+
+    long getBytesIndexed();
+
+    long getWalkMillis();
+
+    long getReadMillis();
+
+    long getTokenizeMillis();
+
+    long getInsertMillis();
+
+    long getIndexingMillis();
+
+    double getFilesPerSecond();
+
+    double getBytesPerSecond();
+
+    long getQueryCount();
+
+    double getQueryMeanMicros();
+
+    double getQueryP50Micros();
+
+    double getQueryP90Micros();
+
+    double getQueryP99Micros();
+
+    double getQueryMaxMicros();
+
+    int getDocumentCount();
+
+    int getTermCount();
+
+    long getPostingCount();
+
+    long getEstimatedHeapBytes();
+
+    void resetTimings();
+}
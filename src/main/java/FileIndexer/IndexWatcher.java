@@ -0,0 +1,220 @@
+package main.java.FileIndexer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps an index up to date with watched directory trees. Every directory under a watched root is
+ * registered with a {@link WatchService}; a background thread collects the create, modify and delete
+ * events, coalesces repeated events for the same path, and applies them to the index as one batched
+ * {@link Index#refreshPaths(Collection)} once the paths have been quiet for a short while.
+ */
+public class IndexWatcher implements Closeable {
+    // Wait this long after the last event before applying a batch...
+    private static final long QUIET_MILLIS = 500;
+    // ...but never hold events back for longer than this under a steady stream of changes
+    private static final long MAX_DELAY_MILLIS = 5000;
+
+    private volatile Index index;
+    private final Consumer<RefreshResult> onRefresh;
+    private final Consumer<IOException> onError;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Set<Path> roots = ConcurrentHashMap.newKeySet();
+    private final Thread thread;
+    // Paths whose refresh was requested from other threads, handed over to the watcher thread
+    private final Queue<Path> requested = new ConcurrentLinkedQueue<>();
+
+    // Only touched by the watcher thread
+    private final Set<Path> pending = new LinkedHashSet<>();
+    private long firstPendingMillis;
+    private long lastEventMillis;
+
+    /**
+     * Creates a watcher and starts its background thread.
+     *
+     * @param index     the index to keep up to date
+     * @param onRefresh called on the watcher thread with the result of each applied batch
+     * @param onError   called on the watcher thread when a batch cannot be applied
+     * @throws IOException if the watch service cannot be created
+     */
+    public IndexWatcher(Index index, Consumer<RefreshResult> onRefresh, Consumer<IOException> onError) throws IOException {
+        this.index = index;
+        this.onRefresh = onRefresh;
+        this.onError = onError;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "index-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Starts watching a directory tree. The tree is refreshed first, so the index matches it
+     * from the moment the watch is in place.
+     *
+     * @param root the directory to watch
+     * @return the result of the initial refresh
+     * @throws IOException if the tree cannot be registered or refreshed
+     */
+    public RefreshResult watch(File root) throws IOException {
+        Path rootPath = root.toPath().toAbsolutePath().normalize();
+        if (!Files.isDirectory(rootPath)) {
+            throw new IOException("Not a directory: " + root);
+        }
+
+        // Register before refreshing, so no change falls between the two
+        register(rootPath);
+        roots.add(rootPath);
+        return index.refreshPath(rootPath.toFile());
+    }
+
+    /**
+     * Returns the roots currently watched.
+     *
+     * @return the absolute root directories
+     */
+    public Set<Path> getRoots() {
+        return Collections.unmodifiableSet(roots);
+    }
+
+    /**
+     * Switches the watcher to another index, e.g. one rebuilt with a new strategy, and refreshes
+     * every watched root in it, so changes applied to the previous index are not lost.
+     *
+     * @param index the index to keep up to date from now on
+     */
+    public void setIndex(Index index) {
+        this.index = index;
+        requested.addAll(roots);
+    }
+
+    /**
+     * Stops watching and ends the background thread. Events not applied yet are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+
+    private void register(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                for (Path path = requested.poll(); path != null; path = requested.poll()) {
+                    addPending(path);
+                }
+
+                long now = System.currentTimeMillis();
+                long wait = pending.isEmpty() ? Long.MAX_VALUE
+                        : Math.min(lastEventMillis + QUIET_MILLIS, firstPendingMillis + MAX_DELAY_MILLIS) - now;
+
+                WatchKey key = wait <= 0 ? watchService.poll()
+                        : watchService.poll(Math.min(wait, QUIET_MILLIS), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    collect(key);
+                    continue;
+                }
+
+                now = System.currentTimeMillis();
+                if (!pending.isEmpty() && (now - lastEventMillis >= QUIET_MILLIS
+                        || now - firstPendingMillis >= MAX_DELAY_MILLIS)) {
+                    flush();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed: stop watching
+        }
+    }
+
+    private void collect(WatchKey key) {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null) {
+                break;
+            }
+
+            if (event.kind() == OVERFLOW) {
+                // Events were lost: fall back to refreshing the whole tree
+                for (Path root : roots) {
+                    if (directory.startsWith(root)) {
+                        addPending(root);
+                    }
+                }
+                continue;
+            }
+
+            Path child = directory.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                // Files may have appeared in the new directory before it was registered,
+                // so the pending refresh covers the whole directory
+                try {
+                    register(child);
+                } catch (IOException e) {
+                    onError.accept(e);
+                }
+            } else if (event.kind() == ENTRY_MODIFY && Files.isDirectory(child)) {
+                // The directory's own entries report their changes separately
+                continue;
+            }
+            addPending(child);
+        }
+
+        if (!key.reset()) {
+            // The directory was deleted; its removal is handled through the parent's event
+            directories.remove(key);
+        }
+    }
+
+    private void addPending(Path path) {
+        long now = System.currentTimeMillis();
+        if (pending.isEmpty()) {
+            firstPendingMillis = now;
+        }
+        lastEventMillis = now;
+        pending.add(path);
+    }
+
+    private void flush() {
+        // A pending directory refresh covers every pending path below it
+        List<File> batch = new ArrayList<>();
+        for (Path path : pending) {
+            boolean covered = false;
+            for (Path parent = path.getParent(); parent != null && !covered; parent = parent.getParent()) {
+                covered = pending.contains(parent);
+            }
+            if (!covered) {
+                batch.add(path.toFile());
+            }
+        }
+        pending.clear();
+
+        try {
+            onRefresh.accept(index.refreshPaths(batch));
+        } catch (IOException e) {
+            onError.accept(e);
+        } catch (RuntimeException e) {
+            // A directory vanished mid-walk; the delete event that follows will clean up
+            onError.accept(new IOException(e.getMessage(), e));
+        }
+    }
+}
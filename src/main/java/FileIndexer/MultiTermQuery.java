@@ -0,0 +1,35 @@
+package main.java.FileIndexer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Matches the documents containing any of the terms the query selects from the term dictionary.
+ * The postings of all the selected terms are merged into one bit set, so a query that expands to
+ * thousands of terms costs one pass over their postings rather than a disjunction that wide.
+ */
+public abstract class MultiTermQuery extends Query {
+    /**
+     * Adds the terms the query matches, walking the dictionary with the cursor.
+     *
+     * @param terms   a cursor over the index's terms in sorted order
+     * @param matches receives the matching terms
+     */
+    abstract void collectTerms(TermCursor terms, List<String> matches);
+
+    @Override
+    DocIdIterator iterator(IndexSnapshot snapshot) {
+        List<String> matches = new ArrayList<>();
+        collectTerms(snapshot.terms(), matches);
+
+        BitSet docs = new BitSet();
+        for (String term : matches) {
+            PostingList postings = snapshot.lookup(term);
+            for (int i = 0; i < postings.size(); i++) {
+                docs.set(postings.get(i));
+            }
+        }
+        return new BitSetIterator(docs);
+    }
+}
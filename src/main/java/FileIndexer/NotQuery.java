@@ -0,0 +1,38 @@
+package main.java.FileIndexer;
+
+/**
+ * Matches the documents that do not match another query. Inside an {@link AndQuery} it only
+ * filters the other clauses; on its own it is evaluated against every document in the index.
+ */
+public class NotQuery extends Query {
+    private final Query negated;
+
+    public NotQuery(Query negated) {
+        this.negated = negated;
+    }
+
+    public Query getNegated() {
+        return negated;
+    }
+
+    @Override
+    DocIdIterator iterator(IndexSnapshot snapshot) {
+        return new ConjunctionIterator(new DocIdIterator[]{snapshot.allDocuments()},
+                new DocIdIterator[]{negated.iterator(snapshot)});
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof NotQuery && negated.equals(((NotQuery) other).negated);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * negated.hashCode() + 3;
+    }
+
+    @Override
+    public String toString() {
+        return "NOT " + negated;
+    }
+}
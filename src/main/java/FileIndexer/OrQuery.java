@@ -0,0 +1,44 @@
+package main.java.FileIndexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Matches the documents that match any of its clauses.
+ */
+public class OrQuery extends Query {
+    private final List<Query> clauses;
+
+    public OrQuery(List<Query> clauses) {
+        this.clauses = new ArrayList<>(clauses);
+    }
+
+    public List<Query> getClauses() {
+        return Collections.unmodifiableList(clauses);
+    }
+
+    @Override
+    DocIdIterator iterator(IndexSnapshot snapshot) {
+        DocIdIterator[] iterators = new DocIdIterator[clauses.size()];
+        for (int i = 0; i < iterators.length; i++) {
+            iterators[i] = clauses.get(i).iterator(snapshot);
+        }
+        return new DisjunctionIterator(iterators);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof OrQuery && clauses.equals(((OrQuery) other).clauses);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * clauses.hashCode() + 2;
+    }
+
+    @Override
+    public String toString() {
+        return AndQuery.join(clauses, " OR ");
+    }
+}
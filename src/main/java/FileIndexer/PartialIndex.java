@@ -0,0 +1,153 @@
+package main.java.FileIndexer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the files one worker of an {@link IndexPipeline} has tokenized, built without locking
+ * and added to the main index in bulk with {@link Index#addDocuments(PartialIndex)}. The tokens of
+ * each file go straight into its {@link TermTable}, with no map per file in between and no String
+ * per term. Documents are numbered locally from 0 in the order they were added, and the postings
+ * hold these numbers.
+ */
+class PartialIndex implements Index.TermSink {
+    private final TermTable terms = new TermTable();
+    // By term number
+    private final List<Postings> postings = new ArrayList<>();
+    private final List<Document> documents = new ArrayList<>();
+    private final boolean positional;
+    // The document receiving tokens and its distinct terms so far
+    private int current = -1;
+    private int termCount;
+    // Totals over all terms, for the size estimate
+    private long postingCount;
+    private long positionCount;
+    private long documentBytes;
+
+    /**
+     * Constructs an empty partial index.
+     *
+     * @param positional whether to keep token positions
+     */
+    PartialIndex(boolean positional) {
+        this.positional = positional;
+    }
+
+    /**
+     * Starts the next document, which receives the tokens added until {@link #endDocument}.
+     */
+    void beginDocument() {
+        current = documents.size();
+        termCount = 0;
+    }
+
+    @Override
+    public void add(char[] buffer, int offset, int length, int position) {
+        int term = terms.add(buffer, offset, length);
+        if (term == this.postings.size()) {
+            this.postings.add(new Postings(positional));
+        }
+        Postings postings = this.postings.get(term);
+        int last = postings.docs.size() - 1;
+        if (last < 0 || postings.docs.get(last) != current) {
+            postings.docs.add(current);
+            postings.freqs.add(1);
+            termCount++;
+            postingCount++;
+        } else {
+            postings.freqs.set(last, postings.freqs.get(last) + 1);
+        }
+        if (postings.positions != null) {
+            postings.positions.add(position);
+            positionCount++;
+        }
+    }
+
+    /**
+     * Ends the current document.
+     *
+     * @param path    the absolute path of the file
+     * @param scanned the metadata of the file, with its length and checksum
+     */
+    void endDocument(String path, Index.ScannedFile scanned) {
+        documents.add(new Document(path, scanned, termCount));
+        // The Document's three longs, two ints and path, and its slot in the list
+        documentBytes += IndexStats.OBJECT_BYTES + 36 + IndexStats.REFERENCE_BYTES + IndexStats.stringBytes(path);
+    }
+
+    int size() {
+        return documents.size();
+    }
+
+    /**
+     * Returns the path and metadata of a document.
+     *
+     * @param local the local document number
+     * @return the document
+     */
+    Document getDocument(int local) {
+        return documents.get(local);
+    }
+
+    /**
+     * Estimates the heap bytes held by the partial index. The lists of postings and positions
+     * are assumed to be half full, as they double when they grow.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateBytes() {
+        // A Postings object with two or three lists, each an object and an array header
+        long perTerm = IndexStats.REFERENCE_BYTES + IndexStats.OBJECT_BYTES + (positional ? 3 : 2) * 2 * IndexStats.OBJECT_BYTES;
+        return terms.estimateBytes() + postings.size() * perTerm
+                + 2 * (8 * postingCount + 4 * positionCount) + documentBytes;
+    }
+
+    TermTable getTerms() {
+        return terms;
+    }
+
+    /**
+     * Returns the postings of a term, in local document numbers.
+     *
+     * @param term the term's number in {@link #getTerms()}
+     * @return the postings
+     */
+    Postings getPostings(int term) {
+        return postings.get(term);
+    }
+
+    /**
+     * The documents containing a term, in increasing order, with the term's frequency in each and,
+     * in a positional index, the positions of all its occurrences, document after document.
+     */
+    static final class Postings {
+        final IntList docs = new IntList();
+        final IntList freqs = new IntList();
+        final IntList positions;
+
+        Postings(boolean positional) {
+            this.positions = positional ? new IntList() : null;
+        }
+    }
+
+    /**
+     * The metadata of a tokenized file.
+     */
+    static final class Document {
+        final String path;
+        final long modified;
+        final long size;
+        final long checksum;
+        final int length;
+        final int termCount;
+
+        Document(String path, Index.ScannedFile scanned, int termCount) {
+            this.path = path;
+            this.modified = scanned.modified;
+            this.size = scanned.size;
+            this.checksum = scanned.checksum;
+            this.length = scanned.length;
+            this.termCount = termCount;
+        }
+    }
+}
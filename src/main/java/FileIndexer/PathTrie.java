@@ -0,0 +1,198 @@
+package main.java.FileIndexer;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Trie of indexed file paths by component, from the root directory down to the file name, with
+ * the document ID of each file at its node. Each node counts the files at or below it, so whether
+ * anything under a directory is indexed is answered in time proportional to the depth of the
+ * path, and the files under a directory are listed in time proportional to the depth plus their
+ * number, however many other paths are indexed. Directories are matched by whole components, so
+ * {@code /a/b} does not match {@code /a/bc.txt}.
+ */
+final class PathTrie {
+    private Node root = new Node();
+
+    /**
+     * Records a file.
+     *
+     * @param path  the absolute file path
+     * @param docId its document ID
+     */
+    void put(String path, int docId) {
+        Node node = root;
+        int start = 0;
+        while (true) {
+            int end = nextSeparator(path, start);
+            String name = path.substring(start, end);
+            if (node.children == null) {
+                node.children = new HashMap<>(4);
+            }
+            node = node.children.computeIfAbsent(name, key -> new Node());
+            if (end == path.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+        boolean added = node.docId < 0;
+        node.docId = docId;
+        if (added) {
+            addCount(path, 1);
+        }
+    }
+
+    /**
+     * Forgets a file.
+     *
+     * @param path the absolute file path
+     * @return true if the file was recorded
+     */
+    boolean remove(String path) {
+        Node node = find(path);
+        if (node == null || node.docId < 0) {
+            return false;
+        }
+        node.docId = -1;
+        addCount(path, -1);
+        return true;
+    }
+
+    /**
+     * Returns the document ID of a file.
+     *
+     * @param path the absolute file path
+     * @return the document ID, or -1 if the file is not recorded
+     */
+    int get(String path) {
+        Node node = find(path);
+        return node == null ? -1 : node.docId;
+    }
+
+    /**
+     * Counts the files at or under a path.
+     *
+     * @param path an absolute file or directory path
+     * @return the number of files recorded at the path or below it
+     */
+    int countUnder(String path) {
+        Node node = find(path);
+        return node == null ? 0 : node.count;
+    }
+
+    /**
+     * Collects the document IDs of the files at or under a path.
+     *
+     * @param path an absolute file or directory path
+     * @param ids  receives the IDs, in no particular order
+     */
+    void collectUnder(String path, IntList ids) {
+        Node node = find(path);
+        if (node != null) {
+            collect(node, ids);
+        }
+    }
+
+    void clear() {
+        root = new Node();
+    }
+
+    /**
+     * Estimates the heap bytes held by the nodes, their names and their child maps.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateBytes() {
+        return estimateBytes(root);
+    }
+
+    private static long estimateBytes(Node node) {
+        long bytes = IndexStats.OBJECT_BYTES + 16;
+        if (node.children != null) {
+            bytes += IndexStats.OBJECT_BYTES + IndexStats.arrayBytes(2 * node.children.size(), IndexStats.REFERENCE_BYTES);
+            for (Map.Entry<String, Node> child : node.children.entrySet()) {
+                bytes += IndexStats.MAP_ENTRY_BYTES + IndexStats.stringBytes(child.getKey()) + estimateBytes(child.getValue());
+            }
+        }
+        return bytes;
+    }
+
+    private static void collect(Node node, IntList ids) {
+        if (node.docId >= 0) {
+            ids.add(node.docId);
+        }
+        if (node.children != null) {
+            for (Node child : node.children.values()) {
+                collect(child, ids);
+            }
+        }
+    }
+
+    /**
+     * Finds the node of a path, ignoring trailing separators.
+     *
+     * @return the node, or null if nothing is recorded at or under the path
+     */
+    private Node find(String path) {
+        int length = path.length();
+        while (length > 1 && path.charAt(length - 1) == File.separatorChar) {
+            length--;
+        }
+        Node node = root;
+        int start = 0;
+        while (true) {
+            if (node.children == null) {
+                return null;
+            }
+            int end = Math.min(nextSeparator(path, start), length);
+            node = node.children.get(path.substring(start, end));
+            // Done when nothing follows but the separator of a root such as /
+            if (node == null || end + 1 >= length) {
+                return node;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Adds to the file count of every node on a path, pruning the nodes left without files.
+     */
+    private void addCount(String path, int delta) {
+        root.count += delta;
+        Node node = root;
+        int start = 0;
+        while (true) {
+            int end = nextSeparator(path, start);
+            String name = path.substring(start, end);
+            Node child = node.children.get(name);
+            child.count += delta;
+            if (child.count == 0) {
+                // Everything below goes with it
+                node.children.remove(name);
+                return;
+            }
+            if (end == path.length()) {
+                return;
+            }
+            node = child;
+            start = end + 1;
+        }
+    }
+
+    private static int nextSeparator(String path, int from) {
+        int separator = path.indexOf(File.separatorChar, from);
+        return separator < 0 ? path.length() : separator;
+    }
+
+    /**
+     * A path component: a directory, a file, or both while a file is being replaced by a directory.
+     */
+    private static final class Node {
+        Map<String, Node> children;
+        // The file's document ID, or -1 for a directory
+        int docId = -1;
+        // Files at or below this node
+        int count;
+    }
+}
@@ -0,0 +1,127 @@
+package main.java.FileIndexer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matches the documents in which the tokens of a phrase occur next to each other, in order.
+ * Candidates come from the conjunction of the phrase's terms and adjacency is then checked
+ * against the recorded token positions, so no file is read again. Requires a positional index.
+ */
+public class PhraseQuery extends Query {
+    private final String text;
+
+    /**
+     * Constructs a query for the specified phrase.
+     *
+     * @param text the phrase; it is tokenized with the strategy of the index it runs against
+     */
+    public PhraseQuery(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    DocIdIterator iterator(IndexSnapshot snapshot) {
+        if (!snapshot.isPositional()) {
+            throw new IllegalStateException("Phrase queries need an index with positions enabled");
+        }
+
+        // Tokenize the phrase the same way the files were, counting positions the same way too
+        List<String> terms = snapshot.analyze(text);
+        if (terms.isEmpty()) {
+            return DocIdIterator.empty();
+        }
+
+        PostingList[] postings = new PostingList[terms.size()];
+        DocIdIterator[] iterators = new DocIdIterator[terms.size()];
+        for (int i = 0; i < postings.length; i++) {
+            postings[i] = snapshot.lookup(terms.get(i));
+            if (postings[i] == null) {
+                return DocIdIterator.empty();
+            }
+            iterators[i] = postings[i].iterator();
+        }
+        return new PhraseIterator(new ConjunctionIterator(iterators, new DocIdIterator[0]), postings);
+    }
+
+    /**
+     * Filters the documents containing every term down to those where the terms are adjacent.
+     */
+    private static final class PhraseIterator extends DocIdIterator {
+        private final DocIdIterator candidates;
+        private final PostingList[] postings;
+        private int doc = -1;
+
+        PhraseIterator(DocIdIterator candidates, PostingList[] postings) {
+            this.candidates = candidates;
+            this.postings = postings;
+        }
+
+        @Override
+        public int docId() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            return doc = matchFrom(candidates.nextDoc());
+        }
+
+        @Override
+        public int advance(int target) {
+            return doc = matchFrom(candidates.advance(target));
+        }
+
+        private int matchFrom(int candidate) {
+            while (candidate != NO_MORE_DOCS && !matches(candidate)) {
+                candidate = candidates.nextDoc();
+            }
+            return candidate;
+        }
+
+        /**
+         * Checks whether some occurrence of the first term is followed by each of the others in turn.
+         */
+        private boolean matches(int docId) {
+            int[][] positions = new int[postings.length][];
+            for (int i = 0; i < postings.length; i++) {
+                positions[i] = postings[i].getPositions(postings[i].indexOf(docId));
+            }
+
+            for (int start : positions[0]) {
+                int offset = 1;
+                while (offset < positions.length && Arrays.binarySearch(positions[offset], start + offset) >= 0) {
+                    offset++;
+                }
+                if (offset == positions.length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public long cost() {
+            return candidates.cost();
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PhraseQuery && text.equals(((PhraseQuery) other).text);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * text.hashCode() + 4;
+    }
+
+    @Override
+    public String toString() {
+        return "\"" + text + "\"";
+    }
+}
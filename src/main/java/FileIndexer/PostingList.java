@@ -0,0 +1,451 @@
+package main.java.FileIndexer;
+
+import java.util.Arrays;
+
+/**
+ * Sorted list of the document IDs that contain a term, backed by a primitive int array.
+ * Each document also carries the number of times the term occurs in it and, in a positional
+ * index, the positions of those occurrences, delta-encoded as varints.
+ */
+public class PostingList {
+    private static final int[] EMPTY = new int[0];
+
+    private final String term;
+    private int[] docIds = EMPTY;
+    // Term frequency per document, parallel to docIds; null while every frequency is 1
+    private int[] freqs;
+    // Upper bound on the frequencies; not lowered when documents are removed
+    private int maxFreq;
+    // Encoded positions per document, parallel to docIds; null unless positions were added
+    private byte[][] positions;
+    private int size;
+    // Entries below this index are shared with a snapshot view and are copied before being changed in place
+    private int sharedSize;
+    // Whether the list changed since its last snapshot view was taken
+    private boolean dirty;
+
+    /**
+     * Constructs an empty posting list for the specified term.
+     *
+     * @param term the term whose documents this list holds
+     */
+    public PostingList(String term) {
+        this.term = term;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    /**
+     * Adds a document ID to the list, keeping it sorted.
+     *
+     * @param docId the document ID to add
+     * @return true if the ID was not already present
+     */
+    public boolean add(int docId) {
+        return add(docId, 1, null);
+    }
+
+    /**
+     * Adds a document ID together with the number of occurrences and positions of the term in the document.
+     *
+     * @param docId            the document ID to add
+     * @param freq             the number of times the term occurs in the document
+     * @param encodedPositions the positions as produced by {@link #encodePositions(IntList)}, or null
+     * @return true if the ID was not already present
+     */
+    public boolean add(int docId, int freq, byte[] encodedPositions) {
+        if (encodedPositions != null && positions == null) {
+            positions = new byte[docIds.length][];
+        }
+        if (freq != 1 && freqs == null) {
+            freqs = new int[docIds.length];
+            Arrays.fill(freqs, 0, size, 1);
+        }
+
+        // Fast path: documents are usually added in increasing ID order
+        if (size == 0 || docIds[size - 1] < docId) {
+            ensureCapacity(size + 1);
+            docIds[size] = docId;
+            if (positions != null) {
+                positions[size] = encodedPositions;
+            }
+            if (freqs != null) {
+                freqs[size] = freq;
+            }
+            maxFreq = Math.max(maxFreq, freq);
+            size++;
+            return true;
+        }
+
+        int position = Arrays.binarySearch(docIds, 0, size, docId);
+        if (position >= 0) {
+            return false;
+        }
+
+        // Shift the tail to make room at the insertion point
+        int insertAt = -position - 1;
+        if (insertAt < sharedSize) {
+            unshare();
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(docIds, insertAt, docIds, insertAt + 1, size - insertAt);
+        docIds[insertAt] = docId;
+        if (positions != null) {
+            System.arraycopy(positions, insertAt, positions, insertAt + 1, size - insertAt);
+            positions[insertAt] = encodedPositions;
+        }
+        if (freqs != null) {
+            System.arraycopy(freqs, insertAt, freqs, insertAt + 1, size - insertAt);
+            freqs[insertAt] = freq;
+        }
+        maxFreq = Math.max(maxFreq, freq);
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes a document ID from the list.
+     *
+     * @param docId the document ID to remove
+     * @return true if the ID was present
+     */
+    public boolean remove(int docId) {
+        int position = Arrays.binarySearch(docIds, 0, size, docId);
+        if (position < 0) {
+            return false;
+        }
+        if (position < sharedSize) {
+            unshare();
+        }
+
+        System.arraycopy(docIds, position + 1, docIds, position, size - position - 1);
+        if (positions != null) {
+            System.arraycopy(positions, position + 1, positions, position, size - position - 1);
+            positions[size - 1] = null;
+        }
+        if (freqs != null) {
+            System.arraycopy(freqs, position + 1, freqs, position, size - position - 1);
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * Finds the position of a document ID in the list.
+     *
+     * @param docId the document ID to look for
+     * @return the index of the ID, or a negative value if it is not present
+     */
+    public int indexOf(int docId) {
+        return Arrays.binarySearch(docIds, 0, size, docId);
+    }
+
+    /**
+     * Returns the number of times the term occurs in the document at the given index.
+     *
+     * @param index the position in the list
+     * @return the term frequency
+     */
+    public int getFreq(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return freqs == null ? 1 : freqs[index];
+    }
+
+    /**
+     * Returns an upper bound on the term frequency of any document in the list.
+     *
+     * @return the largest frequency added, which may belong to a document since removed
+     */
+    public int getMaxFreq() {
+        return maxFreq;
+    }
+
+    /**
+     * Returns the positions of the term in the document at the given index.
+     *
+     * @param index the position in the list
+     * @return the sorted token positions, or an empty array if none were recorded
+     */
+    public int[] getPositions(int index) {
+        byte[] encoded = getEncodedPositions(index);
+        return encoded == null ? EMPTY : decodePositions(encoded);
+    }
+
+    /**
+     * Returns the encoded positions of the term in the document at the given index.
+     *
+     * @param index the position in the list
+     * @return the encoded positions, or null if none were recorded
+     */
+    public byte[] getEncodedPositions(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return positions == null ? null : positions[index];
+    }
+
+    /**
+     * Encodes sorted token positions as varint deltas.
+     *
+     * @param sorted the positions in increasing order
+     * @return the encoded positions
+     */
+    static byte[] encodePositions(IntList sorted) {
+        return encodePositions(sorted, 0, sorted.size());
+    }
+
+    /**
+     * Encodes a sorted range of token positions as {@link #encodePositions(IntList)} does.
+     *
+     * @param positions the positions, sorted within the range
+     * @param from      the index of the first position to encode
+     * @param to        the index after the last one
+     * @return the encoded positions
+     */
+    static byte[] encodePositions(IntList positions, int from, int to) {
+        byte[] encoded = new byte[(to - from) * 5];
+        int length = 0;
+        int previous = 0;
+        for (int i = from; i < to; i++) {
+            int delta = positions.get(i) - previous;
+            previous = positions.get(i);
+            while ((delta & ~0x7F) != 0) {
+                encoded[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            encoded[length++] = (byte) delta;
+        }
+        return Arrays.copyOf(encoded, length);
+    }
+
+    /**
+     * Decodes positions encoded by {@link #encodePositions(IntList)}.
+     *
+     * @param encoded the encoded positions
+     * @return the positions in increasing order
+     */
+    static int[] decodePositions(byte[] encoded) {
+        int[] decoded = new int[encoded.length];
+        int count = 0;
+        int value = 0;
+        for (int i = 0; i < encoded.length; ) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = encoded[i++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            value += delta;
+            decoded[count++] = value;
+        }
+        return Arrays.copyOf(decoded, count);
+    }
+
+    /**
+     * Checks whether the list contains a document ID.
+     *
+     * @param docId the document ID to look for
+     * @return true if the ID is present
+     */
+    public boolean contains(int docId) {
+        return Arrays.binarySearch(docIds, 0, size, docId) >= 0;
+    }
+
+    /**
+     * Returns the document ID at the given position in sorted order.
+     *
+     * @param index the position in the list
+     * @return the document ID
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return docIds[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns a read-only view of the list as it is now, for an {@link IndexSnapshot}. The view
+     * shares this list's arrays: entries added at the end later are beyond its size and invisible
+     * to it, and entries it can see are copied before this list changes them in place.
+     *
+     * @return the view
+     */
+    PostingList snapshot() {
+        PostingList view = new PostingList(term);
+        view.docIds = docIds;
+        view.freqs = freqs;
+        view.maxFreq = maxFreq;
+        view.positions = positions;
+        view.size = size;
+        sharedSize = size;
+        dirty = false;
+        return view;
+    }
+
+    /**
+     * Marks the list as changed since its last snapshot view.
+     *
+     * @return true if it was unchanged until now
+     */
+    boolean markDirty() {
+        boolean wasClean = !dirty;
+        dirty = true;
+        return wasClean;
+    }
+
+    private void unshare() {
+        docIds = docIds.clone();
+        if (freqs != null) {
+            freqs = freqs.clone();
+        }
+        if (positions != null) {
+            positions = positions.clone();
+        }
+        sharedSize = 0;
+    }
+
+    /**
+     * Estimates the heap bytes held by the list and its arrays, not counting the term string.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateBytes() {
+        long bytes = IndexStats.OBJECT_BYTES + IndexStats.arrayBytes(docIds.length, 4);
+        if (freqs != null) {
+            bytes += IndexStats.arrayBytes(freqs.length, 4);
+        }
+        if (positions != null) {
+            bytes += IndexStats.arrayBytes(positions.length, IndexStats.REFERENCE_BYTES);
+            for (int i = 0; i < size; i++) {
+                if (positions[i] != null) {
+                    bytes += IndexStats.arrayBytes(positions[i].length, 1);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns a copy of the document IDs in sorted order.
+     *
+     * @return the sorted document IDs
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(docIds, size);
+    }
+
+    /**
+     * Returns an iterator over the document IDs. Advancing gallops ahead with doubling steps and
+     * then binary searches, so skipping over long runs of IDs costs only logarithmic time.
+     * The list must not be modified while the iterator is in use.
+     *
+     * @return an iterator positioned before the first document ID
+     */
+    public DocIdIterator iterator() {
+        return new DocIdIterator() {
+            private int position = -1;
+            private int doc = -1;
+
+            @Override
+            public int docId() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() {
+                return doc = ++position < size ? docIds[position] : NO_MORE_DOCS;
+            }
+
+            @Override
+            public int advance(int target) {
+                int low = position + 1;
+                if (low >= size) {
+                    position = size;
+                    return doc = NO_MORE_DOCS;
+                }
+
+                // Gallop: find a window (low, high] whose upper end is at or past the target
+                int step = 1;
+                int high = low;
+                while (high < size && docIds[high] < target) {
+                    low = high + 1;
+                    high += step;
+                    step <<= 1;
+                }
+                if (high >= size) {
+                    high = size - 1;
+                    if (low > high || docIds[high] < target) {
+                        position = size;
+                        return doc = NO_MORE_DOCS;
+                    }
+                }
+
+                int found = Arrays.binarySearch(docIds, low, high + 1, target);
+                position = found >= 0 ? found : -found - 1;
+                return doc = docIds[position];
+            }
+
+            @Override
+            public long cost() {
+                return size;
+            }
+        };
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > docIds.length) {
+            // Grow by half; most terms are rare, so start small
+            int newCapacity = Math.max(capacity, docIds.length + (docIds.length >> 1) + 1);
+            docIds = Arrays.copyOf(docIds, newCapacity);
+            if (positions != null) {
+                positions = Arrays.copyOf(positions, newCapacity);
+            }
+            if (freqs != null) {
+                freqs = Arrays.copyOf(freqs, newCapacity);
+            }
+            // The copies are no longer seen by any view
+            sharedSize = 0;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PostingList)) {
+            return false;
+        }
+        PostingList other = (PostingList) o;
+        return Arrays.equals(docIds, 0, size, other.docIds, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + docIds[i];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
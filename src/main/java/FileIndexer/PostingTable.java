@@ -0,0 +1,142 @@
+package main.java.FileIndexer;
+
+import java.util.function.Consumer;
+
+/**
+ * The index's map from term to posting list, as an open-addressing table of the lists themselves:
+ * a list's own term is its key, so a term costs one slot rather than a map entry. A term can be
+ * looked up by the characters of a {@link TermTable} entry, without creating a String for it.
+ */
+final class PostingTable {
+    // Linear probing, kept at most half full
+    private PostingList[] slots = new PostingList[16];
+    private int size;
+
+    /**
+     * Looks up the posting list of a term.
+     *
+     * @param term the term
+     * @return the posting list, or null if the term is not in the table
+     */
+    PostingList get(String term) {
+        int mask = slots.length - 1;
+        for (int slot = TermTable.spread(term.hashCode()) & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+            if (slots[slot].getTerm().equals(term)) {
+                return slots[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks up the posting list of a term held in a term table.
+     *
+     * @param terms the table holding the term
+     * @param term  the term's number in that table
+     * @return the posting list, or null if the term is not in this table
+     */
+    PostingList get(TermTable terms, int term) {
+        int hash = terms.getHash(term);
+        int mask = slots.length - 1;
+        for (int slot = TermTable.spread(hash) & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+            String key = slots[slot].getTerm();
+            // String hash codes are cached, so this filters out most mismatches without comparing characters
+            if (key.hashCode() == hash && terms.matches(term, key)) {
+                return slots[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a posting list, whose term must not be in the table yet.
+     *
+     * @param postings the posting list
+     */
+    void put(PostingList postings) {
+        if (2 * (size + 1) > slots.length) {
+            resize(2 * slots.length);
+        }
+        insert(slots, postings);
+        size++;
+    }
+
+    /**
+     * Removes the posting list of a term, if there is one.
+     *
+     * @param term the term
+     */
+    void remove(String term) {
+        int mask = slots.length - 1;
+        int slot = TermTable.spread(term.hashCode()) & mask;
+        while (slots[slot] != null && !slots[slot].getTerm().equals(term)) {
+            slot = (slot + 1) & mask;
+        }
+        if (slots[slot] == null) {
+            return;
+        }
+
+        // Move later lists of the probe run back into the gap, so lookups never stop short of them
+        int gap = slot;
+        for (int next = (gap + 1) & mask; slots[next] != null; next = (next + 1) & mask) {
+            int home = TermTable.spread(slots[next].getTerm().hashCode()) & mask;
+            // The list may fill the gap unless its home slot lies cyclically after the gap and up to next
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                slots[gap] = slots[next];
+                gap = next;
+            }
+        }
+        slots[gap] = null;
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        slots = new PostingList[16];
+        size = 0;
+    }
+
+    /**
+     * Calls the action for every posting list, in no particular order.
+     *
+     * @param action the action to call
+     */
+    void forEach(Consumer<PostingList> action) {
+        for (PostingList postings : slots) {
+            if (postings != null) {
+                action.accept(postings);
+            }
+        }
+    }
+
+    /**
+     * Estimates the heap bytes held by the slots, not counting the posting lists.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateBytes() {
+        return IndexStats.arrayBytes(slots.length, IndexStats.REFERENCE_BYTES);
+    }
+
+    private void resize(int capacity) {
+        PostingList[] resized = new PostingList[capacity];
+        for (PostingList postings : slots) {
+            if (postings != null) {
+                insert(resized, postings);
+            }
+        }
+        slots = resized;
+    }
+
+    private static void insert(PostingList[] slots, PostingList postings) {
+        int mask = slots.length - 1;
+        int slot = TermTable.spread(postings.getTerm().hashCode()) & mask;
+        while (slots[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = postings;
+    }
+}
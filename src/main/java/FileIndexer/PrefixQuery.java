@@ -0,0 +1,46 @@
+package main.java.FileIndexer;
+
+import java.util.List;
+
+/**
+ * Matches the documents containing any term that starts with a prefix. The matching terms form
+ * one contiguous range of the sorted dictionary, which is scanned from the prefix onwards.
+ */
+public class PrefixQuery extends MultiTermQuery {
+    private final String prefix;
+
+    /**
+     * Constructs a query for the specified prefix.
+     *
+     * @param prefix the prefix to match; it is lowercased like the indexed tokens
+     */
+    public PrefixQuery(String prefix) {
+        this.prefix = prefix.toLowerCase();
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    void collectTerms(TermCursor terms, List<String> matches) {
+        for (String term = terms.seek(prefix); term != null && term.startsWith(prefix); term = terms.next()) {
+            matches.add(term);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PrefixQuery && prefix.equals(((PrefixQuery) other).prefix);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * prefix.hashCode() + 5;
+    }
+
+    @Override
+    public String toString() {
+        return prefix + "*";
+    }
+}
@@ -0,0 +1,17 @@
+package main.java.FileIndexer;
+
+/**
+ * A query over the index, evaluated as an iterator over the matching document IDs.
+ * Queries are immutable and compare equal when they match the same way, so they can serve as
+ * cache keys.
+ */
+public abstract class Query {
+    /**
+     * Creates an iterator over the IDs of the documents matching this query. Snapshots never
+     * change, so the iterator stays valid however the index is modified meanwhile.
+     *
+     * @param snapshot the snapshot of the index to evaluate against
+     * @return an iterator positioned before the first matching document
+     */
+    abstract DocIdIterator iterator(IndexSnapshot snapshot);
+}
@@ -0,0 +1,227 @@
+package main.java.FileIndexer;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of query results in front of an {@link Index}. Entries are evicted least recently
+ * used first once either the number of entries or the total number of results they hold exceeds
+ * its limit. Every entry records the {@link Index#getGeneration() generation} of the index it was
+ * computed from and is only served while the index is still at that generation, so a result is
+ * never returned after a change that could have altered it.
+ */
+public class QueryCache {
+    private final int maxEntries;
+    private final long maxResults;
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long results;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maxEntries the largest number of cached queries
+     * @param maxResults the largest total number of paths held over all cached queries
+     */
+    public QueryCache(int maxEntries, long maxResults) {
+        if (maxEntries < 1 || maxResults < 1) {
+            throw new IllegalArgumentException("Cache limits must be at least 1: " + maxEntries + ", " + maxResults);
+        }
+        this.maxEntries = maxEntries;
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Cached {@link Index#query(String)}.
+     *
+     * @param index the index to query
+     * @param word  the word to search for
+     * @return an unmodifiable set of file paths containing the word
+     */
+    public Set<String> query(Index index, String word) {
+        return get(index, new Key("query", word.toLowerCase(), 0),
+                () -> Collections.unmodifiableSet(index.query(word)));
+    }
+
+    /**
+     * Cached {@link Index#search(String)}. Expressions that parse to the same query share an entry.
+     *
+     * @param index      the index to search
+     * @param expression the query expression
+     * @return an unmodifiable set of the paths of the matching files
+     * @throws IllegalArgumentException if the expression is not well formed
+     */
+    public Set<String> search(Index index, String expression) {
+        return search(index, QueryParser.parse(expression));
+    }
+
+    /**
+     * Cached {@link Index#search(Query)}.
+     *
+     * @param index the index to search
+     * @param query the query to evaluate
+     * @return an unmodifiable set of the paths of the matching files
+     */
+    public Set<String> search(Index index, Query query) {
+        return get(index, new Key("search", query, 0),
+                () -> Collections.unmodifiableSet(index.search(query)));
+    }
+
+    /**
+     * Cached {@link Index#rank(String, int)}.
+     *
+     * @param index the index to search
+     * @param text  the query text
+     * @param k     the number of files to return
+     * @return an unmodifiable list of the best matching files, highest score first
+     */
+    public List<ScoredDocument> rank(Index index, String text, int k) {
+        return get(index, new Key("rank", text, k),
+                () -> Collections.unmodifiableList(index.rank(text, k)));
+    }
+
+    private <T> T get(Index index, Key key, Supplier<T> compute) {
+        // Read before computing, so the result is at least as new as the generation it is stored
+        // under; if it is newer, the generation has already moved on and the entry is never served
+        long generation = index.getGeneration();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.index == index && entry.generation == generation) {
+                hits++;
+                @SuppressWarnings("unchecked")
+                T value = (T) entry.value;
+                return value;
+            }
+            misses++;
+            if (entry != null) {
+                // Stale: the index changed, or it is a different index
+                remove(key);
+            }
+        }
+
+        // Computed without any lock, against the index's latest snapshot
+        T value = compute.get();
+        int size = value instanceof Set ? ((Set<?>) value).size() : ((List<?>) value).size();
+        synchronized (this) {
+            // Results too large to ever fit are not cached
+            if (size <= maxResults) {
+                Entry previous = entries.put(key, new Entry(index, generation, value, size));
+                if (previous != null) {
+                    results -= previous.size;
+                }
+                results += size;
+                evict();
+            }
+        }
+        return value;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || results > maxResults) {
+            results -= eldest.next().getValue().size;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            results -= removed.size;
+        }
+    }
+
+    /**
+     * Removes every entry. The counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        results = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total number of paths held by the cached results.
+     *
+     * @return the number of cached result paths
+     */
+    public synchronized long getResultCount() {
+        return results;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return String.format("%d/%d entries, %d/%d results, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                entries.size(), maxEntries, results, maxResults, hits, misses,
+                lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictions);
+    }
+
+    /**
+     * Identifies a cached call: the kind of lookup, its query and, for ranked searches, the result count.
+     */
+    private static final class Key {
+        final String kind;
+        final Object query;
+        final int k;
+
+        Key(String kind, Object query, int k) {
+            this.kind = kind;
+            this.query = query;
+            this.k = k;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return kind.equals(key.kind) && query.equals(key.query) && k == key.k;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, query, k);
+        }
+    }
+
+    private static final class Entry {
+        final Index index;
+        final long generation;
+        final Object value;
+        final int size;
+
+        Entry(Index index, long generation, Object value, int size) {
+            this.index = index;
+            this.generation = generation;
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package main.java.FileIndexer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses boolean query expressions such as {@code error AND (timeout OR reset) NOT debug}.
+ *
+ * <pre>
+ * expression := and ("OR" and)*
+ * and        := unary (["AND"] unary)*
+ * unary      := "NOT" unary | "(" expression ")" | '"' phrase '"' | term
+ * </pre>
+ *
+ * Operators must be written in uppercase, so the lowercase words "and", "or" and "not" can still
+ * be searched for. Adjacent clauses without an operator are combined with AND. An expression
+ * without whitespace is always a single term, so punctuation such as "(" can be looked up too.
+ * Text in double quotes is a {@link PhraseQuery}. A term containing {@code *} or {@code ?} is a
+ * {@link PrefixQuery} when its only wildcard is a trailing {@code *}, and a {@link WildcardQuery}
+ * otherwise; a term made of wildcard characters alone is looked up literally.
+ */
+public class QueryParser {
+    private final List<String> tokens = new ArrayList<>();
+    private int position;
+
+    private QueryParser(String expression) {
+        // Quoted phrases become single tokens that keep their quotes; the text between them is split into words
+        int start = 0;
+        int quote;
+        while ((quote = expression.indexOf('"', start)) >= 0) {
+            int closing = expression.indexOf('"', quote + 1);
+            if (closing < 0) {
+                throw new IllegalArgumentException("Missing closing '\"' in query");
+            }
+            splitWords(expression.substring(start, quote));
+            tokens.add(expression.substring(quote, closing + 1));
+            start = closing + 1;
+        }
+        splitWords(expression.substring(start));
+    }
+
+    private void splitWords(String text) {
+        if (text.trim().isEmpty()) {
+            return;
+        }
+
+        // Split on whitespace and peel parentheses off the ends of words
+        for (String word : text.trim().split("\\s+")) {
+            int start = 0;
+            int end = word.length();
+            while (start < end && word.charAt(start) == '(') {
+                tokens.add("(");
+                start++;
+            }
+            int closing = 0;
+            while (end > start && word.charAt(end - 1) == ')') {
+                closing++;
+                end--;
+            }
+            if (start < end) {
+                tokens.add(word.substring(start, end));
+            }
+            for (int i = 0; i < closing; i++) {
+                tokens.add(")");
+            }
+        }
+    }
+
+    /**
+     * Parses a query expression.
+     *
+     * @param expression the expression to parse
+     * @return the parsed query
+     * @throws IllegalArgumentException if the expression is not well formed
+     */
+    public static Query parse(String expression) {
+        String trimmed = expression.trim();
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException("Empty query");
+        }
+        if (!trimmed.matches(".*\\s.*")) {
+            return termQuery(trimmed);
+        }
+
+        QueryParser parser = new QueryParser(trimmed);
+        Query query = parser.parseOr();
+        if (parser.position < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + parser.tokens.get(parser.position) + "' in query");
+        }
+        return query;
+    }
+
+    private Query parseOr() {
+        List<Query> clauses = new ArrayList<>();
+        clauses.add(parseAnd());
+        while (accept("OR")) {
+            clauses.add(parseAnd());
+        }
+        return clauses.size() == 1 ? clauses.get(0) : new OrQuery(clauses);
+    }
+
+    private Query parseAnd() {
+        List<Query> clauses = new ArrayList<>();
+        clauses.add(parseUnary());
+        while (position < tokens.size() && !peek("OR") && !peek(")")) {
+            accept("AND");
+            clauses.add(parseUnary());
+        }
+        return clauses.size() == 1 ? clauses.get(0) : new AndQuery(clauses);
+    }
+
+    private Query parseUnary() {
+        if (position >= tokens.size()) {
+            throw new IllegalArgumentException("Query ends where a term was expected");
+        }
+        if (accept("NOT")) {
+            return new NotQuery(parseUnary());
+        }
+        if (accept("(")) {
+            Query query = parseOr();
+            if (!accept(")")) {
+                throw new IllegalArgumentException("Missing ')' in query");
+            }
+            return query;
+        }
+
+        String token = tokens.get(position);
+        if (token.equals(")") || token.equals("AND") || token.equals("OR")) {
+            throw new IllegalArgumentException("Unexpected '" + token + "' in query");
+        }
+        position++;
+        if (token.length() > 1 && token.startsWith("\"")) {
+            return new PhraseQuery(token.substring(1, token.length() - 1));
+        }
+        return termQuery(token);
+    }
+
+    private static Query termQuery(String token) {
+        int wildcard = indexOfWildcard(token);
+        if (wildcard < 0 || token.matches("[*?]+")) {
+            return new TermQuery(token);
+        }
+        if (wildcard == token.length() - 1 && token.charAt(wildcard) == '*') {
+            return new PrefixQuery(token.substring(0, wildcard));
+        }
+        return new WildcardQuery(token);
+    }
+
+    private static int indexOfWildcard(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) == '*' || token.charAt(i) == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean peek(String token) {
+        return position < tokens.size() && tokens.get(position).equals(token);
+    }
+
+    private boolean accept(String token) {
+        if (peek(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,62 @@
+package main.java.FileIndexer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summary of a refresh: which files were added, re-indexed or removed, and how many were unchanged.
+ */
+public class RefreshResult {
+    private final List<File> added = new ArrayList<>();
+    private final List<File> updated = new ArrayList<>();
+    private final List<String> removed = new ArrayList<>();
+    private int unchanged;
+
+    void addAdded(File file) {
+        added.add(file);
+    }
+
+    void addUpdated(File file) {
+        updated.add(file);
+    }
+
+    void addRemoved(String path) {
+        removed.add(path);
+    }
+
+    void addUnchanged() {
+        unchanged++;
+    }
+
+    /**
+     * Returns the files that were not in the index before, as found by the directory walk.
+     */
+    public List<File> getAdded() {
+        return added;
+    }
+
+    /**
+     * Returns the files whose content changed and that were re-indexed.
+     */
+    public List<File> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Returns the absolute paths of the indexed files that no longer exist.
+     */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d added, %d updated, %d removed, %d unchanged",
+                added.size(), updated.size(), removed.size(), unchanged);
+    }
+}
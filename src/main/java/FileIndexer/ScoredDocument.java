@@ -0,0 +1,27 @@
+package main.java.FileIndexer;
+
+/**
+ * A file returned by a ranked search, with its relevance score.
+ */
+public class ScoredDocument {
+    private final String path;
+    private final double score;
+
+    public ScoredDocument(String path, double score) {
+        this.path = path;
+        this.score = score;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.4f %s", score, path);
+    }
+}
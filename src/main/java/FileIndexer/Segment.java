@@ -0,0 +1,291 @@
+package main.java.FileIndexer;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view of a segment file written by {@link SegmentWriter}. The file is memory-mapped,
+ * so opening it costs the same regardless of its size; terms are found by binary search over
+ * the term index and posting lists are decoded only when they are looked up.
+ */
+public class Segment {
+    // Files larger than one mapping are split into regions of this size
+    private static final int REGION_BITS = 30;
+    private static final long REGION_SIZE = 1L << REGION_BITS;
+
+    private final Path path;
+    private final MappedByteBuffer[] regions;
+    private final String strategyName;
+    private final boolean positional;
+    private final long documentsOffset;
+    private final long termIndexOffset;
+    private final int termCount;
+    // Sum of the posting list lengths, counted on first use
+    private long postingCount = -1;
+
+    /**
+     * Memory-maps a segment file and reads its header and footer.
+     *
+     * @param path the segment file
+     * @throws IOException if the file cannot be read or is not a valid segment
+     */
+    public Segment(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 8 + SegmentWriter.FOOTER_SIZE) {
+                throw new IOException("Not an index segment: " + path);
+            }
+
+            int regionCount = (int) ((size + REGION_SIZE - 1) / REGION_SIZE);
+            regions = new MappedByteBuffer[regionCount];
+            for (int i = 0; i < regionCount; i++) {
+                long start = i * REGION_SIZE;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+            }
+
+            Cursor header = new Cursor(0);
+            long footer = size - SegmentWriter.FOOTER_SIZE;
+            if (header.readInt() != SegmentWriter.MAGIC || getInt(footer + 20) != SegmentWriter.MAGIC) {
+                throw new IOException("Not an index segment: " + path);
+            }
+            int version = header.readInt();
+            if (version != SegmentWriter.VERSION) {
+                throw new IOException("Unsupported segment version " + version + " (expected " + SegmentWriter.VERSION
+                        + "): " + path + "; index the files again and save a new segment");
+            }
+            strategyName = header.readString();
+            positional = (header.readByte() & SegmentWriter.FLAG_POSITIONAL) != 0;
+
+            documentsOffset = getLong(footer);
+            termIndexOffset = getLong(footer + 8);
+            termCount = getInt(footer + 16);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the class name of the tokenizer strategy the segment was built with.
+     *
+     * @return the strategy class name
+     */
+    public String getStrategyName() {
+        return strategyName;
+    }
+
+    /**
+     * Returns whether the segment holds token positions.
+     *
+     * @return true for a positional segment
+     */
+    public boolean isPositional() {
+        return positional;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * Returns the total number of postings over all terms. Only the length of each posting list is
+     * read, and the result is remembered.
+     *
+     * @return the number of postings
+     */
+    public long getPostingCount() {
+        if (postingCount < 0) {
+            long count = 0;
+            for (int ordinal = 0; ordinal < termCount; ordinal++) {
+                Cursor cursor = new Cursor(termOffset(ordinal));
+                cursor.readString();
+                count += cursor.readVarInt();
+            }
+            postingCount = count;
+        }
+        return postingCount;
+    }
+
+    /**
+     * Adds the segment's documents, with their recorded file metadata and lengths, to an empty document table,
+     * so they receive the same IDs they have in the segment.
+     *
+     * @param documents the empty document table to fill
+     */
+    public void readDocuments(DocumentTable documents) {
+        Cursor cursor = new Cursor(documentsOffset);
+        int count = cursor.readVarInt();
+        for (int i = 0; i < count; i++) {
+            int docId = documents.getOrAdd(cursor.readString());
+            documents.setFileInfo(docId, cursor.readLong(), cursor.readLong(), cursor.readLong());
+            documents.setLength(docId, cursor.readVarInt());
+        }
+    }
+
+    /**
+     * Returns the term with the given ordinal in sorted order.
+     *
+     * @param ordinal the term ordinal, from 0 to the term count
+     * @return the term
+     */
+    public String getTerm(int ordinal) {
+        return new Cursor(termOffset(ordinal)).readString();
+    }
+
+    /**
+     * Finds a term by binary search.
+     *
+     * @param term the term to look for
+     * @return the ordinal of the term, or {@code -(insertion point) - 1} if it is not present
+     */
+    public int find(String term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = getTerm(middle).compareTo(term);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Decodes the posting list of the term with the given ordinal.
+     *
+     * @param ordinal the term ordinal
+     * @return a new posting list holding the term's document IDs and frequencies, and positions if the segment has them
+     */
+    public PostingList getPostings(int ordinal) {
+        Cursor cursor = new Cursor(termOffset(ordinal));
+        PostingList postings = new PostingList(cursor.readString());
+        int count = cursor.readVarInt();
+        int docId = 0;
+        for (int i = 0; i < count; i++) {
+            docId += cursor.readVarInt();
+            int freq = cursor.readVarInt();
+            postings.add(docId, freq, positional ? cursor.readBytes(cursor.readVarInt()) : null);
+        }
+        return postings;
+    }
+
+    /**
+     * Looks up the posting list of a term.
+     *
+     * @param term the term to look up
+     * @return a new posting list, or null if the term is not in the segment
+     */
+    public PostingList getPostings(String term) {
+        int ordinal = find(term);
+        return ordinal < 0 ? null : getPostings(ordinal);
+    }
+
+    /**
+     * Returns a cursor over the segment's terms in sorted order.
+     *
+     * @return a new cursor
+     */
+    TermCursor termCursor() {
+        return new TermCursor() {
+            private int ordinal = -1;
+
+            @Override
+            public String seek(String target) {
+                int found = find(target);
+                ordinal = (found >= 0 ? found : -found - 1) - 1;
+                return next();
+            }
+
+            @Override
+            public String next() {
+                if (ordinal + 1 >= termCount) {
+                    ordinal = termCount;
+                    return null;
+                }
+                return getTerm(++ordinal);
+            }
+        };
+    }
+
+    private long termOffset(int ordinal) {
+        if (ordinal < 0 || ordinal >= termCount) {
+            throw new IndexOutOfBoundsException("Term ordinal: " + ordinal + ", Count: " + termCount);
+        }
+        return getLong(termIndexOffset + 8L * ordinal);
+    }
+
+    private byte getByte(long position) {
+        return regions[(int) (position >>> REGION_BITS)].get((int) (position & (REGION_SIZE - 1)));
+    }
+
+    private int getInt(long position) {
+        return ((getByte(position) & 0xFF) << 24) | ((getByte(position + 1) & 0xFF) << 16)
+                | ((getByte(position + 2) & 0xFF) << 8) | (getByte(position + 3) & 0xFF);
+    }
+
+    private long getLong(long position) {
+        return ((long) getInt(position) << 32) | (getInt(position + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sequential reader over the mapped regions.
+     */
+    private final class Cursor {
+        private long position;
+
+        Cursor(long position) {
+            this.position = position;
+        }
+
+        byte readByte() {
+            return getByte(position++);
+        }
+
+        byte[] readBytes(int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = getByte(position++);
+            }
+            return bytes;
+        }
+
+        int readInt() {
+            int value = getInt(position);
+            position += 4;
+            return value;
+        }
+
+        long readLong() {
+            long value = getLong(position);
+            position += 8;
+            return value;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = getByte(position++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        String readString() {
+            return new String(readBytes(readVarInt()), StandardCharsets.UTF_8);
+        }
+    }
+}
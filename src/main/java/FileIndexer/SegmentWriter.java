@@ -0,0 +1,320 @@
+package main.java.FileIndexer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Writes an index segment file. A segment holds the tokenizer strategy, the document table and
+ * the term dictionary with its posting lists, laid out so that {@link Segment} can memory-map it
+ * and answer lookups without reading it into the heap:
+ *
+ * <pre>
+ * header:     int MAGIC, int VERSION, string strategy class name, byte flags
+ * documents:  varint count, count x (string path, long modified, long size, long checksum, varint length)
+ * terms:      per term in sorted order: string term, varint document frequency, and per document
+ *             a varint doc ID delta and a varint term frequency, followed in a positional segment
+ *             by a varint byte length and the delta-encoded positions
+ * term index: long offset of each term entry, in the same order
+ * footer:     long documents offset, long term index offset, int term count, int MAGIC
+ * </pre>
+ *
+ * Strings are a varint byte length followed by UTF-8 bytes. All documents must be added before
+ * the first term, and terms must be added in {@link String#compareTo} order with document IDs in
+ * increasing order.
+ */
+public class SegmentWriter implements Closeable {
+    static final int MAGIC = 0x54464958; // "TFIX"
+    static final int VERSION = 4;
+    static final int FLAG_POSITIONAL = 1;
+    static final int FOOTER_SIZE = 8 + 8 + 4 + 4;
+
+    private final Path target;
+    private final Path temporary;
+    private final Output out;
+    private final long documentsOffset;
+    private final int documentCount;
+    private final boolean positional;
+    private int documentsAdded;
+    private final LongList termOffsets = new LongList();
+    private String lastTerm;
+    // Postings of the last term still to be added, and the document ID of the one added before
+    private int postingsLeft;
+    private int previousDocId;
+    private boolean committed;
+
+    /**
+     * Starts a segment file. The data goes to a temporary file that only replaces the target
+     * once {@link #finish()} succeeds, so an existing (possibly memory-mapped) segment at the same
+     * path is never overwritten in place.
+     *
+     * @param target        the segment file to create
+     * @param strategyName  the class name of the tokenizer strategy the postings were built with
+     * @param documentCount the number of documents that will be added
+     * @throws IOException if an I/O error occurs writing the file
+     */
+    public SegmentWriter(Path target, String strategyName, int documentCount) throws IOException {
+        this(target, strategyName, false, documentCount);
+    }
+
+    /**
+     * Starts a segment file that may hold token positions.
+     *
+     * @param target        the segment file to create
+     * @param strategyName  the class name of the tokenizer strategy the postings were built with
+     * @param positional    whether positions are written with the postings
+     * @param documentCount the number of documents that will be added
+     * @throws IOException if an I/O error occurs writing the file
+     */
+    public SegmentWriter(Path target, String strategyName, boolean positional, int documentCount) throws IOException {
+        this.target = target.toAbsolutePath();
+        Path directory = this.target.getParent();
+        this.temporary = Files.createTempFile(directory, this.target.getFileName().toString(), ".tmp");
+        this.out = new Output(Files.newOutputStream(temporary));
+        this.documentCount = documentCount;
+        this.positional = positional;
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeString(strategyName);
+        out.write(positional ? FLAG_POSITIONAL : 0);
+
+        documentsOffset = out.position();
+        out.writeVarInt(documentCount);
+    }
+
+    /**
+     * Appends a document. Documents receive IDs 0, 1, 2... in the order they are added.
+     *
+     * @param path     the absolute file path
+     * @param modified the last modification time recorded for the file
+     * @param size     the size recorded for the file
+     * @param checksum the content checksum recorded for the file
+     * @param length   the number of tokens in the file
+     * @throws IOException if an I/O error occurs writing the file
+     */
+    public void addDocument(String path, long modified, long size, long checksum, int length) throws IOException {
+        if (documentsAdded == documentCount) {
+            throw new IllegalStateException("All " + documentCount + " documents have already been added");
+        }
+        documentsAdded++;
+
+        out.writeString(path);
+        out.writeLong(modified);
+        out.writeLong(size);
+        out.writeLong(checksum);
+        out.writeVarInt(length);
+    }
+
+    /**
+     * Appends a term and its posting list.
+     *
+     * @param term   the term, greater than every term added before
+     * @param docIds the sorted document IDs containing the term
+     * @param count  the number of document IDs to take from the array
+     * @throws IOException if an I/O error occurs writing the file
+     */
+    public void addTerm(String term, int[] docIds, int count) throws IOException {
+        startTerm(term, count);
+        for (int i = 0; i < count; i++) {
+            addPosting(docIds[i], 1, null, 0);
+        }
+    }
+
+    /**
+     * Appends a term and its posting list, including the term frequencies and, in a positional
+     * segment, the positions it holds.
+     *
+     * @param postings the posting list, whose term is greater than every term added before
+     * @throws IOException if an I/O error occurs writing the file
+     */
+    public void addTerm(PostingList postings) throws IOException {
+        startTerm(postings.getTerm(), postings.size());
+        for (int i = 0; i < postings.size(); i++) {
+            byte[] positions = postings.getEncodedPositions(i);
+            addPosting(postings.get(i), postings.getFreq(i), positions, positions == null ? 0 : positions.length);
+        }
+    }
+
+    /**
+     * Starts a term whose postings are then added one by one with {@link #addPosting}, so a
+     * posting list can be written without holding all of it in memory.
+     *
+     * @param term  the term, greater than every term added before
+     * @param count the number of postings that will follow
+     * @throws IOException if an I/O error occurs writing the file
+     */
+    void startTerm(String term, int count) throws IOException {
+        if (documentsAdded != documentCount) {
+            throw new IllegalStateException("Only " + documentsAdded + " of " + documentCount + " documents added");
+        }
+        if (postingsLeft != 0) {
+            throw new IllegalStateException(postingsLeft + " postings of " + lastTerm + " not added");
+        }
+        if (lastTerm != null && lastTerm.compareTo(term) >= 0) {
+            throw new IllegalArgumentException("Terms must be added in sorted order: " + term);
+        }
+        lastTerm = term;
+        postingsLeft = count;
+        previousDocId = 0;
+
+        termOffsets.add(out.position());
+        out.writeString(term);
+        out.writeVarInt(count);
+    }
+
+    /**
+     * Appends a posting of the current term.
+     *
+     * @param docId     the document ID, greater than that of the posting before
+     * @param freq      the number of occurrences of the term in the document
+     * @param positions the encoded positions, ignored unless the segment is positional; may be null if the length is 0
+     * @param length    the number of bytes of encoded positions
+     * @throws IOException if an I/O error occurs writing the file
+     */
+    void addPosting(int docId, int freq, byte[] positions, int length) throws IOException {
+        if (postingsLeft == 0) {
+            throw new IllegalStateException("More postings than announced for " + lastTerm);
+        }
+        postingsLeft--;
+
+        out.writeVarInt(docId - previousDocId);
+        previousDocId = docId;
+        out.writeVarInt(freq);
+        if (positional) {
+            out.writeVarInt(length);
+            if (length > 0) {
+                out.write(positions, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Writes the term index and footer and moves the file into place.
+     *
+     * @throws IOException if an I/O error occurs writing the file
+     */
+    public void finish() throws IOException {
+        if (documentsAdded != documentCount) {
+            throw new IllegalStateException("Only " + documentsAdded + " of " + documentCount + " documents added");
+        }
+        if (postingsLeft != 0) {
+            throw new IllegalStateException(postingsLeft + " postings of " + lastTerm + " not added");
+        }
+        long termIndexOffset = out.position();
+        for (int i = 0; i < termOffsets.size(); i++) {
+            out.writeLong(termOffsets.get(i));
+        }
+
+        out.writeLong(documentsOffset);
+        out.writeLong(termIndexOffset);
+        out.writeInt(termOffsets.size());
+        out.writeInt(MAGIC);
+        out.close();
+
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+    }
+
+    /**
+     * Closes the writer, discarding the file unless {@link #finish()} completed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            out.close();
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Buffered output stream that tracks its position as a long.
+     */
+    private static final class Output extends BufferedOutputStream {
+        private long position;
+        private boolean closed;
+
+        Output(OutputStream out) {
+            super(out, 1 << 16);
+        }
+
+        long position() {
+            return position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            super.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            position += len;
+        }
+
+        void writeInt(int value) throws IOException {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                super.close();
+            }
+        }
+    }
+
+    /**
+     * Growable list of primitive longs.
+     */
+    private static final class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
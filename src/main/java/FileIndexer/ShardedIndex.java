@@ -0,0 +1,399 @@
+package main.java.FileIndexer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index partitioned by document over several {@link Index} shards, with the query API of a single
+ * index. Each file belongs to the shard its absolute path hashes to, so indexing walks a tree once
+ * and then adds each shard's files on a thread of its own, with every shard taking only its own
+ * lock. Queries are sent to every shard in parallel and their results merged.
+ *
+ * <p>Every shard is a complete index of its files and is saved to a segment file of its own, so
+ * the shards can be loaded one by one, by this class or by separate processes. Queries see each
+ * shard's latest snapshot; a change that spans several shards may be visible in some before others.
+ * Ranked searches score each document with the statistics of its shard, which hash partitioning
+ * keeps close to those of the whole collection.
+ */
+public class ShardedIndex implements Closeable {
+    private static final Pattern SHARD_FILE = Pattern.compile("shard-(\\d+)\\.seg");
+
+    private final Index[] shards;
+    private final TokenizerContext tokenizerContext;
+    // Runs the work of every shard but the first, which the calling thread takes on itself
+    private final ExecutorService pool;
+
+    /**
+     * Constructs a sharded index whose shards share a tokenizer context, so a strategy change applies to all of them.
+     *
+     * @param tokenizerContext the tokenizer context to use
+     * @param shardCount       the number of shards
+     * @param positional       whether to record token positions
+     */
+    public ShardedIndex(TokenizerContext tokenizerContext, int shardCount, boolean positional) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+        }
+        this.tokenizerContext = tokenizerContext;
+        this.shards = new Index[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Index(tokenizerContext, positional);
+        }
+        this.pool = shardCount == 1 ? null : Executors.newFixedThreadPool(shardCount - 1, task -> {
+            Thread thread = new Thread(task, "index-shard");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the shard a file belongs to.
+     *
+     * @param path the absolute path of the file
+     * @return the shard number, from 0 to the shard count - 1
+     */
+    public int shardOf(String path) {
+        return Math.floorMod(TermTable.spread(path.hashCode()), shards.length);
+    }
+
+    /**
+     * Returns a shard, for example to save or query it on its own.
+     *
+     * @param shard the shard number
+     * @return the shard's index
+     */
+    public Index getShard(int shard) {
+        return shards[shard];
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Indexes a file or directory recursively. The tree is walked once and the files of each shard
+     * are then indexed in parallel, each shard publishing once when its files are done.
+     *
+     * @param path the file or directory to index
+     * @throws IOException if an I/O error occurs; the other shards still index their files
+     */
+    public void indexPath(File path) throws IOException {
+        List<List<File>> routed = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            routed.add(new ArrayList<>());
+        }
+        walk(path, routed);
+        fanOut(shard -> {
+            shards[shard].indexFiles(routed.get(shard));
+            return null;
+        });
+    }
+
+    private void walk(File path, List<List<File>> routed) {
+        if (path.isDirectory()) {
+            File[] files = path.listFiles();
+
+            // Check if the list is null (which could happen if path is not a directory or an I/O error occurs)
+            if (files == null) {
+                throw new NullPointerException("The directory path is either invalid or inaccessible.");
+            }
+            for (File file : files) {
+                walk(file, routed);
+            }
+        } else if (path.isFile()) {
+            routed.get(shardOf(path.getAbsolutePath())).add(path);
+        }
+    }
+
+    /**
+     * Erases a file from the shard it belongs to.
+     *
+     * @param file the file path to erase
+     */
+    public void eraseFile(String file) {
+        shards[shardOf(file)].eraseFile(file);
+    }
+
+    /**
+     * Erases a file or directory from every shard in parallel.
+     *
+     * @param path the file or directory path to erase
+     */
+    public void erasePath(File path) {
+        fanOutQuery(shard -> {
+            shards[shard].erasePath(path);
+            return null;
+        });
+    }
+
+    /**
+     * Queries every shard for files containing the given word.
+     *
+     * @param word the word to search for
+     * @return a set of file paths containing the word, shard after shard
+     */
+    public Set<String> query(String word) {
+        return merge(fanOutQuery(shard -> shards[shard].query(word)));
+    }
+
+    /**
+     * Evaluates a boolean query expression on every shard; see {@link QueryParser} for the syntax.
+     *
+     * @param expression the query expression
+     * @return the paths of the matching files, shard after shard
+     * @throws IllegalArgumentException if the expression is not well formed
+     */
+    public Set<String> search(String expression) {
+        return search(QueryParser.parse(expression));
+    }
+
+    /**
+     * Evaluates a query on every shard.
+     *
+     * @param query the query to evaluate
+     * @return the paths of the matching files, shard after shard
+     */
+    public Set<String> search(Query query) {
+        return merge(fanOutQuery(shard -> shards[shard].search(query)));
+    }
+
+    /**
+     * Ranks the files by their BM25 relevance to a free-text query and returns the best k, taking
+     * the best k of every shard and keeping the best k of those.
+     *
+     * @param text the query text
+     * @param k    the number of files to return
+     * @return the best matching files, highest score first
+     */
+    public List<ScoredDocument> rank(String text, int k) {
+        List<ScoredDocument> merged = new ArrayList<>();
+        for (List<ScoredDocument> top : fanOutQuery(shard -> shards[shard].rank(text, k))) {
+            merged.addAll(top);
+        }
+        // Stable, so ties keep the order of the shards
+        merged.sort(Comparator.comparingDouble(ScoredDocument::getScore).reversed());
+        return merged.size() > k ? new ArrayList<>(merged.subList(0, k)) : merged;
+    }
+
+    /**
+     * Returns a number that changes whenever the results of a query on any shard could change.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        long generation = 0;
+        for (Index shard : shards) {
+            generation += shard.getGeneration();
+        }
+        return generation;
+    }
+
+    /**
+     * Returns the absolute paths of all the files currently in the index.
+     *
+     * @return the indexed paths, shard after shard
+     */
+    public List<String> getIndexedPaths() {
+        List<String> paths = new ArrayList<>();
+        for (Index shard : shards) {
+            paths.addAll(shard.getIndexedPaths());
+        }
+        return paths;
+    }
+
+    public int getDocumentCount() {
+        int count = 0;
+        for (Index shard : shards) {
+            count += shard.getDocumentCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of postings over all the shards, which hold disjoint sets of documents.
+     *
+     * @return the posting count
+     */
+    public long getPostingCount() {
+        long count = 0;
+        for (Index shard : shards) {
+            count += shard.getPostingCount();
+        }
+        return count;
+    }
+
+    public TokenizerContext getTokenizerContext() {
+        return tokenizerContext;
+    }
+
+    /**
+     * Clears every shard.
+     */
+    public void clear() {
+        for (Index shard : shards) {
+            shard.clear();
+        }
+    }
+
+    /**
+     * Saves every shard, in parallel, to a segment file of its own named {@code shard-<n>.seg} in
+     * a directory, creating the directory if needed.
+     *
+     * @param directory the directory to write the segment files to
+     * @throws IOException if an I/O error occurs writing a file
+     */
+    public void save(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        fanOut(shard -> {
+            shards[shard].save(shardFile(directory, shard));
+            return null;
+        });
+    }
+
+    /**
+     * Replaces the contents of every shard with its segment file in a directory written by
+     * {@link #save(Path)}. The directory must hold exactly as many shards as this index, since
+     * files are routed to shards by their number.
+     *
+     * @param directory the directory holding the segment files
+     * @throws IOException if the shard count differs or a file cannot be read or is not a valid segment
+     */
+    public void load(Path directory) throws IOException {
+        int found = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "shard-*.seg")) {
+            for (Path file : files) {
+                Matcher matcher = SHARD_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    found = Math.max(found, Integer.parseInt(matcher.group(1)) + 1);
+                }
+            }
+        }
+        if (found != shards.length) {
+            throw new IOException("Expected " + shards.length + " shards in " + directory + " but found " + found);
+        }
+        fanOut(shard -> {
+            shards[shard].load(shardFile(directory, shard));
+            return null;
+        });
+    }
+
+    /**
+     * Returns the segment file of a shard in a directory written by {@link #save(Path)}.
+     *
+     * @param directory the directory
+     * @param shard     the shard number
+     * @return the path of the shard's segment file
+     */
+    public static Path shardFile(Path directory, int shard) {
+        return directory.resolve("shard-" + shard + ".seg");
+    }
+
+    /**
+     * Stops the threads that work on the shards. The shards themselves stay usable.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static Set<String> merge(List<Set<String>> results) {
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        int size = 0;
+        for (Set<String> paths : results) {
+            size += paths.size();
+        }
+        Set<String> merged = new LinkedHashSet<>(2 * size);
+        for (Set<String> paths : results) {
+            merged.addAll(paths);
+        }
+        return merged;
+    }
+
+    /**
+     * Work done on one shard.
+     */
+    private interface ShardTask<T> {
+        T run(int shard) throws IOException;
+    }
+
+    /**
+     * Runs a task on every shard in parallel and waits for all of them, even when one fails or the
+     * calling thread is interrupted, so no shard is still changing when the first failure is thrown.
+     *
+     * @return the results in shard order
+     */
+    private <T> List<T> fanOut(ShardTask<T> task) throws IOException {
+        List<Future<T>> futures = new ArrayList<>(shards.length - 1);
+        for (int i = 1; i < shards.length; i++) {
+            int shard = i;
+            futures.add(pool.submit(() -> task.run(shard)));
+        }
+
+        List<T> results = new ArrayList<>(shards.length);
+        Throwable failure = null;
+        try {
+            results.add(task.run(0));
+        } catch (IOException | RuntimeException | Error e) {
+            failure = e;
+        }
+        boolean interrupted = false;
+        for (Future<T> future : futures) {
+            while (true) {
+                try {
+                    results.add(future.get());
+                    break;
+                } catch (InterruptedException e) {
+                    // Keep waiting for the shard, and report the interrupt once all are done
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return results;
+    }
+
+    /**
+     * Runs a task that cannot fail with an I/O error on every shard.
+     */
+    private <T> List<T> fanOutQuery(ShardTask<T> task) {
+        try {
+            return fanOut(task);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,22 +1,60 @@
 package main.java.FileIndexer;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Concrete strategy that splits text based on non-word characters and assigns a simple "WORD" token type.
+ * Words are maximal runs of {@code [a-zA-Z_0-9]}, the same tokens {@code text.split("\\W+")} yields.
  */
 public class SimpleTokenizer implements TokenizerStrategy {
     @Override
     public List<Token> tokenize(String text) {
         List<Token> tokens = new ArrayList<>();
-        String[] words = text.split("\\W+");
+        new WordScanner((tokenType, buffer, offset, length) ->
+                tokens.add(new Token(tokenType, new String(buffer, offset, length))), false).scan(text);
+        return tokens;
+    }
+
+    @Override
+    public void tokenize(Reader reader, TokenConsumer consumer, boolean lowercase) throws IOException {
+        new WordScanner(consumer, lowercase).scan(reader);
+    }
 
-        for (String word : words) {
-            if (!word.isEmpty()) {
-                tokens.add(new Token("WORD", word));
+    /**
+     * Scanner emitting every maximal run of word characters.
+     */
+    private static final class WordScanner extends ChunkScanner {
+        WordScanner(TokenConsumer consumer, boolean lowercase) {
+            super(consumer, lowercase);
+        }
+
+        @Override
+        void scanChunk(char[] chunk, int count) {
+            int start = pending != null ? 0 : -1;
+            pending = null;
+
+            for (int i = 0; i < count; i++) {
+                byte charClass = CharClasses.classOf(chunk[i]);
+                if (charClass == CharClasses.LETTER || charClass == CharClasses.DIGIT
+                        || charClass == CharClasses.UNDERSCORE) {
+                    if (lowercase && charClass == CharClasses.LETTER) {
+                        chunk[i] = CharClasses.toLowerCase(chunk[i]);
+                    }
+                    if (start < 0) {
+                        start = i;
+                    }
+                } else if (start >= 0) {
+                    emit(TokenType.WORD, chunk, start, i);
+                    start = -1;
+                }
+            }
+
+            if (start >= 0) {
+                carry(TokenType.WORD, chunk, start, count);
             }
         }
-        return tokens;
     }
 }
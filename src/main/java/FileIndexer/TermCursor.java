@@ -0,0 +1,22 @@
+package main.java.FileIndexer;
+
+/**
+ * Walks the terms of an index in sorted order. Queries that expand to many terms, such as prefix
+ * and wildcard queries, use it to scan a range of the dictionary instead of every key.
+ */
+interface TermCursor {
+    /**
+     * Positions the cursor on the smallest term that is greater than or equal to the target.
+     *
+     * @param target the term to seek to
+     * @return the term the cursor is now on, or null if every term is smaller than the target
+     */
+    String seek(String target);
+
+    /**
+     * Moves the cursor to the next term; before the first seek this is the smallest term.
+     *
+     * @return the next term, or null once the terms are exhausted
+     */
+    String next();
+}
@@ -0,0 +1,354 @@
+package main.java.FileIndexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorted set of the terms of an index, kept alongside the hash map that holds their posting lists
+ * so that the terms can be scanned in order. Terms are stored in blocks of up to 64 with front
+ * coding: each term after the first of a block keeps only the characters it does not share with
+ * the term before it, so a vocabulary of similar lowercase terms costs little more than their
+ * distinct suffixes. Terms that cannot be appended in order are held back and merged into their
+ * blocks in one pass before the terms are next read, so each block is decoded once per batch of
+ * additions rather than once per term.
+ */
+class TermDictionary {
+    private static final int MAX_BLOCK_SIZE = 64;
+
+    private final List<Block> blocks = new ArrayList<>();
+    // Largest term, so terms added in increasing order are appended without decoding a block
+    private String last;
+    // Added terms smaller than the last one, not merged into the blocks yet
+    private final List<String> pending = new ArrayList<>();
+    private int size;
+
+    /**
+     * Adds a term that is not in the dictionary.
+     *
+     * @param term the term to add
+     */
+    void add(String term) {
+        // Fast path: append to the last block
+        if (last == null || term.compareTo(last) > 0) {
+            Block block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+            if (block == null || block.count == MAX_BLOCK_SIZE) {
+                if (block != null) {
+                    block.trim();
+                }
+                block = new Block();
+                blocks.add(block);
+            }
+            block.append(block.count == 0 ? null : last, term);
+            last = term;
+        } else {
+            pending.add(term);
+        }
+        size++;
+    }
+
+    /**
+     * Merges the pending terms into their blocks. The terms going into one block are merged with
+     * it in a single pass, and a block that grows past the maximum is split into even parts.
+     */
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        pending.sort(null);
+
+        // From the last block to the first, so splitting a block leaves the indexes of the earlier ones valid
+        int end = pending.size();
+        while (end > 0) {
+            int blockIndex = findBlock(pending.get(end - 1));
+            int begin = end - 1;
+            while (begin > 0 && findBlock(pending.get(begin - 1)) == blockIndex) {
+                begin--;
+            }
+
+            String[] terms = blocks.get(blockIndex).decode();
+            String[] merged = new String[terms.length + end - begin];
+            int i = 0;
+            int j = begin;
+            for (int k = 0; k < merged.length; k++) {
+                merged[k] = j == end || (i < terms.length && terms[i].compareTo(pending.get(j)) < 0)
+                        ? terms[i++] : pending.get(j++);
+            }
+
+            int parts = (merged.length + MAX_BLOCK_SIZE - 1) / MAX_BLOCK_SIZE;
+            List<Block> encoded = new ArrayList<>(parts);
+            for (int part = 0; part < parts; part++) {
+                encoded.add(Block.encode(merged, part * merged.length / parts, (part + 1) * merged.length / parts));
+            }
+            blocks.set(blockIndex, encoded.get(0));
+            blocks.addAll(blockIndex + 1, encoded.subList(1, parts));
+            end = begin;
+        }
+        pending.clear();
+    }
+
+    /**
+     * Removes a term.
+     *
+     * @param term the term to remove
+     * @return true if the term was present
+     */
+    boolean remove(String term) {
+        flush();
+        if (blocks.isEmpty()) {
+            return false;
+        }
+
+        int blockIndex = findBlock(term);
+        String[] terms = blocks.get(blockIndex).decode();
+        int position = Arrays.binarySearch(terms, term);
+        if (position < 0) {
+            return false;
+        }
+
+        if (terms.length == 1) {
+            blocks.remove(blockIndex);
+        } else {
+            String[] remaining = new String[terms.length - 1];
+            System.arraycopy(terms, 0, remaining, 0, position);
+            System.arraycopy(terms, position + 1, remaining, position, remaining.length - position);
+            blocks.set(blockIndex, Block.encode(remaining, 0, remaining.length));
+        }
+        if (term.equals(last)) {
+            last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1).lastTerm();
+        }
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a read-only copy of the dictionary as it is now, for an {@link IndexSnapshot}. Blocks
+     * other than the last are replaced rather than changed in place, so only the last one is copied,
+     * but the copy still holds a reference to every block, one per 64 terms.
+     *
+     * @return the copy
+     */
+    TermDictionary snapshot() {
+        flush();
+        TermDictionary view = new TermDictionary();
+        view.blocks.addAll(blocks);
+        if (!blocks.isEmpty()) {
+            view.blocks.set(blocks.size() - 1, blocks.get(blocks.size() - 1).copy());
+        }
+        view.last = last;
+        view.size = size;
+        return view;
+    }
+
+    /**
+     * Estimates the heap bytes held by the blocks.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateBytes() {
+        flush();
+        long bytes = IndexStats.OBJECT_BYTES + IndexStats.arrayBytes(blocks.size(), IndexStats.REFERENCE_BYTES);
+        for (Block block : blocks) {
+            bytes += IndexStats.OBJECT_BYTES + IndexStats.stringBytes(block.first)
+                    + 2 * IndexStats.arrayBytes(block.shared.length, 4) + IndexStats.arrayBytes(block.suffixes.length, 2);
+        }
+        return bytes;
+    }
+
+    void clear() {
+        blocks.clear();
+        pending.clear();
+        last = null;
+        size = 0;
+    }
+
+    /**
+     * Returns a cursor over the terms in sorted order. The dictionary must not change while the
+     * cursor is in use.
+     *
+     * @return a new cursor
+     */
+    TermCursor cursor() {
+        flush();
+        return new TermCursor() {
+            private Block block;
+            private int blockIndex = -1;
+            private int position = -1;
+            // The current term, decoded in place so terms skipped by a seek are never turned into strings
+            private char[] current = new char[16];
+            private int currentLength;
+
+            @Override
+            public String seek(String target) {
+                if (blocks.isEmpty()) {
+                    return null;
+                }
+                // Forward seeks within the current block carry on from the current term
+                int found = findBlock(target);
+                if (found != blockIndex || position < 0 || compareCurrent(target) > 0) {
+                    blockIndex = found;
+                    block = blocks.get(found);
+                    position = -1;
+                }
+                while (advance()) {
+                    if (compareCurrent(target) >= 0) {
+                        return new String(current, 0, currentLength);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public String next() {
+                if (block == null) {
+                    if (blocks.isEmpty()) {
+                        return null;
+                    }
+                    blockIndex = 0;
+                    block = blocks.get(0);
+                }
+                return advance() ? new String(current, 0, currentLength) : null;
+            }
+
+            private boolean advance() {
+                position++;
+                while (position >= block.count) {
+                    if (blockIndex + 1 >= blocks.size()) {
+                        position = block.count;
+                        return false;
+                    }
+                    block = blocks.get(++blockIndex);
+                    position = 0;
+                }
+
+                // Keep the shared characters of the previous term and append this term's suffix
+                int start = position == 0 ? 0 : block.ends[position - 1];
+                int suffixLength = block.ends[position] - start;
+                currentLength = block.shared[position] + suffixLength;
+                if (currentLength > current.length) {
+                    current = Arrays.copyOf(current, Math.max(current.length * 2, currentLength));
+                }
+                System.arraycopy(block.suffixes, start, current, block.shared[position], suffixLength);
+                return true;
+            }
+
+            private int compareCurrent(String target) {
+                int limit = Math.min(currentLength, target.length());
+                for (int i = 0; i < limit; i++) {
+                    if (current[i] != target.charAt(i)) {
+                        return current[i] - target.charAt(i);
+                    }
+                }
+                return currentLength - target.length();
+            }
+        };
+    }
+
+    /**
+     * Finds the last block whose first term is not greater than the term, or the first block.
+     */
+    private int findBlock(String term) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (blocks.get(middle).first.compareTo(term) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Front-coded run of consecutive terms.
+     */
+    private static final class Block {
+        String first;
+        int count;
+        // Characters each term shares with the one before it
+        int[] shared = new int[8];
+        // End offset of each term's suffix in the suffix characters
+        int[] ends = new int[8];
+        char[] suffixes = new char[64];
+        int length;
+
+        static Block encode(String[] terms, int from, int to) {
+            Block block = new Block();
+            for (int i = from; i < to; i++) {
+                block.append(i == from ? null : terms[i - 1], terms[i]);
+            }
+            block.trim();
+            return block;
+        }
+
+        void append(String previous, String term) {
+            int common = 0;
+            if (previous == null) {
+                first = term;
+            } else {
+                int limit = Math.min(previous.length(), term.length());
+                while (common < limit && previous.charAt(common) == term.charAt(common)) {
+                    common++;
+                }
+            }
+
+            if (count == shared.length) {
+                shared = Arrays.copyOf(shared, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            int suffixLength = term.length() - common;
+            if (length + suffixLength > suffixes.length) {
+                suffixes = Arrays.copyOf(suffixes, Math.max(suffixes.length * 2, length + suffixLength));
+            }
+            term.getChars(common, term.length(), suffixes, length);
+            length += suffixLength;
+            shared[count] = common;
+            ends[count] = length;
+            count++;
+        }
+
+        String[] decode() {
+            String[] terms = new String[count];
+            char[] current = new char[16];
+            int start = 0;
+            for (int i = 0; i < count; i++) {
+                int termLength = shared[i] + ends[i] - start;
+                if (termLength > current.length) {
+                    current = Arrays.copyOf(current, Math.max(current.length * 2, termLength));
+                }
+                System.arraycopy(suffixes, start, current, shared[i], ends[i] - start);
+                terms[i] = new String(current, 0, termLength);
+                start = ends[i];
+            }
+            return terms;
+        }
+
+        String lastTerm() {
+            String[] terms = decode();
+            return terms[terms.length - 1];
+        }
+
+        Block copy() {
+            Block copy = new Block();
+            copy.first = first;
+            copy.count = count;
+            copy.shared = Arrays.copyOf(shared, count);
+            copy.ends = Arrays.copyOf(ends, count);
+            copy.suffixes = Arrays.copyOf(suffixes, length);
+            copy.length = length;
+            return copy;
+        }
+
+        void trim() {
+            shared = Arrays.copyOf(shared, count);
+            ends = Arrays.copyOf(ends, count);
+            suffixes = Arrays.copyOf(suffixes, length);
+        }
+    }
+}
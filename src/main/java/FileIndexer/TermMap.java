@@ -0,0 +1,280 @@
+package main.java.FileIndexer;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable map from term to posting list, stored as a hash array mapped trie: each node covers
+ * five bits of the term's hash and holds only the slots in use. Applying changes returns a new map
+ * that shares every node the changes did not touch, so an {@link IndexSnapshot} can be published
+ * in time proportional to the number of changed terms while older snapshots keep their own maps.
+ */
+final class TermMap {
+    static final TermMap EMPTY = new TermMap(null, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int size;
+
+    private TermMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Looks up the posting list of a term.
+     *
+     * @param term the term
+     * @return the posting list, or null if the term is not in the map
+     */
+    PostingList get(String term) {
+        return root == null ? null : root.get(term, term.hashCode(), 0);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a map with changed posting lists applied in order: each one replaces the list of its
+     * term, or removes the term if it is empty, as the index never keeps an empty list. Nodes
+     * created while applying them are updated in place, so each node on the path to a changed
+     * term is copied once per call rather than once per term.
+     *
+     * @param changed the changed posting lists, with later lists for a term overriding earlier ones
+     * @return the changed map
+     */
+    TermMap with(List<PostingList> changed) {
+        Edit edit = new Edit(size);
+        Node node = root;
+        for (PostingList postings : changed) {
+            String term = postings.getTerm();
+            if (!postings.isEmpty()) {
+                node = node == null
+                        ? Node.leaf(edit, term, term.hashCode(), postings, 0)
+                        : node.with(edit, term, term.hashCode(), postings, 0);
+            } else if (node != null) {
+                node = node.without(edit, term, term.hashCode(), 0);
+            }
+        }
+        return new TermMap(node, edit.size);
+    }
+
+    /**
+     * Calls the action for every term and its posting list, in no particular order.
+     *
+     * @param action the action to call
+     */
+    void forEach(BiConsumer<String, PostingList> action) {
+        if (root != null) {
+            root.forEach(action);
+        }
+    }
+
+    /**
+     * Identifies the nodes created by one call to {@link #with(List)}, and counts the terms as it goes.
+     */
+    private static final class Edit {
+        int size;
+
+        Edit(int size) {
+            this.size = size;
+        }
+    }
+
+    private static final class Node {
+        private final Edit edit;
+        // One bit per five-bit hash digit in use; unused below the last level, where hashes collide
+        private int bitmap;
+        // For each set bit, in order, a term and its posting list, or null and a child node
+        private Object[] slots;
+
+        Node(Edit edit, int bitmap, Object[] slots) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        static Node leaf(Edit edit, String term, int hash, PostingList postings, int shift) {
+            edit.size++;
+            if (shift >= Integer.SIZE) {
+                return new Node(edit, 0, new Object[] {term, postings});
+            }
+            return new Node(edit, bit(hash, shift), new Object[] {term, postings});
+        }
+
+        /**
+         * Builds the node holding two terms that share the hash digits above the shift.
+         */
+        static Node pair(Edit edit, String first, Object firstPostings, String second, int secondHash,
+                         PostingList secondPostings, int shift) {
+            edit.size++;
+            if (shift >= Integer.SIZE) {
+                return new Node(edit, 0, new Object[] {first, firstPostings, second, secondPostings});
+            }
+            int firstBit = bit(first.hashCode(), shift);
+            int secondBit = bit(secondHash, shift);
+            if (firstBit == secondBit) {
+                edit.size--;
+                Node child = pair(edit, first, firstPostings, second, secondHash, secondPostings, shift + BITS);
+                return new Node(edit, firstBit, new Object[] {null, child});
+            }
+            Object[] slots = Integer.compareUnsigned(firstBit, secondBit) < 0
+                    ? new Object[] {first, firstPostings, second, secondPostings}
+                    : new Object[] {second, secondPostings, first, firstPostings};
+            return new Node(edit, firstBit | secondBit, slots);
+        }
+
+        PostingList get(String term, int hash, int shift) {
+            Node node = this;
+            while (shift < Integer.SIZE) {
+                int bit = bit(hash, shift);
+                if ((node.bitmap & bit) == 0) {
+                    return null;
+                }
+                int index = node.index(bit);
+                Object key = node.slots[index];
+                if (key != null) {
+                    return term.equals(key) ? (PostingList) node.slots[index + 1] : null;
+                }
+                node = (Node) node.slots[index + 1];
+                shift += BITS;
+            }
+
+            // Colliding hashes: compare every term
+            for (int i = 0; i < node.slots.length; i += 2) {
+                if (term.equals(node.slots[i])) {
+                    return (PostingList) node.slots[i + 1];
+                }
+            }
+            return null;
+        }
+
+        Node with(Edit edit, String term, int hash, PostingList postings, int shift) {
+            if (shift >= Integer.SIZE) {
+                for (int i = 0; i < slots.length; i += 2) {
+                    if (term.equals(slots[i])) {
+                        return editable(edit).set(i + 1, postings);
+                    }
+                }
+                edit.size++;
+                return editable(edit).insert(slots.length, term, postings);
+            }
+
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                edit.size++;
+                Node node = editable(edit).insert(index, term, postings);
+                node.bitmap |= bit;
+                return node;
+            }
+
+            Object key = slots[index];
+            if (key == null) {
+                Node child = (Node) slots[index + 1];
+                Node changed = child.with(edit, term, hash, postings, shift + BITS);
+                return changed == child ? this : editable(edit).set(index + 1, changed);
+            }
+            if (term.equals(key)) {
+                return editable(edit).set(index + 1, postings);
+            }
+            Node child = pair(edit, (String) key, slots[index + 1], term, hash, postings, shift + BITS);
+            return editable(edit).set(index, null).set(index + 1, child);
+        }
+
+        /**
+         * Removes a term, returning the changed node, or null once the node is empty.
+         */
+        Node without(Edit edit, String term, int hash, int shift) {
+            if (shift >= Integer.SIZE) {
+                for (int i = 0; i < slots.length; i += 2) {
+                    if (term.equals(slots[i])) {
+                        edit.size--;
+                        return slots.length == 2 ? null : editable(edit).delete(i);
+                    }
+                }
+                return this;
+            }
+
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object key = slots[index];
+            if (key == null) {
+                Node child = (Node) slots[index + 1];
+                Node changed = child.without(edit, term, hash, shift + BITS);
+                if (changed == child) {
+                    return this;
+                }
+                if (changed != null && (changed.slots.length > 2 || changed.slots[0] == null)) {
+                    return editable(edit).set(index + 1, changed);
+                }
+                if (changed != null) {
+                    // A single term left below: keep it here instead
+                    return editable(edit).set(index, changed.slots[0]).set(index + 1, changed.slots[1]);
+                }
+            } else if (!term.equals(key)) {
+                return this;
+            } else {
+                edit.size--;
+            }
+
+            if (bitmap == bit) {
+                return null;
+            }
+            Node node = editable(edit).delete(index);
+            node.bitmap ^= bit;
+            return node;
+        }
+
+        void forEach(BiConsumer<String, PostingList> action) {
+            for (int i = 0; i < slots.length; i += 2) {
+                if (slots[i] != null) {
+                    action.accept((String) slots[i], (PostingList) slots[i + 1]);
+                } else {
+                    ((Node) slots[i + 1]).forEach(action);
+                }
+            }
+        }
+
+        private Node editable(Edit edit) {
+            return this.edit == edit ? this : new Node(edit, bitmap, slots.clone());
+        }
+
+        private Node set(int index, Object value) {
+            slots[index] = value;
+            return this;
+        }
+
+        private Node insert(int index, String term, PostingList postings) {
+            Object[] inserted = new Object[slots.length + 2];
+            System.arraycopy(slots, 0, inserted, 0, index);
+            inserted[index] = term;
+            inserted[index + 1] = postings;
+            System.arraycopy(slots, index, inserted, index + 2, slots.length - index);
+            slots = inserted;
+            return this;
+        }
+
+        private Node delete(int index) {
+            Object[] deleted = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, deleted, 0, index);
+            System.arraycopy(slots, index + 2, deleted, index, slots.length - index - 2);
+            slots = deleted;
+            return this;
+        }
+
+        private int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+    }
+}
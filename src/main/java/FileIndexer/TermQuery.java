@@ -0,0 +1,42 @@
+package main.java.FileIndexer;
+
+/**
+ * Matches the documents containing a single term.
+ */
+public class TermQuery extends Query {
+    private final String term;
+
+    /**
+     * Constructs a query for the specified term.
+     *
+     * @param term the term to match; it is lowercased like the indexed tokens
+     */
+    public TermQuery(String term) {
+        this.term = term.toLowerCase();
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    @Override
+    DocIdIterator iterator(IndexSnapshot snapshot) {
+        PostingList postings = snapshot.lookup(term);
+        return postings == null ? DocIdIterator.empty() : postings.iterator();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof TermQuery && term.equals(((TermQuery) other).term);
+    }
+
+    @Override
+    public int hashCode() {
+        return term.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return term;
+    }
+}
@@ -0,0 +1,205 @@
+package main.java.FileIndexer;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table that numbers distinct terms without a String per term: the characters
+ * of each term are copied once into shared char slabs, and lookups hash and compare the characters
+ * of the tokenizer's buffer directly. Terms are numbered from 0 in the order they were first added,
+ * so callers keep whatever they record per term in arrays indexed by that number, and
+ * {@link #getTerm(int)} materializes a term as a String only when one is needed.
+ * Terms cannot be removed one by one, but the table can be cleared for reuse, keeping its storage.
+ */
+final class TermTable {
+    private static final int MIN_SLAB_CHARS = 1024;
+    private static final int MAX_SLAB_CHARS = 1 << 16;
+    // A cleared table keeps slot arrays up to this size rather than filling larger ones again
+    private static final int MAX_RETAINED_SLOTS = 1 << 16;
+
+    // Term number + 1 per slot, 0 for an empty slot; kept at most half full so probes stay short
+    private int[] slots = new int[16];
+    private int size;
+    // Per term number: its String-compatible hash and where its characters are
+    private int[] hashes = new int[8];
+    private int[] slabIndexes = new int[8];
+    private int[] offsets = new int[8];
+    private int[] lengths = new int[8];
+    private char[][] slabs = new char[4][];
+    private int slabCount;
+    private int slabUsed;
+
+    /**
+     * Returns the number of a term, adding it if it is new.
+     *
+     * @param buffer the characters holding the term
+     * @param offset the index of its first character
+     * @param length the number of its characters
+     * @return the term's number; a new term gets {@link #size()} as it was before the call
+     */
+    int add(char[] buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                int term = append(hash, buffer, offset, length);
+                slots[slot] = term + 1;
+                if (2 * size > slots.length) {
+                    rehash();
+                }
+                return term;
+            }
+            if (hashes[entry - 1] == hash && matches(entry - 1, buffer, offset, length)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes every term. The slabs are kept and refilled by the terms added next.
+     */
+    void clear() {
+        if (slots.length > MAX_RETAINED_SLOTS) {
+            slots = new int[16];
+        } else {
+            Arrays.fill(slots, 0);
+        }
+        size = 0;
+        slabCount = 0;
+        slabUsed = 0;
+    }
+
+    /**
+     * Returns the hash of a term, which is the same as the hash code of the term as a String.
+     *
+     * @param term the term's number
+     * @return the hash
+     */
+    int getHash(int term) {
+        return hashes[term];
+    }
+
+    /**
+     * Materializes a term as a String.
+     *
+     * @param term the term's number
+     * @return the term
+     */
+    String getTerm(int term) {
+        return new String(slabs[slabIndexes[term]], offsets[term], lengths[term]);
+    }
+
+    /**
+     * Checks whether a term has the given characters.
+     *
+     * @param term   the term's number
+     * @param string the characters to compare with
+     * @return true if they are the same
+     */
+    boolean matches(int term, String string) {
+        int length = lengths[term];
+        if (string.length() != length) {
+            return false;
+        }
+        char[] slab = slabs[slabIndexes[term]];
+        int offset = offsets[term];
+        for (int i = 0; i < length; i++) {
+            if (slab[offset + i] != string.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimates the heap bytes held by the table, its per-term arrays and its slabs.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateBytes() {
+        long bytes = IndexStats.OBJECT_BYTES + IndexStats.arrayBytes(slots.length, 4)
+                + 4 * IndexStats.arrayBytes(hashes.length, 4) + IndexStats.arrayBytes(slabs.length, IndexStats.REFERENCE_BYTES);
+        for (char[] slab : slabs) {
+            if (slab != null) {
+                bytes += IndexStats.arrayBytes(slab.length, 2);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Computes the hash String.hashCode() gives the same characters, so terms stored here and
+     * terms held as Strings can share a table.
+     */
+    static int hash(char[] buffer, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash;
+    }
+
+    /**
+     * Scrambles a hash before it is masked to a slot, as String hashes of short terms differ
+     * mostly in their low bits.
+     */
+    static int spread(int hash) {
+        int scrambled = hash * 0x9E3779B9;
+        return scrambled ^ (scrambled >>> 16);
+    }
+
+    private boolean matches(int term, char[] buffer, int offset, int length) {
+        return lengths[term] == length
+                && Arrays.equals(slabs[slabIndexes[term]], offsets[term], offsets[term] + length, buffer, offset, offset + length);
+    }
+
+    /**
+     * Copies a new term's characters into the current slab, starting another when it is full.
+     */
+    private int append(int hash, char[] buffer, int offset, int length) {
+        if (slabCount == 0 || slabUsed + length > slabs[slabCount - 1].length) {
+            if (slabCount == slabs.length) {
+                slabs = Arrays.copyOf(slabs, 2 * slabCount);
+            }
+            // Reuse the slab left by a clear if the term fits; otherwise slabs double up to a cap, so
+            // small tables stay small, and a longer term gets a slab of its own
+            if (slabs[slabCount] == null || slabs[slabCount].length < length) {
+                int previous = slabCount == 0 ? MIN_SLAB_CHARS / 2 : slabs[slabCount - 1].length;
+                slabs[slabCount] = new char[Math.max(length, Math.min(MAX_SLAB_CHARS, 2 * previous))];
+            }
+            slabCount++;
+            slabUsed = 0;
+        }
+        System.arraycopy(buffer, offset, slabs[slabCount - 1], slabUsed, length);
+
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, 2 * size);
+            slabIndexes = Arrays.copyOf(slabIndexes, 2 * size);
+            offsets = Arrays.copyOf(offsets, 2 * size);
+            lengths = Arrays.copyOf(lengths, 2 * size);
+        }
+        hashes[size] = hash;
+        slabIndexes[size] = slabCount - 1;
+        offsets[size] = slabUsed;
+        lengths[size] = length;
+        slabUsed += length;
+        return size++;
+    }
+
+    private void rehash() {
+        int[] rehashed = new int[2 * slots.length];
+        int mask = rehashed.length - 1;
+        for (int term = 0; term < size; term++) {
+            int slot = spread(hashes[term]) & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = term + 1;
+        }
+        slots = rehashed;
+    }
+}
@@ -1,16 +1,55 @@
 package main.java.FileIndexer;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.JMException;
 
     /**
      * Main application class providing a console interface.
      */
     public class TextFileIndexer {
-        static List<String> indexedFiles = new ArrayList<String>();
+        static IndexWatcher watcher;
+        static IndexServer server;
+        // The index commands run against; replaced atomically when a strategy rebuild completes
+        static final AtomicReference<Index> currentIndex = new AtomicReference<>();
+        static volatile IndexRebuild rebuild;
+        // Set while the index is a segment built by index -m, which any change would read whole into the heap
+        static volatile boolean budgetedSegment;
+        static final String BUDGETED_SEGMENT_REFUSAL = "The index was built within a memory budget and changing it"
+                + " would read the whole segment into memory; load a segment to replace it.";
+        // Repeated queries are answered from here until the index changes
+        static final QueryCache cache = new QueryCache(1000, 1000000);
+        static final Set<String> MODIFYING_COMMANDS = new HashSet<>(Arrays.asList("index", "erase", "refresh", "load"));
+        static final Set<String> BUDGET_REFUSED_COMMANDS = new HashSet<>(Arrays.asList("index", "erase", "refresh", "watch",
+                "strategy", "positions"));
 
         public static void main(String[] args) {
+            Options startup = Options.parse(args);
+            if (startup == null) {
+                printCommandLineUsage();
+                return;
+            }
+
+            // Without a console: answer the queries and exit
+            if (startup.queries != null) {
+                if (!runBatch(startup)) {
+                    System.exit(1);
+                }
+                return;
+            }
+
             Scanner scanner = null;
 
             try {
@@ -19,14 +58,42 @@ import java.util.*;
                 TokenizerContext tokenizerContext = new TokenizerContext();
                 tokenizerContext.setStrategy(new SimpleTokenizer());
 
-                Index index = new Index(tokenizerContext);
+                currentIndex.set(new Index(tokenizerContext));
+                registerStats(currentIndex.get());
+
+                // Map a saved segment and index the paths given on the command line before accepting commands
+                if (startup.load != null) {
+                    loadSegment(currentIndex.get(), startup.load);
+                }
+                for (String pathStr : startup.paths) {
+                    try {
+                        currentIndex.get().indexPath(new File(pathStr), startup.threads);
+                        System.out.println("Indexed: " + pathStr);
+                    } catch (IOException e) {
+                        System.out.println("Error indexing path: " + e.getMessage());
+                    }
+                }
 
                 System.out.println("Welcome to the text file indexing service.");
                 System.out.println("Commands:");
-                System.out.println("  index <path>          - Index the specified file or directory");
+                System.out.println("  index [options] <path> - Index the specified file or directory (run index for the options)");
                 System.out.println("  erase <path>          - Erase the specified file or directory from the index");
+                System.out.println("  refresh <path>        - Re-index changed files, add new ones and drop deleted ones");
+                System.out.println("  watch <path>|stop     - Keep a directory's index up to date as files change");
                 System.out.println("  query <word>          - Query files containing the given word");
-                System.out.println("  strategy <type>       - Change tokenizer strategy (simple/advanced)");
+                System.out.println("  query <expression>    - Query with AND, OR, NOT, parentheses and \"phrases\", e.g. a AND (b OR c) NOT d");
+                System.out.println("  query <pattern>       - Query with * and ? wildcards, e.g. conn* or c?nnect*");
+                System.out.println("  rank [-k <n>] <text>  - List the n (default 10) files most relevant to the text, best first");
+                System.out.println("  fuzzy <word> <edits>  - Query files containing words within 1 or 2 edits of the given word");
+                System.out.println("  phrase \"<text>\"       - Query files containing the exact phrase (needs positions on)");
+                System.out.println("  strategy <type>       - Change tokenizer strategy (simple/advanced) by rebuilding in the background");
+                System.out.println("  strategy status|cancel - Show the progress of a strategy rebuild or cancel it");
+                System.out.println("  positions on|off      - Record token positions for phrase queries, rebuilding in the background");
+                System.out.println("  cache stats|clear     - Show query cache hit rate and size, or empty the cache");
+                System.out.println("  stats [reset]         - Show indexing throughput, query latency and index size, or reset the timings");
+                System.out.println("  serve <port>|stop     - Serve queries and changes to other processes over TCP on localhost");
+                System.out.println("  save <file>           - Save the index to a segment file");
+                System.out.println("  load <file>           - Replace the index with a saved segment file");
                 System.out.println("  exit                  - Exit the application");
 
                 while (true) {
@@ -54,6 +121,17 @@ import java.util.*;
                     // Split the line into command and arguments
                     String[] parts = line.trim().split("\\s+", 2);
                     String command = parts[0];
+                    Index index = currentIndex.get();
+
+                    // Changes made while a rebuild runs would be lost when the new index replaces this one
+                    if (rebuild != null && MODIFYING_COMMANDS.contains(command.toLowerCase())) {
+                        System.out.println("A strategy rebuild is in progress; wait for it to finish or run 'strategy cancel'.");
+                        continue;
+                    }
+                    if (budgetedSegment && BUDGET_REFUSED_COMMANDS.contains(command.toLowerCase())) {
+                        System.out.println(BUDGETED_SEGMENT_REFUSAL);
+                        continue;
+                    }
 
                     // Process the command
                     if (command.equalsIgnoreCase("exit")) {
@@ -61,32 +139,95 @@ import java.util.*;
                     } else if (command.equalsIgnoreCase("index")) {
                         // Check if the path argument is provided
                         if (parts.length < 2) {
-                            System.out.println("Usage: index <path>");
+                            printIndexUsage();
                             continue;
                         }
 
-                        // Check if the path exists
+                        // Parse the optional thread counts and queue capacity; any of them selects the pipeline
                         String pathStr = parts[1];
+                        int threads = 1;
+                        int readers = 0;
+                        int queueCapacity = 0;
+                        int memoryMegabytes = 0;
+                        String segmentStr = null;
+                        boolean valid = true;
+                        while (valid && pathStr.matches("-[trqmo] .*")) {
+                            String[] options = pathStr.split("\\s+", 3);
+                            int value;
+                            try {
+                                value = Integer.parseInt(options[1]);
+                            } catch (NumberFormatException e) {
+                                value = 0;
+                            }
+                            valid = options.length == 3 && (value >= 1 || options[0].equals("-o"));
+                            if (options[0].equals("-t")) {
+                                threads = value;
+                            } else if (options[0].equals("-r")) {
+                                readers = value;
+                            } else if (options[0].equals("-q")) {
+                                queueCapacity = value;
+                            } else if (options[0].equals("-m")) {
+                                memoryMegabytes = value;
+                            } else {
+                                segmentStr = options[1];
+                            }
+                            pathStr = valid ? options[2] : pathStr;
+                        }
+                        // A bounded-memory build writes a segment, so it needs a file and takes no pipeline options
+                        boolean external = memoryMegabytes > 0 || segmentStr != null;
+                        if (!valid || (external && (memoryMegabytes == 0 || segmentStr == null
+                                || threads > 1 || readers > 0 || queueCapacity > 0))) {
+                            printIndexUsage();
+                            continue;
+                        }
+
+                        // Check if the path exists
                         File path = new File(pathStr);
                         if (!path.exists()) {
                             System.out.println("Path does not exist: " + pathStr);
                             continue;
                         }
 
-                        // Check if the path is already indexed
-                        if (indexedFiles.contains(pathStr)) {
+                        // Check if the file is already indexed
+                        if (path.isFile() && index.isIndexed(path)) {
                             System.out.println("Path already indexed: " + pathStr);
                             continue;
                         }
 
+                        // Build a segment within the memory budget and load it in place of the index, which must
+                        // hold nothing yet so no files are dropped, and nothing may change it afterwards
+                        if (external) {
+                            if (index.getDocumentCount() > 0 || watcher != null) {
+                                System.out.println("index -m builds a new index and cannot add to one that already holds"
+                                        + " or watches files; index the path without -m instead.");
+                                continue;
+                            }
+                            try {
+                                ExternalIndexBuilder builder = new ExternalIndexBuilder(index, memoryMegabytes * 1024L * 1024);
+                                builder.build(path, Paths.get(segmentStr));
+                                System.out.println(builder);
+                                budgetedSegment = loadSegment(index, segmentStr);
+                            } catch (IOException e) {
+                                System.out.println("Error indexing path: " + e.getMessage());
+                            }
+                            continue;
+                        }
+
                         // Index the path
                         try {
-                            index.indexPath(path);
-
-                            // Add the paths recursively to the indexed files list
-                            indexPath(path);
+                            IndexPipeline pipeline = null;
+                            if (threads > 1 || readers > 0 || queueCapacity > 0) {
+                                pipeline = new IndexPipeline(index, readers > 0 ? readers : threads, threads,
+                                        queueCapacity > 0 ? queueCapacity : IndexPipeline.DEFAULT_QUEUE_CAPACITY);
+                                pipeline.run(path);
+                            } else {
+                                index.indexPath(path);
+                            }
 
                             System.out.println("Indexed: " + pathStr);
+                            if (pipeline != null) {
+                                System.out.println(pipeline);
+                            }
                         } catch (IOException e) {
                             System.out.println("Error indexing path: " + e.getMessage());
                         }
@@ -97,51 +238,94 @@ import java.util.*;
                             continue;
                         }
 
-                        // Check if the path exists
+                        // Check if any file at or under the path is indexed, whether or not it still exists
                         String pathStr = parts[1];
                         File path = new File(pathStr);
-                        if (!path.exists()) {
-                            System.out.println("Path does not exist: " + pathStr);
+                        if (!index.isIndexed(path)) {
+                            System.out.println("Path not indexed: " + pathStr);
                             continue;
                         }
 
-                        // Check if no indexed path starts with the given path
-                        boolean found = false;
-                        for (String indexedPath : indexedFiles) {
-                            if (indexedPath.startsWith(pathStr)) {
-                                found = true;
-                                break;
-                            }
+                        // Erase the path
+                        index.erasePath(path);
+
+                        System.out.println("Erased: " + pathStr + " and all its sub-paths.");
+                    } else if (command.equalsIgnoreCase("refresh")) {
+                        // Check if the path argument is provided
+                        if (parts.length < 2) {
+                            System.out.println("Usage: refresh <path>");
+                            continue;
                         }
 
-                        if (!found) {
-                            System.out.println("Path not indexed: " + pathStr);
+                        // Refresh the path, which may have been deleted since it was indexed
+                        String pathStr = parts[1];
+                        File path = new File(pathStr);
+                        try {
+                            RefreshResult result = index.refreshPath(path);
+                            System.out.println("Refreshed: " + pathStr + " (" + result + ")");
+                        } catch (IOException e) {
+                            System.out.println("Error refreshing path: " + e.getMessage());
+                        }
+                    } else if (command.equalsIgnoreCase("watch")) {
+                        // Check if the path argument is provided
+                        if (parts.length < 2) {
+                            System.out.println("Usage: watch <path>|stop");
                             continue;
                         }
 
-                        // Erase the path
-                        index.erasePath(path);
+                        // Stop watching every directory
+                        String pathStr = parts[1];
+                        if (pathStr.equalsIgnoreCase("stop")) {
+                            if (watcher == null) {
+                                System.out.println("Not watching any directory.");
+                            } else {
+                                try {
+                                    watcher.close();
+                                    System.out.println("Stopped watching.");
+                                } catch (IOException e) {
+                                    System.out.println("Error stopping watcher: " + e.getMessage());
+                                }
+                                watcher = null;
+                            }
+                            continue;
+                        }
 
-                        // Remove all the files that start with the path
-                        indexedFiles.removeIf(indexedPath -> indexedPath.startsWith(pathStr));
+                        // Check if the path is a directory
+                        File path = new File(pathStr);
+                        if (!path.isDirectory()) {
+                            System.out.println("Not a directory: " + pathStr);
+                            continue;
+                        }
 
-                        System.out.println("Erased: " + pathStr + " and all its sub-paths.");
+                        // Start the watcher on first use, then bring the directory up to date and watch it
+                        try {
+                            if (watcher == null) {
+                                watcher = new IndexWatcher(index,
+                                        result -> System.out.println("[watch] Applied changes (" + result + ")"),
+                                        e -> System.out.println("[watch] Error applying changes: " + e.getMessage()));
+                            }
+                            RefreshResult result = watcher.watch(path);
+                            System.out.println("Watching: " + pathStr + " (" + result + ")");
+                        } catch (IOException e) {
+                            System.out.println("Error watching path: " + e.getMessage());
+                        }
                     } else if (command.equalsIgnoreCase("query")) {
                         // Check if the word argument is provided
                         if (parts.length < 2) {
-                            System.out.println("Usage: query <word>");
+                            System.out.println("Usage: query <word>|<expression>");
                             continue;
                         }
 
-                        // Query the index
+                        // Query the index; several words form a boolean expression
                         String word = parts[1];
+                        boolean expression = word.contains(" ");
                         Set<String> results;
                         try {
-                            results = index.query(word);
+                            results = cache.search(index, word);
                             if (results.isEmpty()) {
-                                System.out.println("No files contain the word: " + word);
+                                System.out.println((expression ? "No files match the query: " : "No files contain the word: ") + word);
                             } else {
-                                System.out.println("Files containing the word '" + word + "':");
+                                System.out.println((expression ? "Files matching '" : "Files containing the word '") + word + "':");
                                 for (String file : results) {
                                     System.out.println("  " + file);
                                 }
@@ -149,43 +333,259 @@ import java.util.*;
                         } catch (Exception e) {
                             System.out.println("Error querying index: " + e.getMessage());
                         }
+                    } else if (command.equalsIgnoreCase("rank")) {
+                        // Check if the text argument is provided
+                        if (parts.length < 2) {
+                            System.out.println("Usage: rank [-k <count>] <text>");
+                            continue;
+                        }
+
+                        // Parse the optional result count
+                        String text = parts[1];
+                        int k = 10;
+                        if (text.startsWith("-k ")) {
+                            String[] options = text.split("\\s+", 3);
+                            try {
+                                k = Integer.parseInt(options[1]);
+                            } catch (NumberFormatException e) {
+                                k = 0;
+                            }
+                            if (options.length < 3 || k < 1) {
+                                System.out.println("Usage: rank [-k <count>] <text>");
+                                continue;
+                            }
+                            text = options[2];
+                        }
+
+                        List<ScoredDocument> results = cache.rank(index, text, k);
+                        if (results.isEmpty()) {
+                            System.out.println("No files match: " + text);
+                        } else {
+                            System.out.println("Top " + results.size() + " files for '" + text + "':");
+                            for (ScoredDocument result : results) {
+                                System.out.println("  " + result);
+                            }
+                        }
+                    } else if (command.equalsIgnoreCase("fuzzy")) {
+                        // Check if the word and edit distance arguments are provided
+                        String[] arguments = parts.length < 2 ? new String[0] : parts[1].split("\\s+");
+                        int maxEdits = -1;
+                        if (arguments.length == 2) {
+                            try {
+                                maxEdits = Integer.parseInt(arguments[1]);
+                            } catch (NumberFormatException e) {
+                                maxEdits = -1;
+                            }
+                        }
+                        if (maxEdits < 0 || maxEdits > FuzzyQuery.MAX_EDITS) {
+                            System.out.println("Usage: fuzzy <word> <maxEdits> (maxEdits from 0 to " + FuzzyQuery.MAX_EDITS + ")");
+                            continue;
+                        }
+
+                        String word = arguments[0];
+                        Set<String> results = cache.search(index, new FuzzyQuery(word, maxEdits));
+                        if (results.isEmpty()) {
+                            System.out.println("No files contain a word within " + maxEdits + " edits of: " + word);
+                        } else {
+                            System.out.println("Files containing a word within " + maxEdits + " edits of '" + word + "':");
+                            for (String file : results) {
+                                System.out.println("  " + file);
+                            }
+                        }
+                    } else if (command.equalsIgnoreCase("phrase")) {
+                        // Check if the phrase argument is provided
+                        if (parts.length < 2) {
+                            System.out.println("Usage: phrase \"<text>\"");
+                            continue;
+                        }
+
+                        // The quotes are optional around the whole argument
+                        String text = parts[1];
+                        if (text.length() > 1 && text.startsWith("\"") && text.endsWith("\"")) {
+                            text = text.substring(1, text.length() - 1);
+                        }
+
+                        try {
+                            Set<String> results = cache.search(index, new PhraseQuery(text));
+                            if (results.isEmpty()) {
+                                System.out.println("No files contain the phrase: \"" + text + "\"");
+                            } else {
+                                System.out.println("Files containing the phrase \"" + text + "\":");
+                                for (String file : results) {
+                                    System.out.println("  " + file);
+                                }
+                            }
+                        } catch (IllegalStateException e) {
+                            System.out.println(e.getMessage() + "; run 'positions on' first.");
+                        }
+                    } else if (command.equalsIgnoreCase("positions")) {
+                        // Check if the mode argument is provided
+                        if (parts.length < 2 || !(parts[1].equalsIgnoreCase("on") || parts[1].equalsIgnoreCase("off"))) {
+                            System.out.println("Usage: positions on|off");
+                            continue;
+                        }
+
+                        boolean positional = parts[1].equalsIgnoreCase("on");
+                        if (positional == index.isPositional()) {
+                            System.out.println("Positions are already " + (positional ? "on." : "off."));
+                            continue;
+                        }
+                        if (rebuild != null) {
+                            System.out.println("A strategy rebuild is already in progress (" + rebuild + ").");
+                            continue;
+                        }
+
+                        // Re-index with the same strategy in the background, as a strategy change does
+                        IndexRebuild started = new IndexRebuild(index, index.getTokenizerContext().getStrategy(), positional,
+                                Runtime.getRuntime().availableProcessors(), TextFileIndexer::finishRebuild);
+                        rebuild = started;
+                        started.start();
+                        System.out.println("Re-indexing " + started.getTotal() + " files with positions "
+                                + (positional ? "on" : "off") + " in the background."
+                                + " Use 'strategy status' to follow it or 'strategy cancel' to stop it.");
                     } else if (command.equalsIgnoreCase("strategy")) {
                         // Check if the type argument is provided
                         if (parts.length < 2) {
-                            System.out.println("Usage: strategy <type>");
+                            System.out.println("Usage: strategy <type>|status|cancel");
                             continue;
                         }
 
                         // Get the strategy type
                         String type = parts[1];
+                        IndexRebuild running = rebuild;
 
-                        // Set the tokenizer strategy
-                        try {
-                            if (type.equalsIgnoreCase("simple")) {
-                                tokenizerContext.setStrategy(new SimpleTokenizer());
-                                System.out.println("Tokenizer strategy set to SimpleTokenizer.");
-                            } else if (type.equalsIgnoreCase("advanced")) {
-                                tokenizerContext.setStrategy(new AdvancedTokenizer());
-                                System.out.println("Tokenizer strategy set to AdvancedTokenizer.");
+                        // Report on or cancel a rebuild in progress
+                        if (type.equalsIgnoreCase("status")) {
+                            System.out.println(running == null ? "No strategy rebuild in progress." : "Rebuild " + running);
+                            continue;
+                        } else if (type.equalsIgnoreCase("cancel")) {
+                            if (running == null) {
+                                System.out.println("No strategy rebuild in progress.");
                             } else {
-                                System.out.println("Unknown strategy type: " + type);
+                                running.cancel();
+                                System.out.println("Cancelling rebuild with " + running.getStrategy().getClass().getSimpleName() + ".");
                             }
-                        } catch (Exception e) {
-                            System.out.println("Error setting tokenizer strategy: " + e.getMessage());
+                            continue;
+                        } else if (running != null) {
+                            System.out.println("A strategy rebuild is already in progress (" + running + ").");
+                            continue;
                         }
 
-                        // Clear the index
-                        index.clear();
+                        // Pick the tokenizer strategy
+                        TokenizerStrategy strategy;
+                        if (type.equalsIgnoreCase("simple")) {
+                            strategy = new SimpleTokenizer();
+                        } else if (type.equalsIgnoreCase("advanced")) {
+                            strategy = new AdvancedTokenizer();
+                        } else {
+                            System.out.println("Unknown strategy type: " + type);
+                            continue;
+                        }
 
-                        // Re-index the files with the new strategy
-                        for (String pathStr : indexedFiles) {
-                            File path = new File(pathStr);
-                            try {
-                                index.indexPath(path);
-                                System.out.println("Re-indexed: " + pathStr + " with new strategy.");
-                            } catch (IOException e) {
-                                System.out.println("Error re-indexing path: " + e.getMessage() + " with new strategy.");
+                        // Re-index the files with the new strategy into a new index in the background;
+                        // queries keep using the current index until the new one replaces it
+                        IndexRebuild started = new IndexRebuild(index, strategy, Runtime.getRuntime().availableProcessors(),
+                                TextFileIndexer::finishRebuild);
+                        rebuild = started;
+                        started.start();
+                        System.out.println("Re-indexing " + started.getTotal() + " files with "
+                                + strategy.getClass().getSimpleName() + " in the background."
+                                + " Use 'strategy status' to follow it or 'strategy cancel' to stop it.");
+                    } else if (command.equalsIgnoreCase("cache")) {
+                        // Check if the action argument is provided
+                        if (parts.length < 2) {
+                            System.out.println("Usage: cache stats|clear");
+                            continue;
+                        }
+
+                        if (parts[1].equalsIgnoreCase("stats")) {
+                            System.out.println("Query cache: " + cache);
+                        } else if (parts[1].equalsIgnoreCase("clear")) {
+                            cache.clear();
+                            System.out.println("Query cache cleared.");
+                        } else {
+                            System.out.println("Usage: cache stats|clear");
+                        }
+                    } else if (command.equalsIgnoreCase("stats")) {
+                        if (parts.length < 2) {
+                            System.out.println(index.getStats());
+                            System.out.println("Query cache: " + cache);
+                        } else if (parts[1].equalsIgnoreCase("reset")) {
+                            index.getStats().resetTimings();
+                            System.out.println("Statistics reset.");
+                        } else {
+                            System.out.println("Usage: stats [reset]");
+                        }
+                    } else if (command.equalsIgnoreCase("serve")) {
+                        // Check if the port argument is provided
+                        if (parts.length < 2) {
+                            System.out.println("Usage: serve <port>|stop");
+                            continue;
+                        }
+
+                        // Stop serving, closing every client connection
+                        if (parts[1].equalsIgnoreCase("stop")) {
+                            if (server == null) {
+                                System.out.println("Not serving.");
+                            } else {
+                                try {
+                                    server.close();
+                                    System.out.println("Stopped serving.");
+                                } catch (IOException e) {
+                                    System.out.println("Error stopping server: " + e.getMessage());
+                                }
+                                server = null;
                             }
+                            continue;
+                        }
+
+                        int port;
+                        try {
+                            port = Integer.parseInt(parts[1]);
+                        } catch (NumberFormatException e) {
+                            port = -1;
+                        }
+                        if (port < 0 || port > 65535) {
+                            System.out.println("Usage: serve <port>|stop");
+                            continue;
+                        }
+                        if (server != null) {
+                            System.out.println("Already serving: " + server);
+                            continue;
+                        }
+
+                        // Clients see the same index and cache as the console
+                        try {
+                            server = new IndexServer(currentIndex::get, cache, new ConsoleChangeListener(), port);
+                            System.out.println("Serving: " + server);
+                        } catch (IOException e) {
+                            System.out.println("Error starting server: " + e.getMessage());
+                        }
+                    } else if (command.equalsIgnoreCase("save")) {
+                        // Check if the file argument is provided
+                        if (parts.length < 2) {
+                            System.out.println("Usage: save <file>");
+                            continue;
+                        }
+
+                        // Write the index to the segment file
+                        String fileStr = parts[1];
+                        try {
+                            index.save(Paths.get(fileStr));
+                            System.out.println("Saved index to: " + fileStr);
+                        } catch (IOException e) {
+                            System.out.println("Error saving index: " + e.getMessage());
+                        }
+                    } else if (command.equalsIgnoreCase("load")) {
+                        // Check if the file argument is provided
+                        if (parts.length < 2) {
+                            System.out.println("Usage: load <file>");
+                            continue;
+                        }
+
+                        // A segment loaded this way may be changed, reading it into the heap first
+                        if (loadSegment(index, parts[1])) {
+                            budgetedSegment = false;
                         }
                     } else {
                         System.out.println("Unknown command: " + command);
@@ -197,17 +597,209 @@ import java.util.*;
                 if (scanner != null) {
                     scanner.close();
                 }
+                if (watcher != null) {
+                    try {
+                        watcher.close();
+                    } catch (IOException e) {
+                        System.out.println("Error stopping watcher: " + e.getMessage());
+                    }
+                }
+                if (server != null) {
+                    try {
+                        server.close();
+                    } catch (IOException e) {
+                        System.out.println("Error stopping server: " + e.getMessage());
+                    }
+                }
                 System.out.println("Goodbye.");
             }
         }
 
-        private static void indexPath(File path) {
-            if (path.isDirectory()) {
-                for (File file : Objects.requireNonNull(path.listFiles())) {
-                    indexPath(file);
+        /**
+         * Swaps in the index built by a completed strategy rebuild. Runs on the rebuild thread.
+         */
+        private static void finishRebuild(IndexRebuild finished) {
+            if (finished.getState() == IndexRebuild.State.COMPLETED) {
+                currentIndex.set(finished.getTarget());
+                // Entries for the old index can no longer be served; drop them so it can be collected
+                cache.clear();
+                registerStats(finished.getTarget());
+
+                // The watcher may have applied changes to the old index while the rebuild ran
+                IndexWatcher activeWatcher = watcher;
+                if (activeWatcher != null) {
+                    activeWatcher.setIndex(finished.getTarget());
                 }
+                System.out.println("Tokenizer strategy set to " + finished.getStrategy().getClass().getSimpleName()
+                        + ", positions " + (finished.getTarget().isPositional() ? "on" : "off")
+                        + " (" + finished.getCompleted() + " files re-indexed, " + finished.getFailed() + " failed).");
             } else {
-                indexedFiles.add(path.getPath());
+                System.out.println("Strategy rebuild cancelled; keeping the current index.");
+            }
+            rebuild = null;
+        }
+
+        /**
+         * Publishes the statistics of the index commands run against as the "current" IndexStats MBean,
+         * so JMX clients such as jconsole follow the index across rebuilds.
+         */
+        private static void registerStats(Index index) {
+            try {
+                index.getStats().register("current");
+            } catch (JMException e) {
+                System.out.println("Error registering statistics MBean: " + e.getMessage());
+            }
+        }
+
+        private static void printIndexUsage() {
+            System.out.println("Usage: index [-t <threads>] [-r <readers>] [-q <queue>] <path>");
+            System.out.println("         Index through a pipeline of tokenizing and reading threads joined by queues of");
+            System.out.println("         that many files; any of the options selects the pipeline");
+            System.out.println("       index -m <megabytes> -o <segment file> <path>");
+            System.out.println("         Build a segment file buffering at most that many megabytes of postings, spilling");
+            System.out.println("         the rest to disk, and load it in place of the empty index");
+        }
+
+        /**
+         * Replaces the contents of the index with a segment file, reporting the outcome.
+         *
+         * @return true if the segment was loaded, false if the index was left as it was
+         */
+        private static boolean loadSegment(Index index, String fileStr) {
+            try {
+                index.load(Paths.get(fileStr));
+                System.out.println("Loaded " + index.getDocumentCount() + " files from: " + fileStr);
+                return true;
+            } catch (IOException e) {
+                System.out.println("Error loading index: " + e.getMessage());
+                return false;
+            }
+        }
+
+        /**
+         * Builds an index from the command-line options, evaluates the queries named there against it
+         * and streams the results to the output, without prompts or banners. Progress and errors go to stderr.
+         *
+         * @return true if every query was evaluated
+         */
+        private static boolean runBatch(Options options) {
+            TokenizerContext tokenizerContext = new TokenizerContext();
+            tokenizerContext.setStrategy(new SimpleTokenizer());
+            Index index = new Index(tokenizerContext);
+            BatchQueries batch = new BatchQueries(options.format, options.threads, options.rank);
+            try {
+                if (options.load != null) {
+                    index.load(Paths.get(options.load));
+                }
+                for (String pathStr : options.paths) {
+                    index.indexPath(new File(pathStr), options.threads);
+                }
+            } catch (IOException e) {
+                System.err.println("Error building index: " + e.getMessage());
+                return false;
+            }
+
+            // Large buffers, so results reach the output in few writes
+            try (BufferedReader queries = options.queries.equals("-")
+                         ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                         : Files.newBufferedReader(Paths.get(options.queries), StandardCharsets.UTF_8);
+                 Writer out = options.output == null
+                         ? new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 1 << 16)
+                         : Files.newBufferedWriter(Paths.get(options.output), StandardCharsets.UTF_8)) {
+                long start = System.nanoTime();
+                long count = batch.run(index.snapshot(), queries, out);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.err.printf("Evaluated %d queries against %d files in %.2f s (%.0f queries/s)%n",
+                        count, index.getDocumentCount(), seconds, count / seconds);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error running queries: " + e.getMessage());
+                return false;
+            }
+        }
+
+        private static void printCommandLineUsage() {
+            System.err.println("Usage: TextFileIndexer [--load <file>] [--index <path>]... [--threads <n>]");
+            System.err.println("                       [--queries <file>|- [--format tsv|json] [--rank <k>] [--output <file>]]");
+            System.err.println("  --load <file>      Start from a saved segment file");
+            System.err.println("  --index <path>     Index a file or directory first; may be repeated");
+            System.err.println("  --threads <n>      Threads for indexing and for evaluating queries (default 1)");
+            System.err.println("  --queries <file>   Evaluate the queries in the file, one per line, or on stdin for -, and exit");
+            System.err.println("  --format tsv|json  Write one tab-separated or JSON result line per query (default tsv)");
+            System.err.println("  --rank <k>         Rank each line as free text and return the best k files instead");
+            System.err.println("  --output <file>    Write the results to the file instead of stdout");
+        }
+
+        /**
+         * Command-line options.
+         */
+        private static class Options {
+            String load;
+            final List<String> paths = new ArrayList<>();
+            int threads = 1;
+            String queries;
+            BatchQueries.Format format = BatchQueries.Format.TSV;
+            int rank;
+            String output;
+
+            /**
+             * Parses the command-line arguments.
+             *
+             * @return the options, or null if the arguments are not valid
+             */
+            static Options parse(String[] args) {
+                Options options = new Options();
+                try {
+                    for (int i = 0; i < args.length; i++) {
+                        String value = i + 1 < args.length ? args[i + 1] : null;
+                        if (value == null) {
+                            return null;
+                        }
+                        switch (args[i]) {
+                            case "--load":
+                                options.load = value;
+                                break;
+                            case "--index":
+                                options.paths.add(value);
+                                break;
+                            case "--threads":
+                                options.threads = Integer.parseInt(value);
+                                break;
+                            case "--queries":
+                                options.queries = value;
+                                break;
+                            case "--format":
+                                options.format = BatchQueries.Format.valueOf(value.toUpperCase());
+                                break;
+                            case "--rank":
+                                options.rank = Integer.parseInt(value);
+                                break;
+                            case "--output":
+                                options.output = value;
+                                break;
+                            default:
+                                return null;
+                        }
+                        i++;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Not a number, or not a format
+                    return null;
+                }
+                return options.threads < 1 || options.rank < 0 ? null : options;
+            }
+        }
+
+        /**
+         * Refuses the changes server clients make while a strategy rebuild runs, as the console does.
+         */
+        private static class ConsoleChangeListener implements IndexServer.ChangeListener {
+            @Override
+            public String refuseChange() {
+                if (rebuild != null) {
+                    return "A strategy rebuild is in progress; wait for it to finish or cancel it.";
+                }
+                return budgetedSegment ? BUDGETED_SEGMENT_REFUSAL : null;
             }
         }
     }
@@ -4,15 +4,15 @@ package main.java.FileIndexer;
  * Represents a token with a type and value.
  */
 public class Token {
-    private final String tokenType;
+    private final TokenType tokenType;
     private final String value;
 
-    public Token(String tokenType, String value) {
+    public Token(TokenType tokenType, String value) {
         this.tokenType = tokenType;
         this.value = value;
     }
 
-    public String getTokenType() {
+    public TokenType getTokenType() {
         return tokenType;
     }
 
@@ -0,0 +1,18 @@
+package main.java.FileIndexer;
+
+/**
+ * Callback that receives tokens one at a time from a streaming tokenizer.
+ */
+@FunctionalInterface
+public interface TokenConsumer {
+    /**
+     * Accepts the next token produced by the tokenizer. The characters are only valid for the
+     * duration of the call, as the tokenizer reuses the buffer for the following tokens.
+     *
+     * @param tokenType is the type of the token
+     * @param buffer is the buffer holding the token text
+     * @param offset is the index of the first character of the token in the buffer
+     * @param length is the number of characters in the token
+     */
+    void accept(TokenType tokenType, char[] buffer, int offset, int length);
+}
@@ -0,0 +1,10 @@
+package main.java.FileIndexer;
+
+/**
+ * The kinds of tokens produced by the tokenizer strategies.
+ */
+public enum TokenType {
+    WORD,
+    NUMBER,
+    PUNCTUATION
+}
@@ -1,20 +1,38 @@
 package main.java.FileIndexer;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 
 /**
  * Context class that uses a TokenizerStrategy.
  */
 public class TokenizerContext {
-    private TokenizerStrategy strategy;
+    private volatile TokenizerStrategy strategy;
+    // Incremented on every strategy change, so cached results of analyzed queries can be invalidated
+    private volatile long generation;
 
     /**
      * Sets the tokenizer strategy to use.
      *
      * @param strategy is the tokenizer strategy
      */
-    public void setStrategy(TokenizerStrategy strategy) {
+    public synchronized void setStrategy(TokenizerStrategy strategy) {
         this.strategy = strategy;
+        generation++;
+    }
+
+    /**
+     * Returns the number of times the strategy has been set.
+     *
+     * @return the strategy generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public TokenizerStrategy getStrategy() {
+        return strategy;
     }
 
     /**
@@ -26,4 +44,28 @@ public class TokenizerContext {
     public List<Token> executeStrategy(String text) {
         return strategy.tokenize(text);
     }
+
+    /**
+     * Tokenizes the text read from the given reader using the current strategy,
+     * passing each token to the consumer as it is produced.
+     *
+     * @param reader the source of the text to tokenize
+     * @param consumer the callback receiving each token
+     * @throws IOException if an I/O error occurs reading from the reader
+     */
+    public void executeStrategy(Reader reader, TokenConsumer consumer) throws IOException {
+        strategy.tokenize(reader, consumer);
+    }
+
+    /**
+     * Tokenizes the text read from the given reader using the current strategy,
+     * passing each token to the consumer in lowercase as it is produced.
+     *
+     * @param reader the source of the text to tokenize
+     * @param consumer the callback receiving each lowercased token
+     * @throws IOException if an I/O error occurs reading from the reader
+     */
+    public void executeStrategyLowercase(Reader reader, TokenConsumer consumer) throws IOException {
+        strategy.tokenize(reader, consumer, true);
+    }
 }
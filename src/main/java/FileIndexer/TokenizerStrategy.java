@@ -1,11 +1,18 @@
 package main.java.FileIndexer;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 
 /**
  * Strategy interface for tokenizing text into a list of tokens with types.
  */
 public interface TokenizerStrategy {
+    /**
+     * Size of the chunks read from a Reader by the streaming tokenizers.
+     */
+    int CHUNK_SIZE = 8192;
+
     /**
      * Tokenizes the given text into a list of tokens with types.
      *
@@ -13,4 +20,40 @@ public interface TokenizerStrategy {
      * @return a list of Token objects with type and value
      */
     List<Token> tokenize(String text);
+
+    /**
+     * Tokenizes the text read from the given reader, passing each token to the consumer as soon
+     * as it is complete. Produces the same tokens as {@link #tokenize(String)} on the full text.
+     *
+     * @param reader is the source of the text to tokenize
+     * @param consumer is the callback receiving each token
+     * @throws IOException if an I/O error occurs reading from the reader
+     */
+    default void tokenize(Reader reader, TokenConsumer consumer) throws IOException {
+        tokenize(reader, consumer, false);
+    }
+
+    /**
+     * Tokenizes the text read from the given reader, optionally lowercasing each token as it is
+     * scanned. The default implementation reads the whole text first; implementations should
+     * override it to work in fixed-size chunks.
+     *
+     * @param reader is the source of the text to tokenize
+     * @param consumer is the callback receiving each token
+     * @param lowercase is whether token text is passed to the consumer in lowercase
+     * @throws IOException if an I/O error occurs reading from the reader
+     */
+    default void tokenize(Reader reader, TokenConsumer consumer, boolean lowercase) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] chunk = new char[CHUNK_SIZE];
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            text.append(chunk, 0, read);
+        }
+
+        for (Token token : tokenize(text.toString())) {
+            char[] value = (lowercase ? token.getValue().toLowerCase() : token.getValue()).toCharArray();
+            consumer.accept(token.getTokenType(), value, 0, value.length);
+        }
+    }
 }
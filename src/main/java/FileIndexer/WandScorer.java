@@ -0,0 +1,191 @@
+package main.java.FileIndexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the k documents with the highest BM25 scores for a set of terms, any of which a document
+ * may contain. Candidates are kept in a bounded min-heap, and the WAND algorithm skips documents
+ * that cannot enter it: each term has an upper bound on the score it can contribute, and
+ * documents whose terms' bounds together do not beat the k-th best score so far are jumped over
+ * without being scored.
+ */
+class WandScorer {
+    static final double K1 = 1.2;
+    static final double B = 0.75;
+
+    // Worst of the current top k first: lowest score, then highest document ID
+    private static final Comparator<Hit> WORST_FIRST =
+            Comparator.<Hit>comparingDouble(hit -> hit.score).thenComparing(hit -> -hit.doc);
+
+    private final DocumentTable documents;
+    private final double averageLength;
+    private final TermScorer[] terms;
+
+    /**
+     * Prepares a search over the posting lists of the query terms.
+     *
+     * @param documents the document table, for the document count and lengths
+     * @param postings  the posting lists of the distinct query terms that occur in the index
+     */
+    WandScorer(DocumentTable documents, List<PostingList> postings) {
+        this.documents = documents;
+        this.averageLength = documents.getAverageLength();
+        this.terms = new TermScorer[postings.size()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = new TermScorer(postings.get(i));
+        }
+    }
+
+    /**
+     * Scores the documents and returns the best k.
+     *
+     * @param k the number of documents to return
+     * @return the best documents, highest score first; ties go to the lower document ID
+     */
+    List<ScoredDocument> topK(int k) {
+        PriorityQueue<Hit> heap = new PriorityQueue<>(k, WORST_FIRST);
+        TermScorer[] ordered = terms.clone();
+        for (TermScorer term : ordered) {
+            term.nextDoc();
+        }
+
+        double threshold = 0;
+        while (true) {
+            sortByDoc(ordered);
+
+            // The pivot is the first term at which the bounds so far could beat the threshold
+            double bound = 0;
+            int pivot = -1;
+            for (int i = 0; i < ordered.length && ordered[i].doc != DocIdIterator.NO_MORE_DOCS; i++) {
+                bound += ordered[i].maxScore;
+                if (bound > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                break;
+            }
+
+            int pivotDoc = ordered[pivot].doc;
+            if (ordered[0].doc == pivotDoc) {
+                // Every term before the pivot is on the pivot document, so score it fully
+                double score = 0;
+                for (TermScorer term : terms) {
+                    if (term.doc == pivotDoc) {
+                        score += term.score();
+                        term.nextDoc();
+                    }
+                }
+                if (heap.size() < k) {
+                    heap.add(new Hit(pivotDoc, score));
+                } else if (score > heap.peek().score) {
+                    // Later documents need a strictly higher score, as ties go to the lower ID
+                    heap.poll();
+                    heap.add(new Hit(pivotDoc, score));
+                }
+                if (heap.size() == k) {
+                    threshold = heap.peek().score;
+                }
+            } else {
+                // No document before the pivot document can beat the threshold
+                for (int i = 0; i < pivot; i++) {
+                    if (ordered[i].doc < pivotDoc) {
+                        ordered[i].advance(pivotDoc);
+                    }
+                }
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(heap);
+        hits.sort(Collections.reverseOrder(WORST_FIRST));
+        List<ScoredDocument> best = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            best.add(new ScoredDocument(documents.getPath(hit.doc), hit.score));
+        }
+        return best;
+    }
+
+    private static final class Hit {
+        final int doc;
+        final double score;
+
+        Hit(int doc, double score) {
+            this.doc = doc;
+            this.score = score;
+        }
+    }
+
+    private static void sortByDoc(TermScorer[] ordered) {
+        // Few terms, mostly still in order: insertion sort
+        for (int i = 1; i < ordered.length; i++) {
+            TermScorer term = ordered[i];
+            int j = i - 1;
+            while (j >= 0 && ordered[j].doc > term.doc) {
+                ordered[j + 1] = ordered[j];
+                j--;
+            }
+            ordered[j + 1] = term;
+        }
+    }
+
+    /**
+     * Walks one term's posting list, scoring the document it is on.
+     */
+    private final class TermScorer {
+        private final PostingList postings;
+        private final double idf;
+        private final double maxScore;
+        private int position = -1;
+        private int doc = -1;
+
+        TermScorer(PostingList postings) {
+            this.postings = postings;
+            int count = documents.size();
+            this.idf = Math.log(1 + (count - postings.size() + 0.5) / (postings.size() + 0.5));
+
+            // The score grows with the frequency and is largest for the shortest possible document
+            int maxFreq = postings.getMaxFreq();
+            this.maxScore = idf * maxFreq * (K1 + 1) / (maxFreq + K1 * (1 - B));
+        }
+
+        double score() {
+            int freq = postings.getFreq(position);
+            // Without recorded lengths every document counts as average
+            double relativeLength = averageLength > 0 ? documents.getLength(doc) / averageLength : 1;
+            return idf * freq * (K1 + 1) / (freq + K1 * (1 - B + B * relativeLength));
+        }
+
+        void nextDoc() {
+            position++;
+            doc = position < postings.size() ? postings.get(position) : DocIdIterator.NO_MORE_DOCS;
+        }
+
+        void advance(int target) {
+            // Gallop to a window holding the target, then binary search it
+            int low = position + 1;
+            int step = 1;
+            int high = low;
+            while (high < postings.size() && postings.get(high) < target) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high, postings.size());
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (postings.get(middle) < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            position = low;
+            doc = position < postings.size() ? postings.get(position) : DocIdIterator.NO_MORE_DOCS;
+        }
+    }
+}
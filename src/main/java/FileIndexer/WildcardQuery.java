@@ -0,0 +1,90 @@
+package main.java.FileIndexer;
+
+import java.util.List;
+
+/**
+ * Matches the documents containing any term that matches a pattern, where {@code *} stands for
+ * any run of characters and {@code ?} for exactly one. Only the range of the dictionary sharing
+ * the pattern's literal prefix is scanned, so patterns that start with a wildcard visit every term.
+ */
+public class WildcardQuery extends MultiTermQuery {
+    private final String pattern;
+    private final String literalPrefix;
+
+    /**
+     * Constructs a query for the specified pattern.
+     *
+     * @param pattern the pattern to match; it is lowercased like the indexed tokens
+     */
+    public WildcardQuery(String pattern) {
+        this.pattern = pattern.toLowerCase();
+
+        // Terms can only match if they start with the characters before the first wildcard
+        int end = 0;
+        while (end < this.pattern.length() && this.pattern.charAt(end) != '*' && this.pattern.charAt(end) != '?') {
+            end++;
+        }
+        this.literalPrefix = this.pattern.substring(0, end);
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    @Override
+    void collectTerms(TermCursor terms, List<String> matches) {
+        for (String term = terms.seek(literalPrefix); term != null && term.startsWith(literalPrefix); term = terms.next()) {
+            if (matches(pattern, term)) {
+                matches.add(term);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a term matches a wildcard pattern, backtracking to the last {@code *} on a mismatch.
+     *
+     * @param pattern the pattern
+     * @param term    the term
+     * @return true if the whole term matches the whole pattern
+     */
+    static boolean matches(String pattern, String term) {
+        int p = 0;
+        int t = 0;
+        int star = -1;
+        int starMatch = 0;
+        while (t < term.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == term.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                starMatch = t;
+            } else if (star >= 0) {
+                // Let the last star swallow one more character and retry
+                p = star + 1;
+                t = ++starMatch;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof WildcardQuery && pattern.equals(((WildcardQuery) other).pattern);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * pattern.hashCode() + 6;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
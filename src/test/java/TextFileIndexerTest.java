@@ -1,9 +1,36 @@
 package test;
 
 import main.java.FileIndexer.*;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 public class TextFileIndexerTest {
 
@@ -144,6 +171,908 @@ public class TextFileIndexerTest {
         printTestResult("testQueryAfterErase", passed);
     }
 
+    public void testParallelIndexing() throws IOException {
+        System.out.println("Running testParallelIndexing...");
+        File path = new File("example_dir");
+        index.indexPath(path);
+        Index parallelIndex = new Index(tokenizerContext);
+        parallelIndex.indexPath(path, 4);
+        // Document IDs depend on completion order, so compare the translated paths per term
+        boolean passed = parallelIndex.getIndex().keySet().equals(index.getIndex().keySet());
+        for (String term : index.getIndex().keySet()) {
+            passed &= parallelIndex.query(term).equals(index.query(term));
+        }
+        printTestResult("testParallelIndexing", passed);
+    }
+
+    public void testErasedFileLeavesNoPostings() throws IOException {
+        System.out.println("Running testErasedFileLeavesNoPostings...");
+        File file1 = new File("example_dir/file1.txt");
+        File file2 = new File("example_dir/file2.txt");
+        index.indexPath(file1);
+        index.indexPath(file2);
+        index.indexPath(file2);
+        index.eraseFile(file2.getAbsolutePath());
+        boolean passed = index.getDocuments().size() == 1 && index.query("like").isEmpty()
+                && index.query("hello").size() == 1 && !index.getIndex().containsKey("like");
+        printTestResult("testErasedFileLeavesNoPostings", passed);
+    }
+
+    public void testStreamingTokenizersMatchStringTokenizers() throws IOException {
+        System.out.println("Running testStreamingTokenizersMatchStringTokenizers...");
+        String text = sampleText();
+
+        boolean passed = true;
+        for (TokenizerStrategy strategy : new TokenizerStrategy[]{new SimpleTokenizer(), new AdvancedTokenizer()}) {
+            List<String> expected = new ArrayList<>();
+            for (Token token : strategy.tokenize(text)) {
+                expected.add(token.toString());
+            }
+
+            List<String> actual = new ArrayList<>();
+            // Hand out a few characters at a time to exercise every boundary position
+            Reader reader = new StringReader(text) {
+                @Override
+                public int read(char[] buffer, int offset, int length) throws IOException {
+                    return super.read(buffer, offset, Math.min(length, 7));
+                }
+            };
+            strategy.tokenize(reader, (tokenType, buffer, offset, length) ->
+                    actual.add(new Token(tokenType, new String(buffer, offset, length)).toString()));
+            passed &= expected.equals(actual);
+        }
+        printTestResult("testStreamingTokenizersMatchStringTokenizers", passed);
+    }
+
+    public void testScannersMatchRegexTokenizers() throws IOException {
+        System.out.println("Running testScannersMatchRegexTokenizers...");
+        String text = sampleText();
+
+        // The tokens produced by the original regex-based implementations
+        List<String> simpleExpected = new ArrayList<>();
+        for (String word : text.split("\\W+")) {
+            if (!word.isEmpty()) {
+                simpleExpected.add("[WORD: " + word + "]");
+            }
+        }
+        List<String> advancedExpected = new ArrayList<>();
+        Matcher matcher = Pattern.compile("\\d+|\\w+|\\p{Punct}").matcher(text);
+        while (matcher.find()) {
+            String value = matcher.group();
+            String type = value.matches("\\d+") ? "NUMBER" : value.matches("\\w+") ? "WORD" : "PUNCTUATION";
+            advancedExpected.add("[" + type + ": " + value + "]");
+        }
+
+        List<String> simpleActual = new ArrayList<>();
+        for (Token token : new SimpleTokenizer().tokenize(text)) {
+            simpleActual.add(token.toString());
+        }
+        List<String> advancedActual = new ArrayList<>();
+        for (Token token : new AdvancedTokenizer().tokenize(text)) {
+            advancedActual.add(token.toString());
+        }
+
+        // Lowercasing while scanning must match lowercasing afterwards
+        List<String> lowercaseActual = new ArrayList<>();
+        new AdvancedTokenizer().tokenize(new StringReader(text), (tokenType, buffer, offset, length) ->
+                lowercaseActual.add(new String(buffer, offset, length)), true);
+        List<String> lowercaseExpected = new ArrayList<>();
+        for (Token token : new AdvancedTokenizer().tokenize(text)) {
+            lowercaseExpected.add(token.getValue().toLowerCase());
+        }
+
+        boolean passed = simpleExpected.equals(simpleActual) && advancedExpected.equals(advancedActual)
+                && lowercaseExpected.equals(lowercaseActual);
+        printTestResult("testScannersMatchRegexTokenizers", passed);
+    }
+
+    public void testSaveAndLoadSegment() throws IOException {
+        System.out.println("Running testSaveAndLoadSegment...");
+        tokenizerContext.setStrategy(new AdvancedTokenizer());
+        index.indexPath(new File("example_dir"));
+        index.eraseFile(new File("example_dir/file6.txt").getAbsolutePath());
+        Path segmentFile = Files.createTempFile("segment", ".idx");
+
+        TokenizerContext loadedContext = new TokenizerContext();
+        loadedContext.setStrategy(new SimpleTokenizer());
+        Index loaded = new Index(loadedContext);
+        try {
+            index.save(segmentFile);
+            loaded.load(segmentFile);
+
+            // Queries are answered from the mapped segment before anything is pulled into the heap
+            boolean passed = loadedContext.getStrategy() instanceof AdvancedTokenizer;
+            for (String term : index.getIndex().keySet()) {
+                passed &= loaded.query(term).equals(index.query(term));
+            }
+            passed &= loaded.query("dog").isEmpty() && !loaded.query("&").isEmpty();
+
+            // Modifying the loaded index reads the segment in and keeps every other term intact
+            loaded.indexFile(new File("example_dir/file6.txt"));
+            passed &= loaded.query("dog").size() == 1 && loaded.query("hello").equals(index.query("hello"));
+
+            // A segment naming any class but a known strategy is refused, leaving the index as it was
+            try (SegmentWriter writer = new SegmentWriter(segmentFile, "java.lang.Thread", 0)) {
+                writer.finish();
+            }
+            try {
+                loaded.load(segmentFile);
+                passed = false;
+            } catch (IOException e) {
+                passed &= e.getMessage().contains("java.lang.Thread") && loaded.query("dog").size() == 1;
+            }
+            printTestResult("testSaveAndLoadSegment", passed);
+        } finally {
+            Files.deleteIfExists(segmentFile);
+        }
+    }
+
+    public void testRefreshPath() throws IOException {
+        System.out.println("Running testRefreshPath...");
+        Path directory = Files.createTempDirectory("refresh");
+        Path kept = Files.write(directory.resolve("kept.txt"), "alpha beta".getBytes());
+        Path touched = Files.write(directory.resolve("touched.txt"), "gamma".getBytes());
+        Path changed = Files.write(directory.resolve("changed.txt"), "delta".getBytes());
+        Path deleted = Files.write(directory.resolve("deleted.txt"), "epsilon".getBytes());
+        try {
+            index.indexPath(directory.toFile());
+
+            Files.setLastModifiedTime(touched, FileTime.fromMillis(1000));
+            Files.write(changed, "zeta".getBytes());
+            Files.setLastModifiedTime(changed, FileTime.fromMillis(2000));
+            Files.delete(deleted);
+            Path added = Files.write(directory.resolve("added.txt"), "eta".getBytes());
+
+            RefreshResult result = index.refreshPath(directory.toFile());
+            boolean passed = result.getAdded().size() == 1 && result.getUpdated().size() == 1
+                    && result.getRemoved().size() == 1 && result.getUnchanged() == 2
+                    && index.query("delta").isEmpty() && index.query("zeta").size() == 1
+                    && index.query("epsilon").isEmpty() && index.query("eta").size() == 1
+                    && index.query("alpha").contains(kept.toAbsolutePath().toString());
+
+            // A second refresh finds nothing to do
+            passed &= index.refreshPath(directory.toFile()).getUnchanged() == 4;
+            Files.delete(added);
+            printTestResult("testRefreshPath", passed);
+        } finally {
+            Files.deleteIfExists(kept);
+            Files.deleteIfExists(touched);
+            Files.deleteIfExists(changed);
+            Files.delete(directory);
+        }
+    }
+
+    public void testWatchAppliesChanges() throws IOException, InterruptedException {
+        System.out.println("Running testWatchAppliesChanges...");
+        Path directory = Files.createTempDirectory("watch");
+        Path existing = Files.write(directory.resolve("existing.txt"), "apple".getBytes());
+        Path created = directory.resolve("created.txt");
+
+        try (IndexWatcher watcher = new IndexWatcher(index, result -> { }, e -> { })) {
+            boolean passed = watcher.watch(directory.toFile()).getAdded().size() == 1;
+
+            // A burst of writes to one file is applied as a single coalesced change
+            for (int i = 0; i < 5; i++) {
+                Files.write(created, ("banana" + i).getBytes());
+            }
+            Files.delete(existing);
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (System.currentTimeMillis() < deadline
+                    && (index.query("banana4").isEmpty() || !index.query("apple").isEmpty())) {
+                Thread.sleep(100);
+            }
+            passed &= index.query("banana4").size() == 1 && index.query("banana0").isEmpty()
+                    && index.query("apple").isEmpty();
+            printTestResult("testWatchAppliesChanges", passed);
+        } finally {
+            Files.deleteIfExists(created);
+            Files.deleteIfExists(existing);
+            Files.delete(directory);
+        }
+    }
+
+    public void testBackgroundStrategyRebuild() throws IOException, InterruptedException {
+        System.out.println("Running testBackgroundStrategyRebuild...");
+        index.indexPath(new File("example_dir"));
+
+        CountDownLatch finished = new CountDownLatch(1);
+        IndexRebuild rebuild = new IndexRebuild(index, new AdvancedTokenizer(), 2, r -> finished.countDown());
+        rebuild.start();
+        finished.await(10, TimeUnit.SECONDS);
+
+        // The source index is left as it was; the new one sees punctuation tokens
+        boolean passed = rebuild.getState() == IndexRebuild.State.COMPLETED
+                && rebuild.getCompleted() == rebuild.getTotal()
+                && index.query("&").isEmpty() && rebuild.getTarget().query("&").size() == 2
+                && rebuild.getTarget().query("hello").equals(index.query("hello"));
+        printTestResult("testBackgroundStrategyRebuild", passed);
+    }
+
+    public void testBooleanQueries() throws IOException {
+        System.out.println("Running testBooleanQueries...");
+        tokenizerContext.setStrategy(new AdvancedTokenizer());
+        index.indexPath(new File("example_dir"));
+
+        Set<String> hello = index.query("hello");
+        Set<String> the = index.query("the");
+        Set<String> dog = index.query("dog");
+        Set<String> all = new HashSet<>(index.getIndexedPaths());
+
+        Set<String> and = new HashSet<>(hello);
+        and.retainAll(index.query("like"));
+        Set<String> or = new HashSet<>(the);
+        or.addAll(hello);
+        Set<String> orNot = new HashSet<>(or);
+        orNot.removeAll(dog);
+        Set<String> not = new HashSet<>(all);
+        not.removeAll(hello);
+
+        boolean passed = new HashSet<>(index.search("hello AND like")).equals(and)
+                && new HashSet<>(index.search("Hello like")).equals(and)
+                && new HashSet<>(index.search("the OR hello")).equals(or)
+                && new HashSet<>(index.search("(the OR hello) NOT dog")).equals(orNot)
+                && new HashSet<>(index.search("NOT hello")).equals(not)
+                && index.search("hello AND missing").isEmpty()
+                && index.search("&").equals(index.query("&"));
+
+        // Leapfrogging with galloping advance over long lists matches a plain set intersection
+        PostingList multiples = new PostingList("a");
+        PostingList squares = new PostingList("b");
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            multiples.add(i * 3);
+            if (i < 300) {
+                squares.add(i * i);
+                if ((i * i) % 3 == 0) {
+                    expected.add(i * i);
+                }
+            }
+        }
+        Set<Integer> actual = new HashSet<>();
+        DocIdIterator rare = squares.iterator();
+        DocIdIterator common = multiples.iterator();
+        for (int doc = rare.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS; doc = rare.nextDoc()) {
+            int commonDoc = common.docId() < doc ? common.advance(doc) : common.docId();
+            if (commonDoc == doc) {
+                actual.add(doc);
+            }
+        }
+        passed &= expected.equals(actual);
+        printTestResult("testBooleanQueries", passed);
+    }
+
+    public void testPhraseQueries() throws IOException {
+        System.out.println("Running testPhraseQueries...");
+        index = new Index(tokenizerContext, true);
+        index.indexPath(new File("example_dir"));
+        String file6 = new File("example_dir/file6.txt").getAbsolutePath();
+
+        boolean passed = index.search(new PhraseQuery("quick brown fox")).equals(Set.of(file6))
+                && index.search(new PhraseQuery("The Dog")).equals(Set.of(file6))
+                && index.search(new PhraseQuery("brown quick")).isEmpty()
+                && index.search(new PhraseQuery("quick fox")).isEmpty()
+                && index.search("\"lazy dog\" AND mind").equals(Set.of(file6))
+                && index.search("hello NOT \"lazy dog\"").equals(index.query("hello"));
+
+        // Positions survive a save and load, and keep working once the segment is read into the heap
+        Path segmentFile = Files.createTempFile("segment", ".idx");
+        try {
+            index.save(segmentFile);
+            Index loaded = new Index(new TokenizerContext());
+            loaded.load(segmentFile);
+            passed &= loaded.isPositional()
+                    && loaded.search(new PhraseQuery("over the lazy dog")).equals(Set.of(file6));
+            loaded.eraseFile(new File("example_dir/file1.txt").getAbsolutePath());
+            passed &= loaded.search(new PhraseQuery("did not mind")).equals(Set.of(file6));
+        } finally {
+            Files.deleteIfExists(segmentFile);
+        }
+
+        // A non-positional index refuses phrase queries rather than guessing
+        reset();
+        index.indexPath(new File("example_dir"));
+        try {
+            index.search(new PhraseQuery("lazy dog"));
+            passed = false;
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        printTestResult("testPhraseQueries", passed);
+    }
+
+    public void testPrefixAndWildcardQueries() throws IOException {
+        System.out.println("Running testPrefixAndWildcardQueries...");
+        // Enough distinct terms to fill and split many dictionary blocks
+        Path file = Files.createTempFile("terms", ".txt");
+        Path segmentFile = Files.createTempFile("segment", ".idx");
+        try {
+            Files.writeString(file, sampleText());
+            index.indexFile(file.toFile());
+            index.indexPath(new File("example_dir"));
+            index.eraseFile(new File("example_dir/file2.txt").getAbsolutePath());
+
+            String[] patterns = {"hello_world1*", "hello*", "h?llo*", "*9", "hello_world?", "t*e", "x", "q*k", "zzz*"};
+            boolean passed = matchesEveryPattern(index, patterns);
+
+            // The same answers come from a loaded segment and from the dictionary rebuilt out of it
+            index.save(segmentFile);
+            Index loaded = new Index(new TokenizerContext());
+            loaded.load(segmentFile);
+            passed &= matchesEveryPattern(loaded, patterns);
+            loaded.eraseFile(new File("example_dir/file6.txt").getAbsolutePath());
+            loaded.indexFile(new File("example_dir/file6.txt"));
+            passed &= matchesEveryPattern(loaded, patterns)
+                    && index.search("hello_world12*").size() == 1
+                    && index.search("quick AND q*k").size() == 1;
+            printTestResult("testPrefixAndWildcardQueries", passed);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(segmentFile);
+        }
+    }
+
+    private static boolean matchesEveryPattern(Index index, String[] patterns) {
+        // Search first, so a loaded segment answers before getIndex() reads it into the heap
+        List<Set<String>> actual = new ArrayList<>();
+        for (String pattern : patterns) {
+            actual.add(new HashSet<>(index.search(pattern)));
+        }
+
+        for (int i = 0; i < patterns.length; i++) {
+            // Compare against a plain scan of every term
+            Pattern regex = Pattern.compile(patterns[i].replace("?", ".").replace("*", ".*"));
+            Set<String> expected = new HashSet<>();
+            for (String term : index.getIndex().keySet()) {
+                if (regex.matcher(term).matches()) {
+                    expected.addAll(index.query(term));
+                }
+            }
+            if (!actual.get(i).equals(expected)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void testFuzzyQueries() throws IOException {
+        System.out.println("Running testFuzzyQueries...");
+        Path file = Files.createTempFile("terms", ".txt");
+        try {
+            Files.writeString(file, sampleText());
+            index.indexFile(file.toFile());
+            index.indexPath(new File("example_dir"));
+
+            // Compare the automaton walk with the edit distance to every term
+            boolean passed = true;
+            String[] words = {"helo", "hello_world12", "hello_wrld1234", "qiuck", "dgo", "42abd", "x", "zzzzzz"};
+            for (String word : words) {
+                for (int maxEdits = 0; maxEdits <= FuzzyQuery.MAX_EDITS; maxEdits++) {
+                    Set<String> expected = new HashSet<>();
+                    for (String term : index.getIndex().keySet()) {
+                        if (editDistance(word, term) <= maxEdits) {
+                            expected.addAll(index.query(term));
+                        }
+                    }
+                    passed &= new HashSet<>(index.search(new FuzzyQuery(word, maxEdits))).equals(expected);
+                }
+            }
+            passed &= index.search(new FuzzyQuery("Qiuck", 2)).equals(index.query("quick"));
+            printTestResult("testFuzzyQueries", passed);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public void testRankedSearch() throws IOException {
+        System.out.println("Running testRankedSearch...");
+        index.indexPath(new File("example_dir"));
+        String file2 = new File("example_dir/file2.txt").getAbsolutePath();
+        String file6 = new File("example_dir/file6.txt").getAbsolutePath();
+
+        // file2 repeats "hello" three times and file6 repeats "the" and "dog"
+        List<ScoredDocument> hello = index.rank("hello", 10);
+        List<ScoredDocument> dog = index.rank("the dog", 1);
+        boolean passed = hello.size() == 2 && hello.get(0).getPath().equals(file2)
+                && hello.get(0).getScore() > hello.get(1).getScore()
+                && dog.size() == 1 && dog.get(0).getPath().equals(file6)
+                && index.rank("missing words", 5).isEmpty();
+
+        // Skipping documents must not change the top k: it has to be a prefix of the full ranking
+        Path corpus = Files.createTempDirectory("corpus");
+        try {
+            String[] words = {"alpha", "beta", "gamma", "delta", "omega"};
+            for (int i = 0; i < 200; i++) {
+                StringBuilder text = new StringBuilder();
+                for (int j = 0; j < 3 + i % 17; j++) {
+                    text.append(words[(i * 7 + j * j) % words.length]).append(' ');
+                }
+                Files.writeString(corpus.resolve("doc" + i + ".txt"), text);
+            }
+            index.indexPath(corpus.toFile());
+            List<ScoredDocument> all = index.rank("alpha gamma omega", 1000);
+            for (int k : new int[] {1, 3, 10, 50}) {
+                List<ScoredDocument> top = index.rank("alpha gamma omega", k);
+                for (int i = 0; i < k; i++) {
+                    passed &= top.get(i).getPath().equals(all.get(i).getPath());
+                }
+            }
+            for (int i = 1; i < all.size(); i++) {
+                passed &= all.get(i - 1).getScore() >= all.get(i).getScore();
+            }
+        } finally {
+            for (File file : corpus.toFile().listFiles()) {
+                file.delete();
+            }
+            Files.delete(corpus);
+        }
+        printTestResult("testRankedSearch", passed);
+    }
+
+    public void testQueryCache() throws IOException {
+        System.out.println("Running testQueryCache...");
+        index.indexPath(new File("example_dir/file1.txt"));
+        QueryCache cache = new QueryCache(3, 100);
+
+        // Repeats are hits, and expressions that parse the same way share an entry
+        Set<String> first = cache.search(index, "hello test");
+        boolean passed = cache.search(index, "hello AND test") == first
+                && cache.query(index, "HELLO") == cache.query(index, "hello")
+                && cache.getHits() == 2 && cache.getMisses() == 2;
+
+        // Indexing, erasing and strategy changes each invalidate what was cached before
+        File file2 = new File("example_dir/file2.txt");
+        Set<String> before = cache.query(index, "hello");
+        index.indexFile(file2);
+        Set<String> afterIndex = cache.query(index, "hello");
+        passed &= before.size() == 1 && afterIndex.size() == 2;
+        index.eraseFile(file2.getAbsolutePath());
+        passed &= cache.query(index, "hello").size() == 1;
+        List<ScoredDocument> ranked = cache.rank(index, "hello", 5);
+        tokenizerContext.setStrategy(new AdvancedTokenizer());
+        passed &= cache.rank(index, "hello", 5) != ranked;
+
+        // Least recently used entries go first, by entry count and by total results
+        cache.clear();
+        cache.query(index, "hello");
+        cache.query(index, "world");
+        cache.query(index, "test");
+        cache.query(index, "hello");
+        cache.query(index, "file");
+        long evictions = cache.getEvictions();
+        long hits = cache.getHits();
+        cache.query(index, "hello");
+        passed &= cache.size() == 3 && cache.getHits() == hits + 1 && evictions >= 1;
+        cache.query(index, "world");
+        passed &= cache.getHits() == hits + 1;
+
+        QueryCache small = new QueryCache(10, 1);
+        small.query(index, "hello");
+        small.query(index, "world");
+        passed &= small.size() == 1 && small.getResultCount() == 1;
+        printTestResult("testQueryCache", passed);
+    }
+
+    public void testIndexStats() throws IOException {
+        System.out.println("Running testIndexStats...");
+        index.indexPath(new File("example_dir"));
+        IndexStats stats = index.getStats();
+
+        // Size figures agree with the index contents, before and after an erase
+        long postings = 0;
+        for (PostingList list : index.getIndex().values()) {
+            postings += list.size();
+        }
+        boolean passed = stats.getFilesIndexed() == index.getDocumentCount()
+                && stats.getDocumentCount() == index.getDocuments().size()
+                && stats.getTermCount() == index.getIndex().size()
+                && stats.getPostingCount() == postings && postings > 0
+                && stats.getEstimatedHeapBytes() > 0 && stats.getBytesIndexed() > 0;
+        String erased = new File("example_dir/file1.txt").getAbsolutePath();
+        int erasedTerms = 0;
+        for (PostingList list : index.getIndex().values()) {
+            erasedTerms += list.contains(index.getDocuments().getId(erased)) ? 1 : 0;
+        }
+        index.eraseFile(erased);
+        passed &= stats.getPostingCount() == postings - erasedTerms;
+
+        // A loaded segment reports the same counts without being read into the heap
+        Path segmentFile = Files.createTempFile("stats", ".seg");
+        try {
+            index.save(segmentFile);
+            Index loaded = new Index(new TokenizerContext());
+            loaded.load(segmentFile);
+            passed &= loaded.getPostingCount() == postings - erasedTerms
+                    && loaded.getTermCount() == index.getTermCount()
+                    && loaded.getDocumentCount() == index.getDocumentCount();
+        } finally {
+            Files.deleteIfExists(segmentFile);
+        }
+
+        // Queries are timed, and percentiles are within a bucket of the true values
+        index.query("hello");
+        index.search("hello AND world");
+        index.rank("hello", 3);
+        passed &= stats.getQueryCount() == 3 && stats.getQueryP50Micros() <= stats.getQueryMaxMicros();
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        passed &= Math.abs(histogram.getPercentile(50) - 500000) <= 500000 / 16
+                && Math.abs(histogram.getPercentile(99) - 990000) <= 990000 / 16
+                && histogram.getMax() >= 1000000 && histogram.getCount() == 1000;
+        stats.resetTimings();
+        passed &= stats.getQueryCount() == 0 && stats.getFilesIndexed() == 0;
+
+        // The statistics are readable over JMX
+        try {
+            ObjectName name = stats.register("test");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            passed &= ((Number) server.getAttribute(name, "DocumentCount")).intValue() == index.getDocumentCount();
+            server.unregisterMBean(name);
+        } catch (JMException e) {
+            passed = false;
+        }
+        printTestResult("testIndexStats", passed);
+    }
+
+    public void testSnapshotIsolation() throws IOException, InterruptedException {
+        System.out.println("Running testSnapshotIsolation...");
+        index.indexPath(new File("example_dir"));
+        IndexSnapshot before = index.snapshot();
+        Set<String> hello = before.query("hello");
+        List<String> paths = before.getIndexedPaths();
+
+        // A held snapshot keeps answering as of its publication while thousands of terms come and go
+        Path file = Files.createTempFile("terms", ".txt");
+        try {
+            Files.writeString(file, sampleText());
+            index.indexFile(file.toFile());
+            IndexSnapshot added = index.snapshot();
+            index.eraseFile(new File("example_dir/file1.txt").getAbsolutePath());
+            index.eraseFile(file.toAbsolutePath().toString());
+            boolean passed = before.query("hello").equals(hello) && before.getIndexedPaths().equals(paths)
+                    && before.query("hello_world1234").isEmpty() && before.search("hello AND world").size() > 0
+                    && added.query("hello_world1234").size() == 1 && added.getTermCount() > before.getTermCount() + 5000
+                    && index.query("hello_world1234").isEmpty() && !index.query("hello").equals(hello)
+                    && index.getTermCount() < before.getTermCount()
+                    && index.snapshot().getGeneration() > added.getGeneration();
+
+            // Queries read the latest snapshot without waiting for the index lock
+            CountDownLatch answered = new CountDownLatch(1);
+            synchronized (index) {
+                Thread reader = new Thread(() -> {
+                    index.query("hello");
+                    index.search("hello OR world");
+                    answered.countDown();
+                });
+                reader.start();
+                passed &= answered.await(10, TimeUnit.SECONDS);
+            }
+            printTestResult("testSnapshotIsolation", passed);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public void testIndexServer() throws IOException {
+        System.out.println("Running testIndexServer...");
+        try (IndexServer server = new IndexServer(() -> index, new QueryCache(100, 10000), () -> null, 0);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+
+            // Every request is pipelined before the first response is read
+            out.write("index example_dir\nquery hello\nquery hello AND\nbatch 2\nquery hello\nrank -k 1 hello\n"
+                    + "erase example_dir/file1.txt\nquery hello\nstats\nbogus\nquit\n");
+            out.flush();
+
+            boolean passed = readResponse(in).equals(List.of("Indexed: example_dir"));
+            List<String> hello = readResponse(in);
+            // By the time it is read, the erase further down the pipeline has already been applied
+            passed &= hello.contains(new File("example_dir/file1.txt").getAbsolutePath()) && hello.size() > 1
+                    && readResponse(in) == null
+                    && readResponse(in).equals(hello)
+                    && readResponse(in).size() == 1
+                    && readResponse(in).equals(List.of("Erased: example_dir/file1.txt"))
+                    && readResponse(in).size() == hello.size() - 1
+                    && readResponse(in).get(0).startsWith("Indexing:")
+                    && readResponse(in) == null
+                    && in.readLine() == null
+                    && index.isIndexed(new File("example_dir"))
+                    && !index.isIndexed(new File("example_dir/file1.txt"));
+            printTestResult("testIndexServer", passed);
+        }
+    }
+
+    /**
+     * Reads one server response.
+     *
+     * @return the result lines, or null for an error response
+     */
+    private static List<String> readResponse(BufferedReader in) throws IOException {
+        String header = in.readLine();
+        if (header == null || !header.startsWith("OK ")) {
+            return null;
+        }
+        List<String> lines = new ArrayList<>();
+        for (int count = Integer.parseInt(header.substring(3)); count > 0; count--) {
+            lines.add(in.readLine());
+        }
+        return lines;
+    }
+
+    public void testBatchQueries() throws IOException {
+        System.out.println("Running testBatchQueries...");
+        index.indexPath(new File("example_dir"));
+        String queries = "hello\n\nhello AND\nzzzz\n" + "world\n".repeat(2000);
+        String file1 = new File("example_dir/file1.txt").getAbsolutePath();
+
+        // Results come back one line per query, in input order, however many threads evaluate them
+        StringWriter tsv = new StringWriter();
+        long count = new BatchQueries(BatchQueries.Format.TSV, 4, 0)
+                .run(index.snapshot(), new BufferedReader(new StringReader(queries)), tsv);
+        String[] lines = tsv.toString().split("\n");
+        List<String> hello = new ArrayList<>(index.search("hello"));
+        boolean passed = count == 2003 && lines.length == 2003
+                && lines[0].equals("hello\t" + hello.size() + "\t" + String.join("\t", hello))
+                && lines[1].startsWith("hello AND\terror\t")
+                && lines[2].equals("zzzz\t0")
+                && lines[2002].startsWith("world\t" + index.search("world").size());
+
+        StringWriter json = new StringWriter();
+        new BatchQueries(BatchQueries.Format.JSON, 1, 1)
+                .run(index.snapshot(), new BufferedReader(new StringReader("hello\n\"quoted\"\n")), json);
+        lines = json.toString().split("\n");
+        passed &= lines.length == 2
+                && lines[0].startsWith("{\"query\":\"hello\",\"count\":1,\"results\":[{\"path\":\"")
+                && lines[1].startsWith("{\"query\":\"\\\"quoted\\\"\",\"count\":0");
+        printTestResult("testBatchQueries", passed && hello.contains(file1));
+    }
+
+    public void testIndexPipeline() throws IOException {
+        System.out.println("Running testIndexPipeline...");
+        File path = new File("example_dir");
+        Index sequential = new Index(tokenizerContext, true);
+        sequential.indexPath(path);
+        Index pipelined = new Index(tokenizerContext, true);
+        // Queues of one file keep every stage waiting on its neighbours
+        IndexPipeline pipeline = new IndexPipeline(pipelined, 2, 3, 1);
+        pipeline.run(path);
+        // Indexing again through the pipeline replaces each file's terms
+        new IndexPipeline(pipelined, 1, 2, 1).run(path);
+
+        boolean passed = pipelined.getIndex().keySet().equals(sequential.getIndex().keySet())
+                && pipelined.getPostingCount() == sequential.getPostingCount()
+                && pipelined.getDocumentCount() == sequential.getDocumentCount()
+                && pipeline.toString().contains("tokenize");
+        for (String term : sequential.getIndex().keySet()) {
+            PostingList expected = sequential.getIndex().get(term);
+            PostingList actual = pipelined.getIndex().get(term);
+            // Document IDs depend on the order the tokenizers finish, so compare by path
+            Map<String, String> expectedOccurrences = new HashMap<>();
+            Map<String, String> actualOccurrences = new HashMap<>();
+            for (int i = 0; i < expected.size(); i++) {
+                expectedOccurrences.put(sequential.getDocuments().getPath(expected.get(i)),
+                        expected.getFreq(i) + Arrays.toString(expected.getPositions(i)));
+            }
+            for (int i = 0; i < actual.size(); i++) {
+                actualOccurrences.put(pipelined.getDocuments().getPath(actual.get(i)),
+                        actual.getFreq(i) + Arrays.toString(actual.getPositions(i)));
+            }
+            passed &= expectedOccurrences.equals(actualOccurrences);
+        }
+        passed &= pipelined.search("\"the quick brown\"").equals(sequential.search("\"the quick brown\""));
+        printTestResult("testIndexPipeline", passed);
+    }
+
+    public void testTermTableCollisions() throws IOException {
+        System.out.println("Running testTermTableCollisions...");
+        // Pairs of terms with the same String hash code, so they share a probe run in the term tables
+        String[][] pairs = {{"aan", "ac0"}, {"aao", "ac1"}, {"aap", "ac2"}, {"aaq", "ac3"}, {"aar", "ac4"}};
+        Path directory = Files.createTempDirectory("collisions");
+        StringBuilder first = new StringBuilder();
+        StringBuilder second = new StringBuilder();
+        for (String[] pair : pairs) {
+            first.append(pair[0]).append(' ').append(pair[1]).append(' ');
+            second.append(pair[1]).append(' ');
+        }
+        // Enough other terms that the tables grow while the colliding ones are in them
+        for (int i = 0; i < 3000; i++) {
+            (i % 2 == 0 ? first : second).append("term").append(i).append(' ');
+        }
+        Path kept = Files.write(directory.resolve("kept.txt"), second.toString().getBytes());
+        Path erased = Files.write(directory.resolve("erased.txt"), first.toString().getBytes());
+        try {
+            index.indexPath(directory.toFile());
+            int before = index.getTermCount();
+            boolean passed = before == 2 * pairs.length + 3000;
+            for (String[] pair : pairs) {
+                passed &= index.query(pair[0]).size() == 1 && index.query(pair[1]).size() == 2;
+            }
+
+            // Removing terms from the middle of probe runs must leave the rest of each run reachable
+            index.eraseFile(erased.toAbsolutePath().toString());
+            passed &= index.getTermCount() == before - pairs.length - 1500;
+            for (String[] pair : pairs) {
+                passed &= index.query(pair[0]).isEmpty()
+                        && index.query(pair[1]).equals(Set.of(kept.toAbsolutePath().toString()));
+            }
+            for (int i = 0; i < 3000; i++) {
+                passed &= index.query("term" + i).size() == i % 2;
+            }
+            printTestResult("testTermTableCollisions", passed);
+        } finally {
+            Files.deleteIfExists(kept);
+            Files.deleteIfExists(erased);
+            Files.delete(directory);
+        }
+    }
+
+    public void testShardedIndex() throws IOException {
+        System.out.println("Running testShardedIndex...");
+        File path = new File("example_dir");
+        index.indexPath(path);
+        Path directory = Files.createTempDirectory("shards");
+        try (ShardedIndex sharded = new ShardedIndex(tokenizerContext, 3, false)) {
+            sharded.indexPath(path);
+            boolean passed = sharded.getDocumentCount() == index.getDocumentCount()
+                    && sharded.getPostingCount() == index.getPostingCount()
+                    && new HashSet<>(sharded.getIndexedPaths()).equals(new HashSet<>(index.getIndexedPaths()));
+            for (String term : index.getIndex().keySet()) {
+                passed &= sharded.query(term).equals(index.query(term));
+            }
+            passed &= sharded.search("hello OR dog").equals(index.search("hello OR dog"))
+                    && sharded.rank("hello dog", 10).size() == index.rank("hello dog", 10).size();
+
+            // Each file lives in exactly one shard
+            String erased = new File("example_dir/file6.txt").getAbsolutePath();
+            passed &= sharded.getShard(sharded.shardOf(erased)).getIndexedPaths().contains(erased);
+            sharded.eraseFile(erased);
+            passed &= sharded.query("dog").isEmpty() && sharded.getDocumentCount() == index.getDocumentCount() - 1;
+
+            // Shards are saved one file each and only load into an index with as many shards
+            sharded.save(directory);
+            try (ShardedIndex loaded = new ShardedIndex(tokenizerContext, 3, false)) {
+                loaded.load(directory);
+                passed &= loaded.query("hello").equals(sharded.query("hello"))
+                        && loaded.getDocumentCount() == sharded.getDocumentCount();
+            }
+            try (ShardedIndex mismatched = new ShardedIndex(tokenizerContext, 2, false)) {
+                mismatched.load(directory);
+                passed = false;
+            } catch (IOException e) {
+                // Expected
+            }
+            printTestResult("testShardedIndex", passed);
+        } finally {
+            for (int shard = 0; shard < 3; shard++) {
+                Files.deleteIfExists(ShardedIndex.shardFile(directory, shard));
+            }
+            Files.delete(directory);
+        }
+    }
+
+    public void testExternalIndexBuilder() throws IOException {
+        System.out.println("Running testExternalIndexBuilder...");
+        // Enough distinct terms that a 1 MB budget spills many runs, sharing some terms across files
+        Path directory = Files.createTempDirectory("external");
+        Path segment = directory.resolve("index.seg");
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            StringBuilder text = new StringBuilder("shared words here ");
+            for (int j = 0; j < 2000; j++) {
+                text.append("file").append(i).append("term").append(j).append(' ').append("common").append(j % 50).append(' ');
+            }
+            files.add(Files.write(directory.resolve("file" + i + ".txt"), text.toString().getBytes()));
+        }
+        try {
+            Index inMemory = new Index(tokenizerContext, true);
+            inMemory.indexPath(directory.toFile());
+            Index external = new Index(tokenizerContext, true);
+            ExternalIndexBuilder builder = new ExternalIndexBuilder(external, 1 << 20);
+            builder.build(directory.toFile(), segment);
+            external.load(segment);
+
+            Matcher runs = Pattern.compile("(\\d+) runs").matcher(builder.toString());
+            boolean passed = runs.find() && Integer.parseInt(runs.group(1)) > 1
+                    && external.isPositional()
+                    && external.getDocumentCount() == inMemory.getDocumentCount()
+                    && external.getTermCount() == inMemory.getTermCount()
+                    && external.getPostingCount() == inMemory.getPostingCount();
+            for (String term : inMemory.getIndex().keySet()) {
+                passed &= external.query(term).equals(inMemory.query(term));
+            }
+            passed &= external.search("\"shared words\"").size() == 60
+                    && external.search("\"words shared\"").isEmpty()
+                    && external.rank("common7 file3term7", 5).get(0).getPath().equals(files.get(3).toAbsolutePath().toString());
+            printTestResult("testExternalIndexBuilder", passed);
+        } finally {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(segment);
+            Files.delete(directory);
+        }
+    }
+
+    public void testPathTrie() throws IOException {
+        System.out.println("Running testPathTrie...");
+        // Directories match by whole components, and erasing a subtree finds files already deleted from disk
+        Path directory = Files.createTempDirectory("trie");
+        Path nested = Files.createDirectory(directory.resolve("sub"));
+        Path sibling = Files.write(directory.resolve("sub.txt"), "sibling words".getBytes());
+        Path first = Files.write(nested.resolve("first.txt"), "nested words".getBytes());
+        Path second = Files.write(nested.resolve("second.txt"), "nested words".getBytes());
+        try {
+            index.indexPath(new File("example_dir"));
+            index.indexPath(directory.toFile());
+            Files.delete(second);
+
+            boolean passed = index.isIndexed(new File("example_dir"))
+                    && index.isIndexed(new File("example_dir/nested_dir/file4.txt"))
+                    && !index.isIndexed(new File("example_dir/file"))
+                    && !index.isIndexed(new File("example_dir/nested"))
+                    && index.getIndexedPaths(new File("example_dir/nested_dir/")).size() == 2
+                    && index.getIndexedPaths(new File("example_dir")).size() == 6
+                    && index.getIndexedPaths(nested.toFile()).size() == 2;
+
+            // The server erases a deleted file once, then reports it no longer indexed
+            try (IndexServer server = new IndexServer(() -> index, new QueryCache(100, 10000), () -> null, 0);
+                 Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                out.write("erase " + second + "\nerase " + second + "\nquit\n");
+                out.flush();
+                passed &= readResponse(in).equals(List.of("Erased: " + second))
+                        && readResponse(in) == null
+                        && index.getIndexedPaths(nested.toFile()).equals(List.of(first.toString()));
+            }
+
+            index.erasePath(nested.toFile());
+            passed &= !index.isIndexed(nested.toFile())
+                    && index.isIndexed(sibling.toFile())
+                    && index.query("nested").isEmpty()
+                    && index.query("sibling").size() == 1
+                    && index.getDocumentCount() == 7;
+
+            index.erasePath(new File("example_dir/nested_dir"));
+            passed &= index.getIndexedPaths(new File("example_dir")).size() == 4
+                    && index.getDocumentCount() == 5;
+            printTestResult("testPathTrie", passed);
+        } finally {
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+            Files.deleteIfExists(sibling);
+            Files.deleteIfExists(nested);
+            Files.delete(directory);
+        }
+    }
+
+    private static int editDistance(String a, String b) {
+        int[][] distances = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    distances[i][j] = i + j;
+                } else {
+                    int substitution = distances[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                    distances[i][j] = Math.min(substitution, Math.min(distances[i - 1][j], distances[i][j - 1]) + 1);
+                }
+            }
+        }
+        return distances[a.length()][b.length()];
+    }
+
+    private static String sampleText() {
+        // Long enough that tokens straddle the tokenizer's chunk boundaries
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("Hello_World").append(i).append(" 42abc, x=").append(i * 7).append("!? \u00e9 _9 ~`\t");
+        }
+        return text.toString();
+    }
+
     private void printTestResult(String testName, boolean passed) {
         if (passed) {
             System.out.println(testName + " passed.");
@@ -152,7 +1081,7 @@ public class TextFileIndexerTest {
         }
     }
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
         TextFileIndexerTest tester = new TextFileIndexerTest();
         tester.testIndexingFiles();
         tester.reset();
@@ -177,5 +1106,51 @@ public class TextFileIndexerTest {
         tester.testEraseFile();
         tester.reset();
         tester.testQueryAfterErase();
+        tester.reset();
+        tester.testParallelIndexing();
+        tester.reset();
+        tester.testErasedFileLeavesNoPostings();
+        tester.reset();
+        tester.testStreamingTokenizersMatchStringTokenizers();
+        tester.reset();
+        tester.testScannersMatchRegexTokenizers();
+        tester.reset();
+        tester.testSaveAndLoadSegment();
+        tester.reset();
+        tester.testRefreshPath();
+        tester.reset();
+        tester.testWatchAppliesChanges();
+        tester.reset();
+        tester.testBackgroundStrategyRebuild();
+        tester.reset();
+        tester.testBooleanQueries();
+        tester.reset();
+        tester.testPhraseQueries();
+        tester.reset();
+        tester.testPrefixAndWildcardQueries();
+        tester.reset();
+        tester.testFuzzyQueries();
+        tester.reset();
+        tester.testRankedSearch();
+        tester.reset();
+        tester.testQueryCache();
+        tester.reset();
+        tester.testIndexStats();
+        tester.reset();
+        tester.testSnapshotIsolation();
+        tester.reset();
+        tester.testIndexServer();
+        tester.reset();
+        tester.testBatchQueries();
+        tester.reset();
+        tester.testIndexPipeline();
+        tester.reset();
+        tester.testTermTableCollisions();
+        tester.reset();
+        tester.testShardedIndex();
+        tester.reset();
+        tester.testExternalIndexBuilder();
+        tester.reset();
+        tester.testPathTrie();
     }
 }